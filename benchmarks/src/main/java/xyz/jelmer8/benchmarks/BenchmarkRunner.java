@@ -0,0 +1,51 @@
+package xyz.jelmer8.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the allocation rate of the gc profiler, and
+ * writes the results to target/jmh-result.json of the working directory.
+ * Takes the normal JMH command line options, so single benchmarks or
+ * parameters can be selected, for example: -p format=cbz,cbr PageFlip
+ */
+public final class BenchmarkRunner {
+
+    private BenchmarkRunner() {
+
+    }
+
+
+    /**
+     * Main method of the benchmarks.
+     * @param args The JMH command line options
+     */
+    public static void main(final String[] args) throws Exception {
+        CommandLineOptions commandLineOptions = new CommandLineOptions(args);
+
+        if (commandLineOptions.shouldHelp()) {
+            commandLineOptions.showHelp();
+            return;
+        }
+        if (commandLineOptions.shouldList()) {
+            new Runner(commandLineOptions).list();
+            return;
+        }
+
+        ChainedOptionsBuilder options = new OptionsBuilder()
+                .parent(commandLineOptions)
+                .addProfiler(GCProfiler.class);
+
+        if (commandLineOptions.getResult().hasValue()) {
+            new Runner(options.build()).run();
+            return;
+        }
+
+        new Runner(options.resultFormat(ResultFormatType.JSON)
+                .result("target/jmh-result.json").build()).run();
+    }
+}
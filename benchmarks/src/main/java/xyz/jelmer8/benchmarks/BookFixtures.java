@@ -0,0 +1,260 @@
+package xyz.jelmer8.benchmarks;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Generates the books the benchmarks read. The pages are drawn from a fixed
+ * seed, so the same parameters always give the same book and results of
+ * different releases can be compared.
+ */
+public final class BookFixtures {
+
+    /** The directory the books are generated in. */
+    private static final Path FIXTUREDIRECTORY = Path.of(System.getProperty(
+            "comicbookreader.fixtures", "target/fixtures"));
+
+    /** The seed the pages are drawn with. */
+    private static final long SEED = 8L;
+
+    /** The quality of the jpeg pages, close to what scanned comics use. */
+    private static final float JPEGQUALITY = 0.85f;
+
+    /** Number of panels drawn on a page. */
+    private static final int PANELS = 24;
+
+    private BookFixtures() {
+
+    }
+
+
+    /**
+     * Method to get a book of the given format, the book is generated
+     * the first time it is asked for.
+     * @param format The format of the book, cbz, cbr or gif
+     * @param pageCount The number of pages (or gif frames) of the book
+     * @param width The width of the pages
+     * @param height The height of the pages
+     * @return The path of the book
+     */
+    public static Path getBook(final String format, final int pageCount,
+                               final int width, final int height)
+            throws IOException, InterruptedException {
+        Path book = FIXTUREDIRECTORY.resolve(String.format("%s-%d-%dx%d.%s",
+                format, pageCount, width, height,
+                format.equals("cbr") ? "cbr" : "cbz"));
+
+        if (Files.exists(book)) {
+            return book;
+        }
+
+        Files.createDirectories(FIXTUREDIRECTORY);
+
+        // Generate next to the book and move it in place when it is done,
+        // so an interrupted run never leaves half a book behind
+        Path temporary = Files.createTempFile(FIXTUREDIRECTORY, format, ".tmp");
+        try {
+            switch (format) {
+                case "cbz" -> createCbz(temporary, pageCount, width, height);
+                case "cbr" -> createCbr(temporary, pageCount, width, height);
+                case "gif" -> createGifCbz(temporary, pageCount, width, height);
+                default -> throw new IllegalArgumentException(
+                        "Unknown fixture format: " + format);
+            }
+            Files.move(temporary, book, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+
+        return book;
+    }
+
+
+    /**
+     * Method to draw a page, panels of flat colour with some lines,
+     * which compresses about like a real comic page.
+     * @param random The random to draw the page with
+     * @param width The width of the page
+     * @param height The height of the page
+     * @param type The type of the image
+     * @return The page
+     */
+    public static BufferedImage drawPage(final Random random, final int width,
+                                         final int height, final int type) {
+        BufferedImage page = new BufferedImage(width, height, type);
+        Graphics2D g = page.createGraphics();
+
+        g.setColor(Color.WHITE);
+        g.fillRect(0, 0, width, height);
+
+        for (int i = 0; i < PANELS; i++) {
+            int x = random.nextInt(width);
+            int y = random.nextInt(height);
+            int panelWidth = 1 + random.nextInt(width / 3);
+            int panelHeight = 1 + random.nextInt(height / 4);
+
+            g.setColor(new Color(random.nextInt(0x1000000)));
+            g.fillRect(x, y, panelWidth, panelHeight);
+            g.setColor(Color.BLACK);
+            g.drawRect(x, y, panelWidth, panelHeight);
+            g.drawLine(x, y, x + panelWidth, y + panelHeight);
+        }
+
+        g.dispose();
+        return page;
+    }
+
+
+    /**
+     * Method to create a cbz with a jpeg for every page.
+     * @param book The path to write the book to
+     * @param pageCount The number of pages
+     * @param width The width of the pages
+     * @param height The height of the pages
+     */
+    private static void createCbz(final Path book, final int pageCount,
+                                  final int width, final int height)
+            throws IOException {
+        Random random = new Random(SEED);
+
+        try (ZipOutputStream zip = new ZipOutputStream(Files.newOutputStream(book))) {
+            for (int i = 0; i < pageCount; i++) {
+                zip.putNextEntry(new ZipEntry(String.format("page%04d.jpg", i)));
+                writeJpeg(drawPage(random, width, height,
+                        BufferedImage.TYPE_3BYTE_BGR), zip);
+                zip.closeEntry();
+            }
+        }
+    }
+
+
+    /**
+     * Method to create a cbz with a single animated gif, every page is
+     * a frame of the gif.
+     * @param book The path to write the book to
+     * @param frameCount The number of frames
+     * @param width The width of the frames
+     * @param height The height of the frames
+     */
+    private static void createGifCbz(final Path book, final int frameCount,
+                                     final int width, final int height)
+            throws IOException {
+        Random random = new Random(SEED);
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("gif").next();
+
+        try (ZipOutputStream zip = new ZipOutputStream(Files.newOutputStream(book))) {
+            zip.putNextEntry(new ZipEntry("animation.gif"));
+
+            ByteArrayOutputStream gifBytes = new ByteArrayOutputStream();
+            try (ImageOutputStream ios = ImageIO.createImageOutputStream(gifBytes)) {
+                writer.setOutput(ios);
+                writer.prepareWriteSequence(null);
+
+                for (int i = 0; i < frameCount; i++) {
+                    writer.writeToSequence(new IIOImage(drawPage(random, width,
+                            height, BufferedImage.TYPE_BYTE_INDEXED), null, null),
+                            null);
+                }
+
+                writer.endWriteSequence();
+            } finally {
+                writer.dispose();
+            }
+
+            gifBytes.writeTo(zip);
+            zip.closeEntry();
+        }
+    }
+
+
+    /**
+     * Method to create a cbr with a jpeg for every page. Java can not write
+     * rar archives, so the rar command line tool has to be on the path.
+     * The archive is solid, like most cbr files.
+     * @param book The path to write the book to
+     * @param pageCount The number of pages
+     * @param width The width of the pages
+     * @param height The height of the pages
+     */
+    private static void createCbr(final Path book, final int pageCount,
+                                  final int width, final int height)
+            throws IOException, InterruptedException {
+        Random random = new Random(SEED);
+        Path pages = Files.createTempDirectory(FIXTUREDIRECTORY, "cbr");
+
+        try {
+            for (int i = 0; i < pageCount; i++) {
+                try (OutputStream os = Files.newOutputStream(
+                        pages.resolve(String.format("page%04d.jpg", i)))) {
+                    writeJpeg(drawPage(random, width, height,
+                            BufferedImage.TYPE_3BYTE_BGR), os);
+                }
+            }
+
+            // rar refuses to add to a file that is not a rar archive
+            Files.deleteIfExists(book);
+
+            Process rar;
+            try {
+                // rar expands the wildcard itself
+                rar = new ProcessBuilder("rar", "a", "-s", "-idq",
+                        book.toAbsolutePath().toString(), "*.jpg")
+                        .directory(pages.toFile()).inheritIO().start();
+            } catch (IOException e) {
+                throw new IOException("Generating a cbr needs the rar tool on the path", e);
+            }
+
+            if (!rar.waitFor(10, TimeUnit.MINUTES) || rar.exitValue() != 0) {
+                throw new IOException("rar could not create " + book);
+            }
+        } finally {
+            try (Stream<Path> files = Files.list(pages)) {
+                for (Path file : (Iterable<Path>) files::iterator) {
+                    Files.delete(file);
+                }
+            }
+            Files.delete(pages);
+        }
+    }
+
+
+    /**
+     * Method to encode a page as jpeg.
+     * @param page The page to encode
+     * @param os The stream to write the jpeg to, it is not closed
+     */
+    private static void writeJpeg(final BufferedImage page, final OutputStream os)
+            throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ImageWriteParam param = writer.getDefaultWriteParam();
+        param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+        param.setCompressionQuality(JPEGQUALITY);
+
+        ByteArrayOutputStream jpegBytes = new ByteArrayOutputStream();
+        try (ImageOutputStream ios = ImageIO.createImageOutputStream(jpegBytes)) {
+            writer.setOutput(ios);
+            writer.write(null, new IIOImage(page, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+
+        jpegBytes.writeTo(os);
+    }
+}
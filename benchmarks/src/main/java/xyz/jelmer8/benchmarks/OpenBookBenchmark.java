@@ -0,0 +1,97 @@
+package xyz.jelmer8.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import xyz.jelmer8.models.BookModel;
+import xyz.jelmer8.models.ImageModel;
+import xyz.jelmer8.models.PageCache;
+import xyz.jelmer8.models.RarBookModel;
+import xyz.jelmer8.models.ZipBookModel;
+
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Opening a book: indexing the archive and decoding the first page,
+ * like the reader does before it shows a book.
+ * The gif format is a cbz with a single animated gif, which measures
+ * counting the frames of the gif.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 10, time = 2)
+@Fork(value = 2, jvmArgsAppend = {"-Xms2g", "-Xmx2g", "-Djava.awt.headless=true"})
+public class OpenBookBenchmark {
+
+    /** The format of the book, cbr needs the rar tool to generate it. */
+    @Param({"cbz", "gif"})
+    private String format;
+
+    /** The number of pages of the book. */
+    @Param({"24"})
+    private int pageCount;
+
+    /** The size of the pages. */
+    @Param({"1988x3056"})
+    private String pageSize;
+
+    /** The width of the view the first page is decoded for. */
+    @Param({"1000"})
+    private int displayWidth;
+
+    /** The generated book. */
+    private Path book;
+
+
+    /**
+     * Method to generate the book, once for the whole benchmark.
+     */
+    @Setup(Level.Trial)
+    public void createBook() throws Exception {
+        String[] size = pageSize.split("x");
+        book = BookFixtures.getBook(format, pageCount,
+                Integer.parseInt(size[0]), Integer.parseInt(size[1]));
+    }
+
+
+    /**
+     * Method to open the book and decode its first page.
+     * @return The first page
+     */
+    @Benchmark
+    public ImageModel openBook() throws Exception {
+        try (BookModel model = createBookModel(book,
+                new PageCache(Long.MAX_VALUE))) {
+            model.indexBook();
+            model.setDisplayWidth(displayWidth);
+            return model.getBookImage(0);
+        }
+    }
+
+
+    /**
+     * Method to create the book model for the format of the benchmark.
+     * @param path The path of the book
+     * @param pageCache The page cache of the book
+     * @return The book model, not indexed yet
+     */
+    static BookModel createBookModel(final Path path, final PageCache pageCache) {
+        if (path.toString().endsWith(".cbr")) {
+            return new RarBookModel(path.toString(), pageCache);
+        }
+
+        return new ZipBookModel(path.toString(), pageCache);
+    }
+}
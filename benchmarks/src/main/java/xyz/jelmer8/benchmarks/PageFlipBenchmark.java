@@ -0,0 +1,114 @@
+package xyz.jelmer8.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import xyz.jelmer8.models.BookModel;
+import xyz.jelmer8.models.ImageModel;
+import xyz.jelmer8.models.PageCache;
+
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Flipping to the next page of an open book. With the cached mode every
+ * page is already in the page cache, with the decode mode the cache is
+ * emptied before every flip so every flip decodes a page.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 10, time = 2)
+@Fork(value = 2, jvmArgsAppend = {"-Xms2g", "-Xmx2g", "-Djava.awt.headless=true"})
+public class PageFlipBenchmark {
+
+    /** The format of the book, cbr needs the rar tool to generate it. */
+    @Param({"cbz", "gif"})
+    private String format;
+
+    /** If the pages are in the page cache or have to be decoded. */
+    @Param({"decode", "cached"})
+    private String mode;
+
+    /** The number of pages of the book. */
+    @Param({"24"})
+    private int pageCount;
+
+    /** The size of the pages. */
+    @Param({"1988x3056"})
+    private String pageSize;
+
+    /** The width of the view the pages are decoded for, 0 for full size. */
+    @Param({"1000", "0"})
+    private int displayWidth;
+
+    /** The open book. */
+    private BookModel model;
+
+    /** The page cache of the book. */
+    private PageCache pageCache;
+
+    /** The path of the book. */
+    private String bookPath;
+
+
+    /**
+     * Method to open the book, once for the whole benchmark.
+     */
+    @Setup(Level.Trial)
+    public void openBook() throws Exception {
+        String[] size = pageSize.split("x");
+        Path book = BookFixtures.getBook(format, pageCount,
+                Integer.parseInt(size[0]), Integer.parseInt(size[1]));
+
+        bookPath = book.toString();
+        pageCache = new PageCache(Long.MAX_VALUE);
+        model = OpenBookBenchmark.createBookModel(book, pageCache);
+        model.indexBook();
+        model.setDisplayWidth(displayWidth);
+
+        if (mode.equals("cached")) {
+            for (int i = 0; i < model.getPageCount(); i++) {
+                model.getPageImage(i);
+            }
+        }
+    }
+
+
+    /**
+     * Method to close the book.
+     */
+    @TearDown(Level.Trial)
+    public void closeBook() throws Exception {
+        model.close();
+    }
+
+
+    /**
+     * Method to flip to the next page, from the last page back to the first.
+     * @return The page flipped to
+     */
+    @Benchmark
+    public ImageModel nextPage() {
+        if (mode.equals("decode")) {
+            pageCache.removeBook(bookPath);
+        }
+
+        if (model.getCurrentBookPage() == model.getPageCount() - 1) {
+            return model.getBookImage(0);
+        }
+
+        return model.getNextBookImage();
+    }
+}
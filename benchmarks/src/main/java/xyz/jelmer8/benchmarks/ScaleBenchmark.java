@@ -0,0 +1,105 @@
+package xyz.jelmer8.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import xyz.jelmer8.models.CompatibleImages;
+import xyz.jelmer8.views.ComicBookView;
+
+import java.awt.Graphics2D;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rescaling a page to the width of the view, and painting a page into
+ * a view sized image the way the comic book panel paints it.
+ * The page type is the type ImageIO decodes jpegs to, or the pixel format
+ * the reader converts decoded pages to.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 10, time = 2)
+@Fork(value = 2, jvmArgsAppend = {"-Xms2g", "-Xmx2g", "-Djava.awt.headless=true"})
+public class ScaleBenchmark {
+
+    /** The size of the page. */
+    @Param({"1000x1537"})
+    private String pageSize;
+
+    /** The width the page is scaled to. */
+    @Param({"1440", "2560"})
+    private int scaledWidth;
+
+    /** The pixel format of the page, decoded or compatible. */
+    @Param({"decoded", "compatible"})
+    private String pageType;
+
+    /** The page to scale and paint. */
+    private BufferedImage page;
+
+    /** The image the page is painted into, like the back buffer of the view. */
+    private BufferedImage view;
+
+
+    /**
+     * Method to draw the page, once for the whole benchmark.
+     */
+    @Setup(Level.Trial)
+    public void drawPage() {
+        String[] size = pageSize.split("x");
+        int width = Integer.parseInt(size[0]);
+        int height = Integer.parseInt(size[1]);
+
+        BufferedImage decoded = BookFixtures.drawPage(new Random(8L), width,
+                height, BufferedImage.TYPE_3BYTE_BGR);
+
+        if (pageType.equals("compatible")) {
+            page = CompatibleImages.createCompatibleImage(width, height,
+                    Transparency.OPAQUE);
+            Graphics2D g = page.createGraphics();
+            g.drawImage(decoded, 0, 0, null);
+            g.dispose();
+        } else {
+            page = decoded;
+        }
+
+        view = CompatibleImages.createCompatibleImage(width, height,
+                Transparency.OPAQUE);
+    }
+
+
+    /**
+     * Method to scale the page to the width of the view.
+     * @return The scaled page
+     */
+    @Benchmark
+    public BufferedImage scalePage() {
+        return ComicBookView.createScaledImage(page, scaledWidth);
+    }
+
+
+    /**
+     * Method to paint the page into the view.
+     * @return The view
+     */
+    @Benchmark
+    public BufferedImage paintPage() {
+        Graphics2D g = view.createGraphics();
+        g.drawImage(page, 0, 0, null);
+        g.dispose();
+        return view;
+    }
+}
@@ -0,0 +1,150 @@
+package xyz.jelmer8;
+
+
+import xyz.jelmer8.cli.LibraryRepacker;
+import xyz.jelmer8.cli.LibraryValidator;
+import xyz.jelmer8.controllers.Controller;
+import xyz.jelmer8.metrics.ReaderMetrics;
+import xyz.jelmer8.models.BookModel;
+import xyz.jelmer8.models.DiskPageCache;
+import xyz.jelmer8.models.PageCache;
+import xyz.jelmer8.views.ComicBookView;
+import xyz.jelmer8.views.MainMenuView;
+
+import java.awt.CardLayout;
+import java.awt.Dimension;
+import java.awt.Frame;
+
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.nio.file.Path;
+import java.util.HashMap;
+
+
+public class Main {
+
+    /** The default size of the views. */
+    private static final Dimension DEFAULTVIEWSIZE = new Dimension(1400, 800);
+
+    /** The byte budget of the page cache, a quarter of the heap by default. */
+    private static final long PAGECACHEBYTES = Long.getLong(
+            "comicbookreader.cache.bytes", Runtime.getRuntime().maxMemory() / 4);
+
+    /** If the statistics of the caches are printed when the reader is closed. */
+    private static final boolean PRINTSTATS =
+            Boolean.getBoolean("comicbookreader.stats");
+
+    /**
+     * Main method of the application.
+     * Run with --validate and a folder to check the books in it, or with
+     * --repack and a folder to repack its rar books, without opening a window.
+     * @param args The arguments of the application.
+     */
+    public static void main(final String[] args) {
+        if (args.length > 0 && args[0].equals("--validate")) {
+            System.exit(validate(args));
+        }
+        if (args.length > 0 && args[0].equals("--repack")) {
+            System.exit(repack(args));
+        }
+
+        // Expose the metrics over JMX
+        ReaderMetrics.get().register();
+
+        // Create the frame
+        Frame frame = new Frame();
+        frame.setTitle("Comic Book Reader - Jelmer de Jong SE2B");
+        frame.setSize(DEFAULTVIEWSIZE);
+        // Create card layout for switching between views
+        CardLayout cardLayout = new CardLayout();
+        frame.setLayout(cardLayout);
+
+
+        // Create the modelSet, views and controller
+        HashMap<String, BookModel> modelMap = new HashMap<>();
+        PageCache pageCache = new PageCache(PAGECACHEBYTES);
+        DiskPageCache diskPageCache = new DiskPageCache();
+        MainMenuView mainMenuView = new MainMenuView(DEFAULTVIEWSIZE);
+        ComicBookView comicBookView = new ComicBookView(DEFAULTVIEWSIZE);
+
+        Controller controller = new Controller(modelMap, pageCache,
+                diskPageCache, mainMenuView, comicBookView, cardLayout);
+
+
+        frame.add(mainMenuView);
+        frame.add(comicBookView);
+        frame.setVisible(true);
+
+        // Add a component listener to resize the views when the frame is resized
+        frame.addComponentListener(new ComponentAdapter() {
+            public void componentResized(final ComponentEvent componentEvent) {
+                mainMenuView.setSize(frame.getSize());
+                comicBookView.setSize(frame.getSize());
+            }
+        });
+
+        // Add a window listener to close the frame when the window is closed
+        frame.addWindowListener(new WindowAdapter() {
+            public void windowClosing(final WindowEvent we) {
+                controller.saveReadingSession();
+                if (PRINTSTATS) {
+                    System.out.println("Page cache: " + pageCache.getStats());
+                    System.out.println("Disk page cache: " + diskPageCache.getStats());
+                    System.out.print(ReaderMetrics.get().dumpStats());
+                }
+                frame.dispose();
+            }
+        });
+    }
+
+
+    /**
+     * Method to validate the books in a folder and write the report
+     * to standard output, as JSON lines.
+     * @param args The arguments of the application
+     * @return The exit code, 0 if all books could be read
+     */
+    private static int validate(final String[] args) {
+        if (args.length != 2) {
+            System.err.println("Usage: --validate <folder or book>");
+            return 2;
+        }
+
+        // No window is opened, so this also runs on servers without a display
+        System.setProperty("java.awt.headless", "true");
+
+        try {
+            return new LibraryValidator(Path.of(args[1]), System.out)
+                    .validate() ? 0 : 1;
+        } catch (Exception e) {
+            e.printStackTrace();
+            return 2;
+        }
+    }
+
+
+    /**
+     * Method to repack the rar books in a folder into zip books and write
+     * the report to standard output, as JSON lines.
+     * @param args The arguments of the application
+     * @return The exit code, 0 if no book failed
+     */
+    private static int repack(final String[] args) {
+        if (args.length != 2) {
+            System.err.println("Usage: --repack <folder or book>");
+            return 2;
+        }
+
+        System.setProperty("java.awt.headless", "true");
+
+        try {
+            return new LibraryRepacker(Path.of(args[1]), System.out)
+                    .repack() ? 0 : 1;
+        } catch (Exception e) {
+            e.printStackTrace();
+            return 2;
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package xyz.jelmer8.cli;
+
+import xyz.jelmer8.models.LibraryIndex;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Helpers shared by the command line modes.
+ */
+final class Commands {
+
+    private Commands() {
+
+    }
+
+
+    /**
+     * Method to find the books under a folder, in name order.
+     * @param libraryPath The folder with the books, or a single book
+     * @return The paths of the books
+     */
+    static List<Path> findBooks(final Path libraryPath) throws IOException {
+        if (Files.isRegularFile(libraryPath)) {
+            return List.of(libraryPath);
+        }
+
+        try (Stream<Path> paths = Files.walk(libraryPath)) {
+            return paths.filter(Files::isRegularFile)
+                    .filter(path -> LibraryIndex.isBook(
+                            path.getFileName().toString()))
+                    .sorted()
+                    .toList();
+        }
+    }
+
+
+    /**
+     * Method to write a string as a JSON string.
+     * @param value The string
+     * @return The quoted and escaped string
+     */
+    static String quote(final String value) {
+        StringBuilder quoted = new StringBuilder("\"");
+
+        for (char c : value.toCharArray()) {
+            switch (c) {
+                case '"' -> quoted.append("\\\"");
+                case '\\' -> quoted.append("\\\\");
+                case '\n' -> quoted.append("\\n");
+                case '\r' -> quoted.append("\\r");
+                case '\t' -> quoted.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        quoted.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        quoted.append(c);
+                    }
+                }
+            }
+        }
+
+        return quoted.append('"').toString();
+    }
+}
@@ -0,0 +1,87 @@
+package xyz.jelmer8.cli;
+
+import xyz.jelmer8.models.BookRepacker;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Repacks the rar books under a folder into zip books without a window.
+ * Every book is written as one JSON object per line when it is done,
+ * followed by a summary line.
+ */
+public class LibraryRepacker {
+
+    /** The folder with the books. */
+    private final Path libraryPath;
+
+    /** The stream the report is written to. */
+    private final PrintStream out;
+
+
+    /**
+     * Constructor of the LibraryRepacker class.
+     * @param libraryPath The folder with the books, or a single book
+     * @param out The stream the report is written to
+     */
+    public LibraryRepacker(final Path libraryPath, final PrintStream out) {
+        this.libraryPath = libraryPath;
+        this.out = out;
+    }
+
+
+    /**
+     * Method to repack all rar books and write the report.
+     * @return true if no book failed
+     */
+    public boolean repack() throws IOException, InterruptedException {
+        List<Path> books = Commands.findBooks(libraryPath).stream()
+                .filter(book -> book.getFileName().toString().endsWith(".cbr"))
+                .toList();
+        long start = System.nanoTime();
+
+        List<BookRepacker.Result> results = new BookRepacker().repack(books,
+                result -> {
+                    synchronized (out) {
+                        out.println(toJson(result));
+                    }
+                });
+
+        long repacked = results.stream().filter(result ->
+                result.status() == BookRepacker.Status.REPACKED).count();
+        long failed = results.stream().filter(result ->
+                result.status() == BookRepacker.Status.FAILED).count();
+
+        out.println("{\"summary\":true"
+                + ",\"books\":" + books.size()
+                + ",\"repacked\":" + repacked
+                + ",\"skipped\":" + (books.size() - repacked - failed)
+                + ",\"failed\":" + failed
+                + ",\"totalMillis\":" + (System.nanoTime() - start) / 1_000_000
+                + "}");
+        out.flush();
+
+        return failed == 0;
+    }
+
+
+    /**
+     * Method to write the result of a book as a JSON object.
+     * @param result The result of the book
+     * @return The JSON object on a single line
+     */
+    private static String toJson(final BookRepacker.Result result) {
+        return "{\"book\":" + Commands.quote(result.source().toString())
+                + ",\"target\":" + Commands.quote(result.target().toString())
+                + ",\"status\":" + Commands.quote(
+                        result.status().name().toLowerCase())
+                + (result.message() != null
+                        ? ",\"message\":" + Commands.quote(result.message()) : "")
+                + ",\"sourceBytes\":" + result.sourceBytes()
+                + ",\"targetBytes\":" + result.targetBytes()
+                + ",\"millis\":" + String.format("%.3f", result.nanos() / 1e6)
+                + "}";
+    }
+}
@@ -0,0 +1,285 @@
+package xyz.jelmer8.cli;
+
+import xyz.jelmer8.models.BookModel;
+import xyz.jelmer8.models.ImageModel;
+import xyz.jelmer8.models.PageCache;
+import xyz.jelmer8.models.RarBookModel;
+import xyz.jelmer8.models.ZipBookModel;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Opens every book under a folder without a window, decodes all pages
+ * and reports per book how long opening and decoding took, how much
+ * memory it used and which pages could not be decoded. The report is
+ * written as one JSON object per line, followed by a summary line, so
+ * nightly runs can check and compare libraries.
+ */
+public class LibraryValidator {
+
+    /** The number of books that are validated at the same time. */
+    private static final int VALIDATORTHREADS = Integer.getInteger(
+            "comicbookreader.validate.threads",
+            Runtime.getRuntime().availableProcessors());
+
+    /** The width pages are decoded for, 0 decodes at full resolution. */
+    private static final int VALIDATEWIDTH =
+            Integer.getInteger("comicbookreader.validate.width", 0);
+
+    /** The result of validating a book. */
+    private record BookReport(String bookPath, String error, int pageCount,
+                              List<String> corruptPages, long openNanos,
+                              long decodeNanos, long bytesInflated,
+                              long allocatedBytes, long peakPageBytes) {
+
+        /**
+         * Method to check if the whole book could be read.
+         * @return true if the book opened and all pages decoded
+         */
+        boolean isValid() {
+            return error == null && corruptPages.isEmpty();
+        }
+
+        /**
+         * Method to write the report as a JSON object.
+         * @return The JSON object on a single line
+         */
+        String toJson() {
+            double decodeSeconds = decodeNanos / 1e9;
+
+            return "{\"book\":" + Commands.quote(bookPath)
+                    + ",\"status\":" + Commands.quote(error != null ? "unreadable"
+                            : isValid() ? "ok" : "corrupt")
+                    + (error != null ? ",\"error\":" + Commands.quote(error) : "")
+                    + ",\"pages\":" + pageCount
+                    + ",\"corruptPages\":[" + String.join(",", corruptPages) + "]"
+                    + ",\"openMillis\":" + String.format("%.3f", openNanos / 1e6)
+                    + ",\"decodeMillis\":" + String.format("%.3f", decodeNanos / 1e6)
+                    + ",\"pagesPerSecond\":" + String.format("%.1f",
+                            decodeSeconds > 0 ? pageCount / decodeSeconds : 0)
+                    + ",\"inflatedBytesPerSecond\":" + (long) (decodeSeconds > 0
+                            ? bytesInflated / decodeSeconds : 0)
+                    + ",\"allocatedBytes\":" + allocatedBytes
+                    + ",\"peakPageBytes\":" + peakPageBytes + "}";
+        }
+    }
+
+    /** The folder with the books. */
+    private final Path libraryPath;
+
+    /** The stream the report is written to. */
+    private final PrintStream out;
+
+    /** The cache the books decode into, pages are not kept. */
+    private final PageCache pageCache = new PageCache(0);
+
+    /** Gives the bytes allocated by a thread, if the JVM counts them. */
+    private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+
+    /**
+     * Constructor of the LibraryValidator class.
+     * @param libraryPath The folder with the books, or a single book
+     * @param out The stream the report is written to
+     */
+    public LibraryValidator(final Path libraryPath, final PrintStream out) {
+        this.libraryPath = libraryPath;
+        this.out = out;
+    }
+
+
+    /**
+     * Method to validate all books and write the report.
+     * @return true if all books could be read completely
+     */
+    public boolean validate() throws IOException, InterruptedException {
+        List<Path> books = Commands.findBooks(libraryPath);
+        ManagementFactory.getMemoryPoolMXBeans()
+                .forEach(MemoryPoolMXBean::resetPeakUsage);
+
+        ExecutorService validators = Executors.newFixedThreadPool(
+                VALIDATORTHREADS, Thread.ofPlatform().daemon()
+                        .name("validator-", 0).factory());
+        long start = System.nanoTime();
+
+        int failedBooks = 0;
+        int totalPages = 0;
+        int corruptPages = 0;
+
+        try {
+            List<Future<BookReport>> reports = new ArrayList<>();
+            for (Path book : books) {
+                reports.add(validators.submit(() -> validateBook(book)));
+            }
+
+            for (Future<BookReport> future : reports) {
+                BookReport report = future.get();
+
+                out.println(report.toJson());
+                if (!report.isValid()) {
+                    failedBooks++;
+                }
+                totalPages += report.pageCount();
+                corruptPages += report.corruptPages().size();
+            }
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        } finally {
+            validators.shutdownNow();
+        }
+
+        out.println("{\"summary\":true"
+                + ",\"books\":" + books.size()
+                + ",\"failedBooks\":" + failedBooks
+                + ",\"pages\":" + totalPages
+                + ",\"corruptPages\":" + corruptPages
+                + ",\"threads\":" + VALIDATORTHREADS
+                + ",\"totalMillis\":" + (System.nanoTime() - start) / 1_000_000
+                + ",\"peakHeapBytes\":" + getPeakHeapBytes() + "}");
+        out.flush();
+
+        return failedBooks == 0;
+    }
+
+
+    /**
+     * Method to open a book and decode all of its pages.
+     * A book that can not be opened is reported, not thrown.
+     * @param book The path of the book
+     * @return The report of the book
+     */
+    private BookReport validateBook(final Path book) {
+        final String bookPath = book.toString();
+        final long threadId = Thread.currentThread().threadId();
+        final long allocatedBefore = getAllocatedBytes(threadId);
+        final long openStart = System.nanoTime();
+
+        BookModel bookModel = null;
+        try {
+            bookModel = createBookModel(bookPath);
+            bookModel.indexBook();
+        } catch (Exception e) {
+            closeBook(bookModel);
+            return new BookReport(bookPath, String.valueOf(e), 0, List.of(),
+                    System.nanoTime() - openStart, 0, 0,
+                    getAllocatedBytes(threadId) - allocatedBefore, 0);
+        }
+
+        final long openNanos = System.nanoTime() - openStart;
+        final List<String> corruptPages = new ArrayList<>();
+        long peakPageBytes = 0;
+
+        bookModel.setDisplayWidth(VALIDATEWIDTH);
+        final long decodeStart = System.nanoTime();
+
+        for (int page = 0; page < bookModel.getPageCount(); page++) {
+            try {
+                ImageModel image = bookModel.getPageImage(page);
+                peakPageBytes = Math.max(peakPageBytes, PageCache.sizeOf(image));
+
+                // A damaged page can decode with a warning, like a truncated jpeg
+                String warning = bookModel.getMetrics().getPageWarnings().get(page);
+                if (warning != null) {
+                    corruptPages.add(corruptPage(page, warning));
+                }
+            } catch (RuntimeException e) {
+                Throwable cause = e.getCause() != null ? e.getCause() : e;
+                corruptPages.add(corruptPage(page, String.valueOf(cause)));
+            }
+        }
+
+        final long decodeNanos = System.nanoTime() - decodeStart;
+        final long bytesInflated = bookModel.getMetrics().getBytesInflated();
+
+        closeBook(bookModel);
+
+        return new BookReport(bookPath, null, bookModel.getPageCount(),
+                corruptPages, openNanos, decodeNanos, bytesInflated,
+                getAllocatedBytes(threadId) - allocatedBefore, peakPageBytes);
+    }
+
+
+    /**
+     * Method to close a book, its pages are removed from the cache.
+     * @param bookModel The book model, or null if it was not created
+     */
+    private static void closeBook(final BookModel bookModel) {
+        if (bookModel == null) {
+            return;
+        }
+
+        try {
+            bookModel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+
+    /**
+     * Method to write a page that could not be decoded as a JSON object.
+     * @param page The index of the page
+     * @param error The error or warning of the page
+     * @return The JSON object
+     */
+    private static String corruptPage(final int page, final String error) {
+        return "{\"page\":" + page + ",\"error\":" + Commands.quote(error) + "}";
+    }
+
+
+    /**
+     * Method to create the book model for a book.
+     * @param bookPath The path of the book
+     * @return The book model, not indexed yet
+     */
+    private BookModel createBookModel(final String bookPath) throws IOException {
+        if (bookPath.endsWith(".cbz") || bookPath.endsWith(".nhlcomic")) {
+            return new ZipBookModel(bookPath, pageCache);
+        } else if (bookPath.endsWith(".cbr")) {
+            return new RarBookModel(bookPath, pageCache);
+        }
+
+        throw new IOException("Unsupported file extension");
+    }
+
+
+    /**
+     * Method to get the bytes a thread allocated so far.
+     * @param threadId The id of the thread
+     * @return The allocated bytes, or 0 if the JVM does not count them
+     */
+    private long getAllocatedBytes(final long threadId) {
+        if (threads instanceof com.sun.management.ThreadMXBean counter
+                && counter.isThreadAllocatedMemoryEnabled()) {
+            return Math.max(0, counter.getThreadAllocatedBytes(threadId));
+        }
+
+        return 0;
+    }
+
+
+    /**
+     * Method to get the highest heap use since the validation started.
+     * The peaks of the pools can be at different times, so this is an
+     * upper bound of the real peak.
+     * @return The peak heap use in bytes
+     */
+    private static long getPeakHeapBytes() {
+        return ManagementFactory.getMemoryPoolMXBeans().stream()
+                .filter(pool -> pool.getType() == MemoryType.HEAP)
+                .mapToLong(pool -> pool.getPeakUsage().getUsed())
+                .sum();
+    }
+}
@@ -0,0 +1,1006 @@
+package xyz.jelmer8.controllers;
+
+import xyz.jelmer8.metrics.ReaderEvents;
+import xyz.jelmer8.metrics.ReaderMetrics;
+import xyz.jelmer8.models.BookModel;
+import xyz.jelmer8.models.BookRepacker;
+import xyz.jelmer8.models.DiskPageCache;
+import xyz.jelmer8.models.ImageModel;
+import xyz.jelmer8.models.LibraryIndex;
+import xyz.jelmer8.models.LibraryWatcher;
+import xyz.jelmer8.models.MemoryGovernor;
+import xyz.jelmer8.models.PageCache;
+import xyz.jelmer8.models.PagePrefetcher;
+import xyz.jelmer8.models.RarBookModel;
+import xyz.jelmer8.models.ReadingSession;
+import xyz.jelmer8.models.ThumbnailCache;
+import xyz.jelmer8.models.ZipBookModel;
+import xyz.jelmer8.views.ComicBookView;
+import xyz.jelmer8.views.MainMenuView;
+
+import java.awt.CardLayout;
+import java.awt.EventQueue;
+
+import java.awt.event.*;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+
+public class Controller {
+
+    /** If the pages of a book are decoded in the background when it opens. */
+    private static final boolean PRELOADPAGES = Boolean.parseBoolean(
+            System.getProperty("comicbookreader.preload", "true"));
+
+    /** The number of pages on each side of the open page that are saved as snapshots. */
+    private static final int SNAPSHOTNEIGHBOURS =
+            Integer.getInteger("comicbookreader.session.neighbours", 1);
+
+    /** The starting view, main menu. */
+    private final MainMenuView mainMenuView;
+
+    /** The view where the user can read the comic book. */
+    private final ComicBookView comicBookView;
+
+    /** The model that the controller will be working with. */
+    private final HashMap<String, BookModel> bookModelMap;
+
+    /** The cache of decoded pages, shared by all the book models. */
+    private final PageCache pageCache;
+
+    /** The decoded pages on disk, shared by all the book models. */
+    private final DiskPageCache diskPageCache;
+
+    /** Decodes the pages around the current page in the background. */
+    private final PagePrefetcher pagePrefetcher;
+
+    /**
+     * Decodes and scales the page the user turned to, off the event thread.
+     * Only the newest turn waits, older turns that did not start are dropped.
+     */
+    private final ThreadPoolExecutor pageTurner = new ThreadPoolExecutor(1, 1,
+            0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(1),
+            Thread.ofPlatform().daemon().name("page-turner").factory(),
+            new ThreadPoolExecutor.DiscardOldestPolicy());
+
+    /** Counts the page turns, only the page of the newest turn is shown. */
+    private final AtomicInteger pageTurnGeneration = new AtomicInteger();
+
+    /** Opens books and preloads their pages, off the event thread. */
+    private final ExecutorService bookLoader = Executors.newSingleThreadExecutor(
+            Thread.ofPlatform().daemon().name("book-loader").factory());
+
+    /** The book that is being opened or preloaded. */
+    private Future<?> bookLoading;
+
+    /** Counts the opens, used to ignore the results of replaced opens. */
+    private int openGeneration = 0;
+
+    /** Scans the library folder, off the event thread. */
+    private final ExecutorService libraryScanner = Executors.newSingleThreadExecutor(
+            Thread.ofPlatform().daemon().name("library-scanner").factory());
+
+    /** The library scan that is running. */
+    private Future<?> libraryScan;
+
+    /** Counts the scans, used to ignore the results of replaced scans. */
+    private int scanGeneration = 0;
+
+    /** The index of the library that was scanned last, only used by the scanner. */
+    private LibraryIndex libraryIndex;
+
+    /** Keeps the library index up to date, only used by the scanner. */
+    private LibraryWatcher libraryWatcher;
+
+    /** Converts rar books to zip books, off the event thread. */
+    private final ExecutorService libraryRepacker = Executors.newSingleThreadExecutor(
+            Thread.ofPlatform().daemon().name("library-repacker").factory());
+
+    /** The conversion that is running. */
+    private Future<?> libraryRepack;
+
+    /** The cover thumbnails of the books. */
+    private final ThumbnailCache thumbnailCache = new ThumbnailCache();
+
+    /** The open book and the pages of the books, kept between runs. */
+    private final ReadingSession readingSession = new ReadingSession();
+
+    /** The books shown in the main menu. */
+    private List<Path> shownBooks = List.of();
+
+    /** If the user zoomed in to view pages at full resolution. */
+    private boolean fullResolution = false;
+
+    private String currentBookPath;
+
+    /** The book that was clicked last, it may still be opening. */
+    private String openingBookPath;
+
+    /** Frees the memory of books that are not read when the heap runs low. */
+    private final MemoryGovernor memoryGovernor;
+
+    /** If freeing memory is queued on the event thread already. */
+    private final AtomicBoolean memoryReliefQueued = new AtomicBoolean();
+
+    /** The card layout of the GUI, used to control which screen is visible. */
+    private final CardLayout mainCardLayout;
+
+
+    /**
+     * Constructor of the Controller class.
+     * @param modelMap the set of models
+     * @param pageCache the cache of decoded pages
+     * @param diskPageCache the decoded pages on disk
+     * @param view the starting view, main menu
+     * @param comicBookView the comic book view
+     * @param cardLayout the cardLayout of the frame
+     */
+    public Controller(HashMap<String, BookModel> modelMap,
+                      final PageCache pageCache,
+                      final DiskPageCache diskPageCache, final MainMenuView view,
+                      final ComicBookView comicBookView,
+                      final CardLayout cardLayout) {
+        this.bookModelMap = modelMap;
+        this.pageCache = pageCache;
+        this.diskPageCache = diskPageCache;
+        this.mainMenuView = view;
+        this.comicBookView = comicBookView;
+        this.mainCardLayout = cardLayout;
+        this.pagePrefetcher = new PagePrefetcher(
+                comicBookView::prescaleComicBookImage);
+
+        // Notifications of one low memory moment are handled once
+        this.memoryGovernor = new MemoryGovernor(() -> {
+            if (memoryReliefQueued.compareAndSet(false, true)) {
+                EventQueue.invokeLater(this::relieveMemoryPressure);
+            }
+        });
+
+        // Button listener for the 'load books' button on the main view
+        mainMenuView.addButtonActionListener((ActionEvent e) -> {
+            try {
+                loadBooks();
+            } catch (Exception ex) {
+                mainMenuView.setInfoMessage(MainMenuView.MessageType.ERROR,
+                        "Error: " + ex);
+            }
+        });
+
+        // Button listener for the 'convert' button on the main view
+        mainMenuView.addRepackButtonActionListener(_ -> repackBooks());
+
+        // One listener for the load buttons of all the books in the list
+        mainMenuView.setBookListener(
+                index -> loadBook(shownBooks.get(index).toString()));
+        mainMenuView.setThumbnailProvider((index, onLoaded) ->
+                thumbnailCache.getThumbnail(shownBooks.get(index), onLoaded));
+
+        // Button listener for the 'stop reading' button on the comic book view
+        // And the 'previous page' and 'next page' buttons
+        comicBookView.setButtonListeners(
+                _ -> {
+                    cancelBookLoading();
+                    pagePrefetcher.cancel();
+                    comicBookView.clearImage();
+                    mainCardLayout.previous(mainMenuView.getParent());
+                    saveReadingSession(null);
+                },
+                _ -> turnPage(-1),
+                _ -> turnPage(1)
+        );
+
+        // Listening for mouse drag events on the comic book view.
+        // Used for panning the comic book
+        comicBookView.setPanelListener(new MouseMotionAdapter() {
+            @Override
+            public void mouseDragged(final MouseEvent e) {
+                comicBookView.panComicBookImage(e.getXOnScreen(),
+                        e.getYOnScreen());
+            }
+        }, new MouseAdapter() {
+            @Override
+            public void mousePressed(final MouseEvent e) {
+                comicBookView.setMousePressed(e.getXOnScreen(), e.getYOnScreen());
+            }
+
+            @Override
+            public void mouseClicked(final MouseEvent e) {
+                // Double click switches between fit and full resolution
+                if (e.getClickCount() == 2) {
+                    toggleFullResolution();
+                }
+            }
+        });
+
+        // Add a component listener to resize the comic book image when the view is resized
+        comicBookView.addComponentListener(new ComponentAdapter() {
+            public void componentResized(final ComponentEvent componentEvent) {
+                updateDisplayWidth(bookModelMap.get(currentBookPath));
+                comicBookView.resizeComicBookImage();
+            }
+        });
+
+        // Show the books of the library from the last run right away
+        scanLibrary(true);
+
+        // Continue reading where the last run stopped
+        readingSession.load();
+        resumeBook();
+    }
+
+
+    /**
+     * This method will load all the books from the path that the user
+     * has inputted in the text area. It will display the books in the
+     * panel of the view.
+     */
+    private void loadBooks() {
+        scanLibrary(false);
+    }
+
+
+    /**
+     * Convert the rar books in the book list to zip books in the background.
+     * The zip books are written next to the rar books, the library watcher
+     * adds them to the list.
+     */
+    private void repackBooks() {
+        if (libraryRepack != null && !libraryRepack.isDone()) {
+            return;
+        }
+
+        final List<Path> rarBooks = shownBooks.stream()
+                .filter(book -> book.getFileName().toString().endsWith(".cbr"))
+                .toList();
+
+        if (rarBooks.isEmpty()) {
+            mainMenuView.setInfoMessage(MainMenuView.MessageType.INFO,
+                    "There are no CBR books to convert");
+            return;
+        }
+
+        mainMenuView.setInfoMessage(MainMenuView.MessageType.INFO,
+                "Converting " + rarBooks.size() + " books...");
+        libraryRepack = libraryRepacker.submit(() -> repackBooks(rarBooks));
+    }
+
+
+    /**
+     * Convert rar books to zip books on the library repacker thread.
+     *
+     * @param rarBooks the rar books to convert
+     */
+    private void repackBooks(final List<Path> rarBooks) {
+        final AtomicInteger repackedBooks = new AtomicInteger();
+
+        try {
+            List<BookRepacker.Result> results = new BookRepacker().repack(
+                    rarBooks, _ -> {
+                        int count = repackedBooks.incrementAndGet();
+                        EventQueue.invokeLater(() -> mainMenuView.setInfoMessage(
+                                MainMenuView.MessageType.INFO, "Converted " + count
+                                        + " of " + rarBooks.size() + " books..."));
+                    });
+
+            List<BookRepacker.Result> failed = results.stream()
+                    .filter(result -> result.status() == BookRepacker.Status.FAILED)
+                    .toList();
+
+            EventQueue.invokeLater(() -> {
+                if (failed.isEmpty()) {
+                    mainMenuView.setInfoMessage(MainMenuView.MessageType.INFO,
+                            "Converted " + rarBooks.size() + " books");
+                } else {
+                    mainMenuView.setInfoMessage(MainMenuView.MessageType.ERROR,
+                            "Could not convert " + failed.size() + " books: "
+                                    + failed.getFirst().message());
+                }
+            });
+        } catch (InterruptedException e) {
+            // The application is closing
+        }
+    }
+
+
+    /**
+     * Scan the library at the path in the text area in the background.
+     * The books from the index of the last scan are shown first, and
+     * updated when the scan finds changes.
+     *
+     * @param onlyIfIndexed only scan if the library has been indexed before
+     */
+    private void scanLibrary(final boolean onlyIfIndexed) {
+        if (libraryScan != null) {
+            libraryScan.cancel(true);
+        }
+
+        final int generation = ++scanGeneration;
+        final Path booksPath = Paths.get(mainMenuView.getPathTextAreaText());
+
+        if (!onlyIfIndexed) {
+            mainMenuView.setInfoMessage(MainMenuView.MessageType.INFO,
+                    "Loading books...");
+        }
+
+        libraryScan = libraryScanner.submit(
+                () -> scanLibrary(booksPath, onlyIfIndexed, generation));
+    }
+
+
+    /**
+     * Scan the library on the library scanner thread.
+     *
+     * @param booksPath the root folder of the library
+     * @param onlyIfIndexed only scan if the library has been indexed before
+     * @param generation the scan that this is
+     */
+    private void scanLibrary(final Path booksPath, final boolean onlyIfIndexed,
+                             final int generation) {
+        stopWatchingLibrary();
+
+        if (libraryIndex == null || !libraryIndex.getLibraryPath()
+                .equals(booksPath.toAbsolutePath().normalize())) {
+            libraryIndex = new LibraryIndex(booksPath);
+
+            boolean indexed = libraryIndex.load();
+            if (!indexed && onlyIfIndexed) {
+                libraryIndex = null;
+                return;
+            }
+
+            if (indexed) {
+                showBooks(getIndexedBooks(), generation, true);
+            }
+        }
+
+        try {
+            if (libraryIndex.rescan()) {
+                libraryIndex.save();
+            }
+            showBooks(getIndexedBooks(), generation, false);
+
+            // Show books that are added or removed while reading
+            final LibraryIndex watchedIndex = libraryIndex;
+            libraryWatcher = new LibraryWatcher(watchedIndex,
+                    changes -> showBookChanges(changes,
+                            getBookPaths(watchedIndex), generation));
+        } catch (InterruptedIOException e) {
+            // A newer scan replaced this one
+        } catch (IOException e) {
+            libraryIndex = null;
+            stopWatchingLibrary();
+            EventQueue.invokeLater(() -> {
+                if (generation == scanGeneration) {
+                    mainMenuView.setInfoMessage(MainMenuView.MessageType.ERROR,
+                            "Error: " + e);
+                }
+            });
+        }
+    }
+
+
+    /**
+     * Stop watching the library for changes, on the library scanner thread.
+     */
+    private void stopWatchingLibrary() {
+        if (libraryWatcher != null) {
+            libraryWatcher.close();
+            libraryWatcher = null;
+        }
+    }
+
+
+    /**
+     * Get the paths of the books in the library index.
+     * @return List<Path> of the books
+     */
+    private List<Path> getIndexedBooks() {
+        return getBookPaths(libraryIndex);
+    }
+
+
+    /**
+     * Get the paths of the books in a library index.
+     * @param index the library index
+     * @return List<Path> of the books
+     */
+    private static List<Path> getBookPaths(final LibraryIndex index) {
+        List<Path> books = new ArrayList<>();
+
+        for (LibraryIndex.BookEntry book : index.getBooks()) {
+            books.add(book.path());
+        }
+
+        return books;
+    }
+
+
+    /**
+     * Add and remove the books that changed in the library to the main menu,
+     * on the event thread. The other books stay in the panel. The thumbnails
+     * of books that were written to are made again, the book may have been
+     * copied only partly when its thumbnail was made.
+     *
+     * @param changes the books that were added, removed and changed
+     * @param books List<Path> of all the books after the changes
+     * @param generation the scan that started watching the library
+     */
+    private void showBookChanges(final LibraryIndex.Changes changes,
+                                 final List<Path> books, final int generation) {
+        for (LibraryIndex.BookEntry book : changes.removed()) {
+            thumbnailCache.forget(book.path());
+        }
+        for (LibraryIndex.BookEntry book : changes.changed()) {
+            thumbnailCache.forget(book.path());
+        }
+
+        EventQueue.invokeLater(() -> {
+            // A newer scan has replaced this one
+            if (generation != scanGeneration) {
+                return;
+            }
+
+            // The panel asks for the thumbnails of its rows by index right
+            // away, so the shown books are changed before every row
+            List<Path> updatedBooks = new ArrayList<>(shownBooks);
+
+            for (LibraryIndex.BookEntry book : changes.removed()) {
+                int index = updatedBooks.indexOf(book.path());
+
+                if (index != -1) {
+                    updatedBooks.remove(index);
+                    shownBooks = List.copyOf(updatedBooks);
+                    mainMenuView.removeBookFromPanel(index);
+                }
+            }
+
+            // Insert in the order of the new list, so every index is final
+            List<Path> addedBooks = new ArrayList<>();
+            for (LibraryIndex.BookEntry book : changes.added()) {
+                addedBooks.add(book.path());
+            }
+            addedBooks.sort(Comparator.comparingInt(books::indexOf));
+
+            for (Path book : addedBooks) {
+                int index = books.indexOf(book);
+
+                if (index == -1 || index > updatedBooks.size()) {
+                    break; // The panel is out of step, rebuilt below
+                }
+
+                updatedBooks.add(index, book);
+                shownBooks = List.copyOf(updatedBooks);
+                mainMenuView.addBookToPanel(index,
+                        book.getFileName().toString());
+            }
+
+            if (!changes.changed().isEmpty()) {
+                mainMenuView.refreshThumbnails();
+            }
+
+            if (!updatedBooks.equals(books)) {
+                shownBooks = books;
+                mainMenuView.setBooksInPanel(generateNamesForBooks(books));
+            }
+
+            mainMenuView.setInfoMessage(MainMenuView.MessageType.INFO,
+                    "Books loaded: " + books.size());
+        });
+    }
+
+
+    /**
+     * Show the books of the library in the main menu, on the event thread.
+     *
+     * @param books List<Path> of the books
+     * @param generation the scan that found the books
+     * @param checking if the library is still being checked for changes
+     */
+    private void showBooks(final List<Path> books, final int generation,
+                           final boolean checking) {
+        EventQueue.invokeLater(() -> {
+            // A newer scan has replaced this one
+            if (generation != scanGeneration) {
+                return;
+            }
+
+            // If no books are found at the provided path, show error message
+            if (books.isEmpty() && !checking) {
+                mainMenuView.setInfoMessage(MainMenuView.MessageType.ERROR,
+                        "No books found in specified path.");
+            } else {
+                mainMenuView.setInfoMessage(MainMenuView.MessageType.INFO,
+                        "Books loaded: " + books.size()
+                                + (checking ? " (checking for changes...)" : ""));
+            }
+
+            // Only rebuild the panel if the books changed
+            if (books.equals(shownBooks)) {
+                return;
+            }
+            shownBooks = books;
+
+            // Update the view with the books
+            mainMenuView.setBooksInPanel(generateNamesForBooks(books));
+        });
+    }
+
+
+    /**
+     * Make the names shown in the book list for the loaded books.
+     * @param books List<Path> of all the loaded books
+     * @return List<String>
+     */
+    private List<String> generateNamesForBooks(final List<Path> books) {
+        List<String> names = new ArrayList<>();
+
+        for (Path book : books) {
+            names.add(book.getFileName().toString());
+        }
+
+        return names;
+    }
+
+
+    /**
+     * Create and index the book model for a book.
+     * @param bookPath string containing the path to the book
+     * @return the indexed book model
+     * @throws Exception Can throw archive and filesystem Exceptions
+     */
+    private BookModel createBookModel(final String bookPath) throws Exception {
+        BookModel bookModel;
+
+        // Determine the type of book and create the appropriate model
+        if (bookPath.endsWith(".cbz") || bookPath.endsWith(".nhlcomic")) {
+            bookModel = new ZipBookModel(bookPath, pageCache);
+        } else if (bookPath.endsWith(".cbr")) {
+            bookModel = new RarBookModel(bookPath, pageCache);
+        } else {
+            throw new IOException("Unsupported file extension");
+        }
+        bookModel.setDiskPageCache(diskPageCache);
+
+        try {
+            bookModel.indexBook();
+        } catch (Exception ex) {
+            bookModel.close();
+            throw ex;
+        }
+
+        return bookModel;
+    }
+
+
+    /**
+     * This method will open a book from the path that the user has
+     * clicked on in the panel. The book is opened in the background,
+     * clicking another book cancels the open.
+     *
+     * @param bookPath string containing the path to the book to be loaded
+     */
+    private void loadBook(final String bookPath) {
+        cancelBookLoading();
+
+        final ReaderEvents.BookOpen openEvent = new ReaderEvents.BookOpen();
+        openEvent.start();
+
+        final int generation = ++openGeneration;
+        final BookModel bookModel = bookModelMap.get(bookPath);
+        openingBookPath = bookPath;
+        final int displayWidth = comicBookView.getWidth();
+        fullResolution = false;
+
+        // A book that is opened for the first time in this run
+        // starts at the page it was left at in an earlier run
+        final int startPage = bookModel == null
+                ? readingSession.getPage(bookPath) : -1;
+
+        mainMenuView.setInfoMessage(MainMenuView.MessageType.INFO,
+                "Opening " + Paths.get(bookPath).getFileName() + "...");
+
+        bookLoading = bookLoader.submit(() -> openBook(bookPath, bookModel,
+                displayWidth, startPage, List.of(), generation, openEvent));
+    }
+
+
+    /**
+     * Open the book that was being read when the reader was closed. The
+     * snapshot of the open page is shown as soon as it is read, before
+     * the book itself is opened, and the snapshots of the pages around it
+     * are put into the page cache.
+     */
+    private void resumeBook() {
+        final String bookPath = readingSession.getOpenBook();
+        if (bookPath == null) {
+            return;
+        }
+
+        final ReaderEvents.BookOpen openEvent = new ReaderEvents.BookOpen();
+        openEvent.start();
+
+        final int generation = ++openGeneration;
+        final int startPage = readingSession.getPage(bookPath);
+        final int snapshotWidth = readingSession.getSnapshotWidth(bookPath);
+        openingBookPath = bookPath;
+
+        bookLoading = bookLoader.submit(() -> {
+            final List<ImageModel> snapshots = readingSession.loadSnapshots(
+                    bookPath, snapshot -> {
+                        if (snapshot.page() != startPage) {
+                            return;
+                        }
+
+                        EventQueue.invokeLater(() -> {
+                            if (generation == openGeneration) {
+                                comicBookView.setComicBookImage(snapshot);
+                                mainCardLayout.last(mainMenuView.getParent());
+                                comicBookView.resetImagePan();
+                            }
+                        });
+                    });
+
+            openBook(bookPath, null, snapshotWidth > 0
+                            ? snapshotWidth : comicBookView.getWidth(),
+                    startPage, snapshots, generation, openEvent);
+        });
+    }
+
+
+    /**
+     * Open a book on the book loader thread. The comic book view is shown
+     * as soon as the first page is decoded, the rest of the book is
+     * preloaded afterwards.
+     *
+     * @param bookPath string containing the path to the book to be opened
+     * @param existingModel the book model of the book, or null if the
+     *                      book has not been opened before
+     * @param displayWidth the width to decode the pages for
+     * @param startPage the page to open the book at, -1 for its current page
+     * @param snapshots pages decoded in an earlier run, put into the cache
+     * @param generation the open that this book belongs to
+     * @param openEvent the event measuring the open, started when clicked
+     */
+    private void openBook(final String bookPath, final BookModel existingModel,
+                          final int displayWidth, final int startPage,
+                          final List<ImageModel> snapshots, final int generation,
+                          final ReaderEvents.BookOpen openEvent) {
+        final BookModel bookModel;
+        final ImageModel image;
+
+        try {
+            bookModel = existingModel != null
+                    ? existingModel : createBookModel(bookPath);
+        } catch (Exception ex) {
+            showOpenError(generation, "Error: " + ex.getMessage());
+            return; // If there's an error, return
+        }
+
+        // Get the image of the book that was previously seen
+        try {
+            bookModel.setDisplayWidth(displayWidth);
+            bookModel.restorePages(snapshots);
+            image = bookModel.getBookImage(startPage >= 0
+                    ? Math.min(startPage, bookModel.getPageCount() - 1) : -1);
+        } catch (Exception e) {
+            e.printStackTrace();
+            showOpenError(generation, "Error occurred while loading the book");
+            closeUnusedBookModel(bookModel, existingModel);
+            return; // If there's an error, return
+        }
+
+        EventQueue.invokeLater(() -> {
+            // A newer open has replaced this one
+            if (generation != openGeneration) {
+                closeUnusedBookModel(bookModel, existingModel);
+                return;
+            }
+
+            currentBookPath = bookPath;
+            bookModelMap.put(bookPath, bookModel);
+            showBookImage(image);
+
+            // Switch to the comic book view
+            mainCardLayout.last(mainMenuView.getParent());
+            mainMenuView.setInfoMessage(MainMenuView.MessageType.EMPTY, "");
+            comicBookView.resetImagePan();
+
+            openEvent.bookPath = bookPath;
+            openEvent.pageCount = bookModel.getPageCount();
+            openEvent.reopened = existingModel != null;
+            ReaderMetrics.get().recordBookOpen(openEvent.finish());
+        });
+
+        // Fill in the rest of the book in the background
+        if (PRELOADPAGES) {
+            preloadBook(bookModel, generation);
+        }
+    }
+
+
+    /**
+     * Preload the pages of an opened book and show the progress.
+     * @param bookModel the book to preload
+     * @param generation the open that this book belongs to
+     */
+    private void preloadBook(final BookModel bookModel, final int generation) {
+        final int pageCount = bookModel.getPageCount();
+
+        try {
+            bookModel.preloadPages(loadedPages -> EventQueue.invokeLater(() -> {
+                if (generation == openGeneration) {
+                    comicBookView.setLoadingProgress(loadedPages, pageCount);
+                }
+            }));
+        } catch (Exception ex) {
+            ex.printStackTrace();
+        }
+
+        EventQueue.invokeLater(() -> {
+            if (generation == openGeneration) {
+                comicBookView.setLoadingProgress(0, 0);
+            }
+        });
+    }
+
+
+    /**
+     * Show an error of opening a book, if the open was not replaced
+     * by a newer one.
+     * @param generation the open that failed
+     * @param message the error message to show
+     */
+    private void showOpenError(final int generation, final String message) {
+        EventQueue.invokeLater(() -> {
+            if (generation == openGeneration) {
+                // The snapshot of the last run may be shown
+                mainCardLayout.first(mainMenuView.getParent());
+                mainMenuView.setInfoMessage(MainMenuView.MessageType.ERROR,
+                        message);
+            }
+        });
+    }
+
+
+    /**
+     * Close a book model that was created for an open that did not finish.
+     * @param bookModel the book model that was used for the open
+     * @param existingModel the book model that existed before the open
+     */
+    private void closeUnusedBookModel(final BookModel bookModel,
+                                      final BookModel existingModel) {
+        if (bookModel == existingModel) {
+            return; // The model is still used by the hashmap
+        }
+
+        try {
+            bookModel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+
+    /**
+     * Save the pages the books were left at. This is called when the
+     * reader is closed, and when the user stops reading, so a crash
+     * loses little.
+     * @param openBookModel the book that is being read, its open page and
+     *                      the pages around it are saved as snapshots,
+     *                      or null if no book is being read
+     */
+    private void saveReadingSession(final BookModel openBookModel) {
+        for (Map.Entry<String, BookModel> entry : bookModelMap.entrySet()) {
+            readingSession.setPage(entry.getKey(),
+                    entry.getValue().getCurrentBookPage());
+        }
+
+        try {
+            if (openBookModel != null) {
+                final int page = openBookModel.getCurrentBookPage();
+                final List<ImageModel> snapshots = new ArrayList<>();
+
+                snapshots.add(openBookModel.getCachedPage(page));
+                for (int i = 1; i <= SNAPSHOTNEIGHBOURS; i++) {
+                    snapshots.add(openBookModel.getCachedPage(page + i));
+                    snapshots.add(openBookModel.getCachedPage(page - i));
+                }
+
+                readingSession.saveSnapshots(currentBookPath, snapshots,
+                        fullResolution ? 0 : comicBookView.getWidth());
+            }
+
+            readingSession.setOpenBook(openBookModel != null
+                    ? currentBookPath : null);
+            readingSession.save();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+
+    /**
+     * Save the reading session when the reader is closed. If a book is
+     * being read, the next run opens it at the same page.
+     */
+    public void saveReadingSession() {
+        saveReadingSession(comicBookView.isVisible()
+                ? bookModelMap.get(currentBookPath) : null);
+    }
+
+
+    /**
+     * Cancel the book that is being opened or preloaded.
+     */
+    private void cancelBookLoading() {
+        // Pages that were turned to in the book are no longer shown
+        pageTurnGeneration.incrementAndGet();
+
+        if (bookLoading != null) {
+            bookLoading.cancel(true);
+            bookLoading = null;
+        }
+
+        comicBookView.setLoadingProgress(0, 0);
+    }
+
+
+    /**
+     * Free memory when the heap runs low. The decoded pages of the books
+     * that are not being read are released first. When they are gone and
+     * memory is still low, those books are unloaded as well, they keep
+     * their page index and current page so they reopen quickly.
+     */
+    private void relieveMemoryPressure() {
+        memoryReliefQueued.set(false);
+
+        final List<BookModel> idleBooks = new ArrayList<>();
+        for (Map.Entry<String, BookModel> entry : bookModelMap.entrySet()) {
+            if (!entry.getKey().equals(currentBookPath)
+                    && !entry.getKey().equals(openingBookPath)
+                    && !entry.getValue().isUnloaded()) {
+                idleBooks.add(entry.getValue());
+            }
+        }
+
+        long releasedBytes = 0;
+        for (BookModel bookModel : idleBooks) {
+            releasedBytes += bookModel.releasePages();
+        }
+
+        if (releasedBytes > 0) {
+            return; // Wait and see if that was enough
+        }
+
+        for (BookModel bookModel : idleBooks) {
+            try {
+                bookModel.unload();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+
+    /**
+     * Switch between pages that fit the view and pages at full resolution,
+     * the current page is decoded again at the new resolution. The page is
+     * decoded on the page turner thread, like a turned page.
+     */
+    private void toggleFullResolution() {
+        final BookModel bookModel = bookModelMap.get(currentBookPath);
+        if (bookModel == null) {
+            return;
+        }
+
+        fullResolution = !fullResolution;
+        updateDisplayWidth(bookModel);
+
+        final int page = bookModel.getCurrentBookPage();
+        final int turn = pageTurnGeneration.incrementAndGet();
+
+        pageTurner.execute(() -> showTurnedPage(bookModel, page, turn));
+    }
+
+
+    /**
+     * Let a book decode its pages for the current width of the view.
+     * @param bookModel the book that is being read, may be null
+     */
+    private void updateDisplayWidth(final BookModel bookModel) {
+        if (bookModel != null) {
+            bookModel.setDisplayWidth(fullResolution ? 0 : comicBookView.getWidth());
+        }
+    }
+
+
+    /**
+     * Turn a page of the current book, if a book is open. While the book
+     * of the last run is still being opened, its snapshot is shown and
+     * there is no book to turn the pages of yet.
+     * The page is decoded and scaled on the page turner thread. When the
+     * user turns pages faster than they can be decoded, the pages in
+     * between are skipped and only the newest page is shown.
+     * @param direction 1 for the next page, -1 for the previous page
+     */
+    private void turnPage(final int direction) {
+        final BookModel bookModel = bookModelMap.get(currentBookPath);
+        if (bookModel == null) {
+            return;
+        }
+
+        final int page = bookModel.turnPage(direction);
+        final int turn = pageTurnGeneration.incrementAndGet();
+
+        pageTurner.execute(() -> showTurnedPage(bookModel, page, turn));
+    }
+
+
+    /**
+     * Decode and scale a turned page on the page turner thread, and show
+     * it if no newer page was turned to in the meantime. A decode that has
+     * started is finished, its page stays in the page cache.
+     * @param bookModel the book of the page
+     * @param page the page that was turned to
+     * @param turn the page turn that this is
+     */
+    private void showTurnedPage(final BookModel bookModel, final int page,
+                                final int turn) {
+        if (turn != pageTurnGeneration.get()) {
+            return; // A newer turn replaced this one
+        }
+
+        final ImageModel image;
+        try {
+            image = bookModel.getPageImage(page);
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+            return;
+        }
+
+        if (turn != pageTurnGeneration.get()) {
+            return;
+        }
+
+        // Scale here, so showing the page on the event thread is a copy
+        comicBookView.prescaleComicBookImage(image);
+
+        EventQueue.invokeLater(() -> {
+            if (turn == pageTurnGeneration.get()
+                    && bookModel == bookModelMap.get(currentBookPath)) {
+                showBookImage(image);
+            }
+        });
+    }
+
+
+    /**
+     * Show an image of the current book and prefetch the pages around it.
+     * @param image the image of the current page
+     */
+    private void showBookImage(final ImageModel image) {
+        comicBookView.setComicBookImage(image);
+
+        final BookModel bookModel = bookModelMap.get(currentBookPath);
+        pagePrefetcher.pageChanged(bookModel, bookModel.getCurrentBookPage());
+    }
+}
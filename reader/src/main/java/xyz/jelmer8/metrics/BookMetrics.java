@@ -0,0 +1,112 @@
+package xyz.jelmer8.metrics;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * The metrics of a single open book.
+ */
+public class BookMetrics {
+
+    /** The path of the book. */
+    private final String bookPath;
+
+    /** Gives the raster bytes of the decoded pages of the book that are held. */
+    private final LongSupplier retainedRasterBytes;
+
+    /** The bytes decompressed out of the archive. */
+    private final LongAdder bytesInflated = new LongAdder();
+
+    /** The number of decoded pages. */
+    private final LongAdder pagesDecoded = new LongAdder();
+
+    /** The first decode warning of each page that decoded with warnings. */
+    private final Map<Integer, String> pageWarnings = new ConcurrentHashMap<>();
+
+
+    /**
+     * Constructor of the BookMetrics class.
+     * @param bookPath The path of the book
+     * @param retainedRasterBytes Gives the raster bytes held for the book
+     */
+    public BookMetrics(final String bookPath,
+                       final LongSupplier retainedRasterBytes) {
+        this.bookPath = bookPath;
+        this.retainedRasterBytes = retainedRasterBytes;
+    }
+
+
+    /**
+     * Method to count bytes decompressed out of the archive.
+     * @param bytes The number of bytes
+     */
+    public void addBytesInflated(final long bytes) {
+        bytesInflated.add(bytes);
+    }
+
+
+    /**
+     * Method to count a decoded page.
+     */
+    public void addPageDecoded() {
+        pagesDecoded.increment();
+    }
+
+
+    /**
+     * Method to record a warning of the image reader while decoding a page,
+     * like a truncated or damaged image.
+     * @param page The index of the page
+     * @param warning The warning of the image reader
+     */
+    public void addPageWarning(final int page, final String warning) {
+        pageWarnings.putIfAbsent(page, warning);
+    }
+
+
+    /**
+     * Getter for the path of the book.
+     * @return The path of the book
+     */
+    public String getBookPath() {
+        return bookPath;
+    }
+
+
+    /**
+     * Getter for the bytes decompressed out of the archive.
+     * @return The number of bytes
+     */
+    public long getBytesInflated() {
+        return bytesInflated.sum();
+    }
+
+
+    /**
+     * Getter for the number of decoded pages.
+     * @return The number of pages
+     */
+    public long getPagesDecoded() {
+        return pagesDecoded.sum();
+    }
+
+
+    /**
+     * Getter for the warnings of the pages that decoded with warnings.
+     * @return The first warning of each page, by page index
+     */
+    public Map<Integer, String> getPageWarnings() {
+        return Map.copyOf(pageWarnings);
+    }
+
+
+    /**
+     * Getter for the raster bytes of the decoded pages that are held.
+     * @return The number of bytes
+     */
+    public long getRetainedRasterBytes() {
+        return retainedRasterBytes.getAsLong();
+    }
+}
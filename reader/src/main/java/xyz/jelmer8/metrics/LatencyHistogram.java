@@ -0,0 +1,200 @@
+package xyz.jelmer8.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A histogram of durations that can be recorded from any thread without
+ * locking. Durations are counted in buckets that grow exponentially,
+ * every power of two is split in four, so percentiles are accurate to
+ * within a quarter of their value.
+ */
+public class LatencyHistogram {
+
+    /** Number of bits of a duration below its highest bit used for the bucket. */
+    private static final int SUBBUCKETBITS = 2;
+
+    /** Number of buckets, enough for every positive long. */
+    private static final int BUCKETS = (64 - SUBBUCKETBITS) << SUBBUCKETBITS;
+
+    /** Nanoseconds in a millisecond. */
+    private static final double NANOSPERMILLI = 1_000_000.0;
+
+    /** A snapshot of a histogram, exposed as composite data by the MXBean. */
+    public static final class Snapshot {
+
+        private final long count;
+        private final double meanMillis;
+        private final double p50Millis;
+        private final double p90Millis;
+        private final double p99Millis;
+        private final double maxMillis;
+
+        /**
+         * Constructor of the Snapshot class.
+         * @param count The number of recorded durations
+         * @param meanMillis The mean duration
+         * @param p50Millis The median duration
+         * @param p90Millis The 90th percentile
+         * @param p99Millis The 99th percentile
+         * @param maxMillis The longest duration
+         */
+        Snapshot(final long count, final double meanMillis,
+                 final double p50Millis, final double p90Millis,
+                 final double p99Millis, final double maxMillis) {
+            this.count = count;
+            this.meanMillis = meanMillis;
+            this.p50Millis = p50Millis;
+            this.p90Millis = p90Millis;
+            this.p99Millis = p99Millis;
+            this.maxMillis = maxMillis;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public double getMeanMillis() {
+            return meanMillis;
+        }
+
+        public double getP50Millis() {
+            return p50Millis;
+        }
+
+        public double getP90Millis() {
+            return p90Millis;
+        }
+
+        public double getP99Millis() {
+            return p99Millis;
+        }
+
+        public double getMaxMillis() {
+            return maxMillis;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("count=%d, mean=%.2fms, p50=%.2fms, "
+                    + "p90=%.2fms, p99=%.2fms, max=%.2fms", count, meanMillis,
+                    p50Millis, p90Millis, p99Millis, maxMillis);
+        }
+    }
+
+    /** The number of durations in every bucket. */
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+
+    /** The number and sum of the recorded durations. */
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+
+    /** The longest recorded duration. */
+    private final AtomicLong maxNanos = new AtomicLong();
+
+
+    /**
+     * Method to record a duration.
+     * @param nanos The duration in nanoseconds
+     */
+    public void record(final long nanos) {
+        final long duration = Math.max(0, nanos);
+
+        buckets.incrementAndGet(getBucket(duration));
+        count.increment();
+        totalNanos.add(duration);
+        maxNanos.accumulateAndGet(duration, Math::max);
+    }
+
+
+    /**
+     * Method to take a snapshot of the histogram. Durations recorded while
+     * the snapshot is taken may be left out of some of the values.
+     * @return The snapshot
+     */
+    public Snapshot getSnapshot() {
+        final long[] counts = new long[BUCKETS];
+        long total = 0;
+
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = buckets.get(i);
+            total += counts[i];
+        }
+
+        if (total == 0) {
+            return new Snapshot(0, 0, 0, 0, 0, 0);
+        }
+
+        // A percentile is never above the longest duration
+        final long max = maxNanos.get();
+
+        return new Snapshot(total,
+                totalNanos.sum() / NANOSPERMILLI / count.sum(),
+                Math.min(getPercentile(counts, total, 0.50), max) / NANOSPERMILLI,
+                Math.min(getPercentile(counts, total, 0.90), max) / NANOSPERMILLI,
+                Math.min(getPercentile(counts, total, 0.99), max) / NANOSPERMILLI,
+                max / NANOSPERMILLI);
+    }
+
+
+    /**
+     * Method to get a percentile from the bucket counts.
+     * @param counts The number of durations in every bucket
+     * @param total The number of durations
+     * @param percentile The percentile, between 0 and 1
+     * @return The highest duration of the bucket the percentile falls in
+     */
+    private static long getPercentile(final long[] counts, final long total,
+                                      final double percentile) {
+        final long rank = (long) Math.ceil(percentile * total);
+        long seen = 0;
+
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+
+            if (seen >= rank) {
+                return getBucketMaximum(i);
+            }
+        }
+
+        return getBucketMaximum(BUCKETS - 1);
+    }
+
+
+    /**
+     * Method to get the bucket of a duration.
+     * @param nanos The duration, not negative
+     * @return The index of the bucket
+     */
+    static int getBucket(final long nanos) {
+        // The smallest durations get a bucket of their own
+        if (nanos < 1 << SUBBUCKETBITS) {
+            return (int) nanos;
+        }
+
+        int highestBit = 63 - Long.numberOfLeadingZeros(nanos);
+        int subBucket = (int) (nanos >>> (highestBit - SUBBUCKETBITS))
+                & ((1 << SUBBUCKETBITS) - 1);
+
+        return ((highestBit - SUBBUCKETBITS + 1) << SUBBUCKETBITS) | subBucket;
+    }
+
+
+    /**
+     * Method to get the highest duration that falls in a bucket.
+     * @param bucket The index of the bucket
+     * @return The highest duration of the bucket
+     */
+    static long getBucketMaximum(final int bucket) {
+        if (bucket < 1 << SUBBUCKETBITS) {
+            return bucket;
+        }
+
+        int shift = (bucket >>> SUBBUCKETBITS) - 1;
+        long lowest = (long) ((1 << SUBBUCKETBITS)
+                | (bucket & ((1 << SUBBUCKETBITS) - 1))) << shift;
+
+        return lowest + (1L << shift) - 1;
+    }
+}
@@ -0,0 +1,135 @@
+package xyz.jelmer8.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * The flight recorder events of the reader. Record them with
+ * -XX:StartFlightRecording and look at them in JDK Mission Control
+ * under Comic Book Reader.
+ */
+public final class ReaderEvents {
+
+    private ReaderEvents() {
+
+    }
+
+
+    /**
+     * An event that also measures its own duration, so it can be
+     * recorded in a histogram when the flight recorder is off.
+     */
+    public abstract static class TimedEvent extends Event {
+
+        /** The time the event started, not part of the event. */
+        private transient long startNanos;
+
+        /**
+         * Method to start the event.
+         */
+        public void start() {
+            startNanos = System.nanoTime();
+            begin();
+        }
+
+        /**
+         * Method to end the event and commit it if it is recorded.
+         * @return The duration of the event in nanoseconds
+         */
+        public long finish() {
+            end();
+            final long duration = System.nanoTime() - startNanos;
+
+            if (shouldCommit()) {
+                commit();
+            }
+
+            return duration;
+        }
+    }
+
+
+    /** Opening a book, from clicking it until its first page is shown. */
+    @Name("xyz.jelmer8.BookOpen")
+    @Label("Book Open")
+    @Category("Comic Book Reader")
+    @Description("Opening a book until its first page is shown")
+    public static final class BookOpen extends TimedEvent {
+        @Label("Book Path")
+        public String bookPath;
+
+        @Label("Page Count")
+        public int pageCount;
+
+        @Label("Reopened")
+        @Description("The book was opened before and is still indexed")
+        public boolean reopened;
+    }
+
+
+    /** Reading and decoding a page from the archive or the page store. */
+    @Name("xyz.jelmer8.PageDecode")
+    @Label("Page Decode")
+    @Category("Comic Book Reader")
+    @Description("Reading and decoding a page that was not in the page cache")
+    public static final class PageDecode extends TimedEvent {
+        @Label("Book Path")
+        public String bookPath;
+
+        @Label("Page")
+        public int page;
+
+        @Label("Subsampling")
+        public int subsampling;
+
+        @Label("Source Width")
+        public int sourceWidth;
+
+        @Label("Raster Size")
+        @DataAmount
+        public long rasterBytes;
+    }
+
+
+    /** Scaling a page to the width of the view. */
+    @Name("xyz.jelmer8.PageScale")
+    @Label("Page Scale")
+    @Category("Comic Book Reader")
+    public static final class PageScale extends TimedEvent {
+        @Label("Page")
+        public int page;
+
+        @Label("Width")
+        public int width;
+
+        @Label("Scaled Width")
+        public int scaledWidth;
+    }
+
+
+    /** Showing a page in the comic book view, including scaling it. */
+    @Name("xyz.jelmer8.PageDisplay")
+    @Label("Page Display")
+    @Category("Comic Book Reader")
+    public static final class PageDisplay extends TimedEvent {
+        @Label("Page")
+        public int page;
+
+        @Label("Tiled")
+        public boolean tiled;
+    }
+
+
+    /** Painting the page panel. */
+    @Name("xyz.jelmer8.PagePaint")
+    @Label("Page Paint")
+    @Category("Comic Book Reader")
+    public static final class PagePaint extends TimedEvent {
+        @Label("Page")
+        public int page;
+    }
+}
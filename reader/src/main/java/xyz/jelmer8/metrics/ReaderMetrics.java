@@ -0,0 +1,226 @@
+package xyz.jelmer8.metrics;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps the latency histograms and per book counters of the reader.
+ * Everything is recorded all the time, recording is a few atomic
+ * increments. The metrics can be read over JMX or dumped as text.
+ */
+public final class ReaderMetrics implements ReaderMetricsMXBean {
+
+    /** The name the metrics are registered with. */
+    private static final String OBJECTNAME = "xyz.jelmer8:type=ReaderMetrics";
+
+    /** The metrics of the application. */
+    private static final ReaderMetrics INSTANCE = new ReaderMetrics();
+
+    /**
+     * The byte counters of a book path.
+     * @param inflated The bytes inflated for the book
+     * @param retained The raster bytes held for the book
+     */
+    private record BookBytes(long inflated, long retained) {
+
+        /**
+         * Method to combine the counters of two models of the same book.
+         * The inflated bytes are counted per model and are added, the
+         * raster bytes are counted per book path, so every model gives
+         * the same number.
+         * @param other The counters of the other model
+         * @return The combined counters
+         */
+        BookBytes combine(final BookBytes other) {
+            return new BookBytes(inflated + other.inflated,
+                    Math.max(retained, other.retained));
+        }
+    }
+
+    /** The latency histograms. */
+    private final LatencyHistogram bookOpen = new LatencyHistogram();
+    private final LatencyHistogram pageDecode = new LatencyHistogram();
+    private final LatencyHistogram pageScale = new LatencyHistogram();
+    private final LatencyHistogram pageDisplay = new LatencyHistogram();
+    private final LatencyHistogram pagePaint = new LatencyHistogram();
+
+    /** The metrics of the open books. */
+    private final Set<BookMetrics> books = ConcurrentHashMap.newKeySet();
+
+    private ReaderMetrics() {
+
+    }
+
+
+    /**
+     * Getter for the metrics of the application.
+     * @return The metrics
+     */
+    public static ReaderMetrics get() {
+        return INSTANCE;
+    }
+
+
+    /**
+     * Method to register the metrics with the platform MBean server.
+     */
+    public void register() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this,
+                    new ObjectName(OBJECTNAME));
+        } catch (JMException e) {
+            e.printStackTrace();
+        }
+    }
+
+
+    /**
+     * Method to add the metrics of an opened book.
+     * @param book The metrics of the book
+     */
+    public void addBook(final BookMetrics book) {
+        books.add(book);
+    }
+
+
+    /**
+     * Method to remove the metrics of a closed book.
+     * @param book The metrics of the book
+     */
+    public void removeBook(final BookMetrics book) {
+        books.remove(book);
+    }
+
+
+    /**
+     * Method to record opening a book.
+     * @param nanos The duration in nanoseconds
+     */
+    public void recordBookOpen(final long nanos) {
+        bookOpen.record(nanos);
+    }
+
+
+    /**
+     * Method to record decoding a page.
+     * @param nanos The duration in nanoseconds
+     */
+    public void recordPageDecode(final long nanos) {
+        pageDecode.record(nanos);
+    }
+
+
+    /**
+     * Method to record scaling a page.
+     * @param nanos The duration in nanoseconds
+     */
+    public void recordPageScale(final long nanos) {
+        pageScale.record(nanos);
+    }
+
+
+    /**
+     * Method to record showing a page.
+     * @param nanos The duration in nanoseconds
+     */
+    public void recordPageDisplay(final long nanos) {
+        pageDisplay.record(nanos);
+    }
+
+
+    /**
+     * Method to record painting a page.
+     * @param nanos The duration in nanoseconds
+     */
+    public void recordPagePaint(final long nanos) {
+        pagePaint.record(nanos);
+    }
+
+
+    @Override
+    public LatencyHistogram.Snapshot getBookOpen() {
+        return bookOpen.getSnapshot();
+    }
+
+
+    @Override
+    public LatencyHistogram.Snapshot getPageDecode() {
+        return pageDecode.getSnapshot();
+    }
+
+
+    @Override
+    public LatencyHistogram.Snapshot getPageScale() {
+        return pageScale.getSnapshot();
+    }
+
+
+    @Override
+    public LatencyHistogram.Snapshot getPageDisplay() {
+        return pageDisplay.getSnapshot();
+    }
+
+
+    @Override
+    public LatencyHistogram.Snapshot getPagePaint() {
+        return pagePaint.getSnapshot();
+    }
+
+
+    @Override
+    public Map<String, Long> getBytesInflated() {
+        Map<String, Long> bytes = new TreeMap<>();
+        getBookBytes().forEach((bookPath, bookBytes) ->
+                bytes.put(bookPath, bookBytes.inflated()));
+        return bytes;
+    }
+
+
+    @Override
+    public Map<String, Long> getRetainedRasterBytes() {
+        Map<String, Long> bytes = new TreeMap<>();
+        getBookBytes().forEach((bookPath, bookBytes) ->
+                bytes.put(bookPath, bookBytes.retained()));
+        return bytes;
+    }
+
+
+    @Override
+    public String dumpStats() {
+        StringBuilder stats = new StringBuilder();
+
+        stats.append("Book open:    ").append(getBookOpen()).append('\n');
+        stats.append("Page decode:  ").append(getPageDecode()).append('\n');
+        stats.append("Page scale:   ").append(getPageScale()).append('\n');
+        stats.append("Page display: ").append(getPageDisplay()).append('\n');
+        stats.append("Page paint:   ").append(getPagePaint()).append('\n');
+
+        getBookBytes().forEach((bookPath, bookBytes) -> stats.append(
+                String.format("%s: inflated=%dKB, retained=%dKB%n", bookPath,
+                        bookBytes.inflated() / 1024, bookBytes.retained() / 1024)));
+
+        return stats.toString();
+    }
+
+
+    /**
+     * Getter for the byte counters of the open books, read in one pass,
+     * so every book path has both counters.
+     * @return The counters, by book path
+     */
+    private Map<String, BookBytes> getBookBytes() {
+        Map<String, BookBytes> bytes = new TreeMap<>();
+
+        for (BookMetrics book : books) {
+            bytes.merge(book.getBookPath(), new BookBytes(book.getBytesInflated(),
+                    book.getRetainedRasterBytes()), BookBytes::combine);
+        }
+
+        return bytes;
+    }
+}
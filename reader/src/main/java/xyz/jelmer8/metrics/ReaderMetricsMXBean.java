@@ -0,0 +1,58 @@
+package xyz.jelmer8.metrics;
+
+import java.util.Map;
+
+/**
+ * The metrics of the reader, registered as xyz.jelmer8:type=ReaderMetrics
+ * so they can be read with JConsole or another JMX client.
+ */
+public interface ReaderMetricsMXBean {
+
+    /**
+     * Getter for the latency of opening a book until its first page is shown.
+     * @return The histogram snapshot
+     */
+    LatencyHistogram.Snapshot getBookOpen();
+
+    /**
+     * Getter for the time of decoding a page that was not cached.
+     * @return The histogram snapshot
+     */
+    LatencyHistogram.Snapshot getPageDecode();
+
+    /**
+     * Getter for the time of scaling a page to the width of the view.
+     * @return The histogram snapshot
+     */
+    LatencyHistogram.Snapshot getPageScale();
+
+    /**
+     * Getter for the time of showing a page in the view.
+     * @return The histogram snapshot
+     */
+    LatencyHistogram.Snapshot getPageDisplay();
+
+    /**
+     * Getter for the time of painting the page panel.
+     * @return The histogram snapshot
+     */
+    LatencyHistogram.Snapshot getPagePaint();
+
+    /**
+     * Getter for the bytes decompressed out of the archive of every open book.
+     * @return The bytes by book path
+     */
+    Map<String, Long> getBytesInflated();
+
+    /**
+     * Getter for the raster bytes of decoded pages held for every open book.
+     * @return The bytes by book path
+     */
+    Map<String, Long> getRetainedRasterBytes();
+
+    /**
+     * Method to write all metrics as text.
+     * @return The metrics
+     */
+    String dumpStats();
+}
@@ -0,0 +1,941 @@
+package xyz.jelmer8.models;
+
+
+import xyz.jelmer8.metrics.BookMetrics;
+import xyz.jelmer8.metrics.ReaderEvents;
+import xyz.jelmer8.metrics.ReaderMetrics;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntConsumer;
+
+public abstract class BookModel implements Closeable {
+
+    /** Decodes a single page, used to decode with a different archive handle. */
+    @FunctionalInterface
+    interface PageDecoder {
+        /**
+         * Method to decode a single page.
+         * @param page The page entry to decode
+         * @param displayWidth The width to decode for, 0 for full resolution
+         * @return The decoded image
+         */
+        ImageModel decode(PageEntry page, int displayWidth) throws IOException;
+    }
+
+    static {
+        // Decode entry streams from memory instead of a temporary file
+        ImageIO.setUseCache(false);
+    }
+
+    /** Pages this many times taller than they are wide are decoded in tiles. */
+    private static final int TALLPAGERATIO =
+            Integer.getInteger("comicbookreader.tiled.ratio", 4);
+
+    /** If the compressed pages are kept in off-heap memory while a book is open. */
+    private static final boolean KEEPCOMPRESSEDPAGES =
+            "compressed".equals(System.getProperty("comicbookreader.store"));
+
+    /** The path of the current book. */
+    String bookPath;
+
+    /** The page index of the current book, maps page numbers to entries. */
+    final List<PageEntry> pageIndex = new ArrayList<>();
+
+    /** The compressed pages in memory, null if pages are read from the archive. */
+    private CompressedPageStore pageStore;
+
+    /** The cache of decoded pages, shared with the other books. */
+    private final PageCache pageCache;
+
+    /** The decoded pages on disk, null if pages are not stored on disk. */
+    private DiskPageCache diskPageCache;
+
+    /** The size and modification time of the book, read when a page is first looked up on disk. */
+    private volatile BasicFileAttributes bookAttributes;
+
+    /** The pages that are being decoded, so a page is only decoded once. */
+    private final Map<PageCache.Key, CompletableFuture<ImageModel>> decodingPages =
+            new ConcurrentHashMap<>();
+
+    /** The indexed gifs of the book, by entry name. */
+    private final Map<String, GifPageSource> gifSources = new ConcurrentHashMap<>();
+
+    /** The full resolution widths of the pages that have been decoded. */
+    private final Map<Integer, Integer> sourceWidths = new ConcurrentHashMap<>();
+
+    /** The width pages are decoded for, 0 decodes pages at full resolution. */
+    private volatile int displayWidth = 0;
+
+    /**
+     * The current page of the book. It is changed on the event dispatch
+     * thread and read by the preloader, the methods read it once.
+     */
+    private volatile int currentBookPage = 0;
+
+    /** If the archive was closed to free memory, it is opened again when a page is needed. */
+    private volatile boolean unloaded = false;
+
+    /**
+     * Held for reading while a page is decoded, and for writing while the
+     * archive and the page store are closed. Pages are read from mapped and
+     * off-heap memory, which can not be read anymore once it is freed.
+     * Taken before the lock of the book, never while holding it.
+     */
+    private final ReadWriteLock archiveLock = new ReentrantReadWriteLock();
+
+    /** The decode counters of the book. */
+    final BookMetrics metrics;
+
+
+    /**
+     * Constructor of the BookModel class.
+     * @param bookPath The path of the book
+     * @param pageCache The cache of decoded pages
+     */
+    public BookModel(final String bookPath, final PageCache pageCache) {
+        this.bookPath = bookPath;
+        this.pageCache = pageCache;
+
+        metrics = new BookMetrics(bookPath,
+                () -> pageCache.getBookBytes(bookPath));
+        ReaderMetrics.get().addBook(metrics);
+    }
+
+
+    /**
+     * Method to build the page index of the book.
+     * Only the archive headers are read, no pages are decoded.
+     */
+    public abstract void indexBook() throws Exception;
+
+
+    /**
+     * Method to decode a single page of the book.
+     * @param page The page entry to decode
+     * @param width The width to decode for, 0 for full resolution
+     * @return The decoded image
+     */
+    abstract ImageModel decodePage(PageEntry page, int width) throws IOException;
+
+
+    /**
+     * Method to open an entry of the archive.
+     * Callers synchronize on the book model while reading the entry.
+     * @param entryName The name of the entry
+     * @return InputStream of the entry
+     */
+    abstract InputStream openEntry(String entryName) throws IOException;
+
+
+    /**
+     * Getter for the checksum of an entry of the archive.
+     * @param entryName The name of the entry
+     * @return The crc32 of the entry
+     */
+    abstract long getEntryCrc(String entryName) throws IOException;
+
+
+    /**
+     * Method to open the archive of an unloaded book again.
+     * The page index is kept, so the book is not indexed again.
+     */
+    abstract void reopenBook() throws Exception;
+
+
+    /**
+     * Method to close the archive of the book and forget its file headers.
+     */
+    abstract void closeArchive() throws IOException;
+
+
+    /**
+     * Method to open an entry, from the page store if it is stored.
+     * @param entryName The name of the entry
+     * @return InputStream of the entry
+     */
+    InputStream openPageEntry(final String entryName) throws IOException {
+        if (pageStore != null && pageStore.contains(entryName)) {
+            return pageStore.openStream(entryName);
+        }
+
+        return openEntry(entryName);
+    }
+
+
+    /**
+     * Getter for the page store of the book, the store is created
+     * the first time it is needed.
+     * @return The page store
+     */
+    synchronized CompressedPageStore getPageStore() {
+        if (pageStore == null) {
+            pageStore = new CompressedPageStore();
+        }
+
+        return pageStore;
+    }
+
+
+    /**
+     * Method to copy the compressed pages into the page store, if pages
+     * are kept in memory. Called at the end of indexing the book.
+     */
+    void storeCompressedPages() throws IOException {
+        if (!KEEPCOMPRESSEDPAGES) {
+            return;
+        }
+
+        final CompressedPageStore store = getPageStore();
+        final long storedBytes = store.getStoredBytes();
+
+        for (PageEntry page : pageIndex) {
+            if (store.contains(page.entryName())) {
+                continue; // Gif frames share their entry
+            }
+
+            synchronized (this) {
+                try (InputStream is = openEntry(page.entryName())) {
+                    store.put(page.entryName(), is);
+                }
+            }
+        }
+
+        metrics.addBytesInflated(store.getStoredBytes() - storedBytes);
+    }
+
+
+    /**
+     * Method to decode a page, from the page store if it is stored
+     * and from the archive otherwise.
+     * @param page The page entry to decode
+     * @param width The width to decode for, 0 for full resolution
+     * @return The decoded image
+     */
+    private ImageModel decodeStoredOrArchivedPage(final PageEntry page,
+                                                  final int width)
+            throws IOException {
+        if (isStored(page)) {
+            return decodeStoredPage(page, width);
+        }
+
+        return decodePage(page, width);
+    }
+
+
+    /**
+     * Method to check if a page is in the page store.
+     * @param page The page entry
+     * @return true if the page can be decoded from the page store
+     */
+    boolean isStored(final PageEntry page) {
+        return pageStore != null && pageStore.contains(page.entryName());
+    }
+
+
+    /**
+     * Method to decode a page from the page store.
+     * @param page The page entry to decode
+     * @param width The width to decode for, 0 for full resolution
+     * @return The decoded image
+     */
+    ImageModel decodeStoredPage(final PageEntry page, final int width)
+            throws IOException {
+        try (ImageInputStream iis = pageStore.open(page.entryName())) {
+            return readImage(iis, page, width);
+        }
+    }
+
+
+    /**
+     * Method to add the frames of a gif to the page index. The frames are
+     * found without decoding them, they are decoded when they are shown.
+     * @param is InputStream of the gif
+     * @param entryName The name of the gif entry in the archive
+     */
+    void addGifToBookImages(final InputStream is, final String entryName)
+            throws IOException {
+        GifPageSource gifSource = readGifSource(is, entryName);
+
+        for (int i = 0; i < gifSource.getFrameCount(); i++) {
+            pageIndex.add(new PageEntry(pageIndex.size(), entryName, i));
+        }
+    }
+
+
+    /**
+     * Getter for the gif page source of a gif. Gifs that were listed by a
+     * page index instead of read while indexing are read the first time
+     * one of their frames is shown.
+     * @param entryName The name of the gif entry
+     * @return The gif page source
+     */
+    private GifPageSource getGifSource(final String entryName)
+            throws IOException {
+        GifPageSource gifSource = gifSources.get(entryName);
+
+        if (gifSource == null) {
+            synchronized (this) {
+                gifSource = gifSources.get(entryName);
+                if (gifSource == null) {
+                    try (InputStream is = openPageEntry(entryName)) {
+                        gifSource = readGifSource(is, entryName);
+                    }
+                }
+            }
+        }
+
+        return gifSource;
+    }
+
+
+    /**
+     * Method to read and index a gif. Only the compressed gif is kept.
+     * @param is InputStream of the gif
+     * @param entryName The name of the gif entry
+     * @return The gif page source
+     */
+    private GifPageSource readGifSource(final InputStream is,
+                                        final String entryName)
+            throws IOException {
+        byte[] gif = is.readAllBytes();
+        metrics.addBytesInflated(gif.length);
+
+        GifPageSource gifSource = new GifPageSource(gif);
+        gifSources.put(entryName, gifSource);
+        return gifSource;
+    }
+
+
+    /**
+     * Method to decode a page, frames of gifs are decoded from their
+     * gif page source.
+     * @param page The page entry to decode
+     * @param width The width to decode for, 0 for full resolution
+     * @param decoder The decoder of the other pages
+     * @return The decoded image
+     */
+    private ImageModel decodePageOrFrame(final PageEntry page, final int width,
+                                         final PageDecoder decoder)
+            throws IOException {
+        if (!page.isGif()) {
+            return decoder.decode(page, width);
+        }
+
+        GifPageSource gifSource = getGifSource(page.entryName());
+
+        int sourceWidth = gifSource.getWidth();
+        int subsampling = width > 0 ? Math.max(1, sourceWidth / width) : 1;
+        BufferedImage image = CompatibleImages.toCompatibleImage(
+                gifSource.decodeFrame(page.frame(), subsampling));
+
+        return new ImageModel(image, page.page(), sourceWidth, subsampling);
+    }
+
+
+    /**
+     * Method to decode an image from an archive entry stream.
+     * Images wider than the display width are subsampled while decoding,
+     * so only every n-th pixel of every n-th row is decoded.
+     * @param is InputStream of the entry
+     * @param page The page entry that is being decoded
+     * @param displayWidth The width to decode for, 0 for full resolution
+     * @return The decoded image
+     */
+    ImageModel readImage(final InputStream is, final PageEntry page,
+                         final int displayWidth) throws IOException {
+        try (ImageInputStream iis = ImageIO.createImageInputStream(is)) {
+            ImageModel image = readImage(iis, page, displayWidth);
+
+            metrics.addBytesInflated(iis.getStreamPosition());
+            return image;
+        }
+    }
+
+
+    /**
+     * Method to decode an image from an image stream.
+     * @param iis ImageInputStream of the entry, it is not closed
+     * @param page The page entry that is being decoded
+     * @param displayWidth The width to decode for, 0 for full resolution
+     * @return The decoded image
+     */
+    ImageModel readImage(final ImageInputStream iis, final PageEntry page,
+                         final int displayWidth) throws IOException {
+        Iterator<ImageReader> readers = ImageIO.getImageReaders(iis);
+
+        if (!readers.hasNext()) {
+            throw new IOException("Unsupported image: " + page.entryName());
+        }
+
+        ImageReader reader = readers.next();
+        try {
+            reader.setInput(iis, false);
+
+            // Damaged images often decode with a warning instead of an error
+            reader.addIIOReadWarningListener((_, warning) ->
+                    metrics.addPageWarning(page.page(), warning));
+
+            int sourceWidth = reader.getWidth(page.frame());
+            int subsampling = displayWidth > 0
+                    ? Math.max(1, sourceWidth / displayWidth) : 1;
+
+            // Very tall pages are kept compressed and decoded in tiles
+            int sourceHeight = reader.getHeight(page.frame());
+            if (!page.isGif() && sourceHeight > TALLPAGERATIO * sourceWidth) {
+                iis.seek(0);
+                TiledImage tiledImage = new TiledImage(readAllBytes(iis),
+                        sourceWidth, sourceHeight, subsampling);
+
+                return new ImageModel(null, page.page(), sourceWidth,
+                        subsampling, tiledImage);
+            }
+
+            ImageReadParam param = reader.getDefaultReadParam();
+            param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+
+            // Decode into a pooled image if there is one of the right size
+            ImageTypeSpecifier type = reader.getImageTypes(page.frame()).next();
+            BufferedImage destination = RasterPool.SHARED.acquire(type,
+                    (sourceWidth + subsampling - 1) / subsampling,
+                    (sourceHeight + subsampling - 1) / subsampling);
+            if (destination != null) {
+                param.setDestination(destination);
+            }
+
+            // Convert once here, instead of on every paint
+            BufferedImage decoded = reader.read(page.frame(), param);
+            BufferedImage image = CompatibleImages.toCompatibleImage(decoded);
+
+            // The decoded image was copied, so it can be reused
+            if (image != decoded) {
+                RasterPool.SHARED.release(decoded);
+            }
+
+            return new ImageModel(image, page.page(), sourceWidth,
+                    subsampling);
+        } finally {
+            reader.dispose();
+        }
+    }
+
+
+    /**
+     * Method to read the rest of an image stream.
+     * @param iis The image stream
+     * @return The bytes of the stream
+     */
+    private static byte[] readAllBytes(final ImageInputStream iis)
+            throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+
+        while ((read = iis.read(buffer)) != -1) {
+            bytes.write(buffer, 0, read);
+        }
+
+        return bytes.toByteArray();
+    }
+
+
+    /**
+     * Method to decode the pages of the book into the page cache,
+     * starting at the current page. Preloading stops when it has filled
+     * half of the cache, so the pages around the current page are kept.
+     * Pages are decoded one at a time, subclasses can decode in parallel.
+     * @param progress Called with the number of preloaded pages
+     */
+    public void preloadPages(final IntConsumer progress) throws IOException {
+        final long byteLimit = getPreloadByteLimit();
+        long preloadedBytes = 0;
+        int preloadedPages = 0;
+
+        for (int page : getPreloadOrder()) {
+            if (Thread.currentThread().isInterrupted()
+                    || preloadedBytes >= byteLimit) {
+                return;
+            }
+
+            try {
+                preloadedBytes += PageCache.sizeOf(loadPage(page));
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+            progress.accept(++preloadedPages);
+        }
+    }
+
+
+    /**
+     * Getter for the order in which pages are preloaded,
+     * from the current page to the end and then from the start.
+     * @return The page numbers in preload order
+     */
+    List<Integer> getPreloadOrder() {
+        List<Integer> order = new ArrayList<>();
+        int firstPage = currentBookPage;
+
+        for (int i = 0; i < pageIndex.size(); i++) {
+            order.add((firstPage + i) % pageIndex.size());
+        }
+
+        return order;
+    }
+
+
+    /**
+     * Getter for the number of raster bytes a preload may add to the cache.
+     * @return The byte limit of a preload
+     */
+    long getPreloadByteLimit() {
+        return pageCache.getByteBudget() / 2;
+    }
+
+
+    /**
+     * Method to get a page, decoding it if it has not been decoded yet.
+     * @param index The index of the page
+     * @return The decoded page
+     */
+    private ImageModel loadPage(final int index) {
+        return loadPage(index, this::decodeStoredOrArchivedPage);
+    }
+
+
+    /**
+     * Method to get a page, decoding it with the given decoder
+     * if it has not been decoded yet.
+     * @param index The index of the page
+     * @param decoder The decoder to use
+     * @return The decoded page
+     */
+    ImageModel loadPage(final int index, final PageDecoder decoder) {
+        archiveLock.readLock().lock();
+        try {
+            return loadOpenPage(index, decoder);
+        } finally {
+            archiveLock.readLock().unlock();
+        }
+    }
+
+
+    /**
+     * Method to get a page while the archive can not be closed.
+     * @param index The index of the page
+     * @param decoder The decoder to use
+     * @return The decoded page
+     */
+    private ImageModel loadOpenPage(final int index, final PageDecoder decoder) {
+        if (unloaded) {
+            reload();
+        }
+
+        final int width = displayWidth;
+        final PageCache.Key key =
+                new PageCache.Key(bookPath, index, getSubsampling(index, width));
+
+        // If the page was never decoded the subsampling is unknown (0),
+        // the lookup then counts as a miss
+        ImageModel image = pageCache.get(key);
+
+        if (image != null) {
+            return image;
+        }
+
+        // If another thread is already decoding this page, wait for it
+        final CompletableFuture<ImageModel> decoding = new CompletableFuture<>();
+        final CompletableFuture<ImageModel> running =
+                decodingPages.putIfAbsent(key, decoding);
+
+        if (running != null) {
+            try {
+                return running.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException cause) {
+                    throw cause;
+                }
+                throw e;
+            }
+        }
+
+        try {
+            final PageEntry page = pageIndex.get(index);
+            image = readDiskCachedPage(page, width);
+
+            if (image == null) {
+                ReaderEvents.PageDecode event = new ReaderEvents.PageDecode();
+                event.start();
+
+                image = decodePageOrFrame(page, width, decoder);
+
+                event.bookPath = bookPath;
+                event.page = index;
+                event.subsampling = image.subsampling();
+                event.sourceWidth = image.sourceWidth();
+                event.rasterBytes = PageCache.sizeOf(image);
+                ReaderMetrics.get().recordPageDecode(event.finish());
+                metrics.addPageDecoded();
+
+                writeDiskCachedPage(page, image);
+            }
+
+            sourceWidths.put(index, image.sourceWidth());
+            pageCache.put(new PageCache.Key(bookPath, index,
+                    image.subsampling()), image);
+            decoding.complete(image);
+            return image;
+        } catch (IOException e) {
+            UncheckedIOException exception = new UncheckedIOException(e);
+            decoding.completeExceptionally(exception);
+            throw exception;
+        } catch (RuntimeException e) {
+            decoding.completeExceptionally(e);
+            throw e;
+        } finally {
+            decodingPages.remove(key, decoding);
+        }
+    }
+
+
+    /**
+     * Method to read a page from the disk page cache.
+     * @param page The page entry
+     * @param width The width to decode for, 0 for full resolution
+     * @return The page, or null if it has to be decoded
+     */
+    private ImageModel readDiskCachedPage(final PageEntry page, final int width) {
+        if (diskPageCache == null) {
+            return null;
+        }
+
+        try {
+            return diskPageCache.get(getDiskPageId(page), page.page(), width);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+
+    /**
+     * Method to store a decoded page in the disk page cache.
+     * @param page The page entry
+     * @param image The decoded page
+     */
+    private void writeDiskCachedPage(final PageEntry page, final ImageModel image) {
+        if (diskPageCache == null) {
+            return;
+        }
+
+        try {
+            diskPageCache.put(getDiskPageId(page), image);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+
+    /**
+     * Getter for the identity of a page in the disk page cache.
+     * @param page The page entry
+     * @return The identity of the page
+     */
+    private DiskPageCache.PageId getDiskPageId(final PageEntry page)
+            throws IOException {
+        BasicFileAttributes attributes = bookAttributes;
+        if (attributes == null) {
+            attributes = Files.readAttributes(Path.of(bookPath),
+                    BasicFileAttributes.class);
+            bookAttributes = attributes;
+        }
+
+        return new DiskPageCache.PageId(bookPath, attributes.size(),
+                attributes.lastModifiedTime().toMillis(), page.entryName(),
+                getEntryCrc(page.entryName()), page.frame());
+    }
+
+
+    /**
+     * Setter for the disk page cache, pages are looked up on disk before
+     * they are decoded and stored on disk after.
+     * @param diskPageCache The disk page cache, null to only decode pages
+     */
+    public void setDiskPageCache(final DiskPageCache diskPageCache) {
+        this.diskPageCache = diskPageCache != null && diskPageCache.isEnabled()
+                ? diskPageCache : null;
+    }
+
+
+    /**
+     * Getter for a page if it is in the page cache, it is not decoded.
+     * @param index The index of the page
+     * @return The decoded page, or null if it is not cached
+     */
+    public ImageModel getCachedPage(final int index) {
+        if (index < 0 || index >= pageIndex.size()) {
+            return null;
+        }
+
+        return pageCache.get(new PageCache.Key(bookPath, index,
+                getSubsampling(index, displayWidth)));
+    }
+
+
+    /**
+     * Method to put pages that were decoded in an earlier run into the
+     * page cache, so they are shown without decoding them again.
+     * @param pages The decoded pages
+     */
+    public void restorePages(final List<ImageModel> pages) {
+        for (ImageModel page : pages) {
+            if (page.page() < pageIndex.size()) {
+                sourceWidths.put(page.page(), page.sourceWidth());
+                pageCache.put(new PageCache.Key(bookPath, page.page(),
+                        page.subsampling()), page);
+            }
+        }
+    }
+
+
+    /**
+     * Method to get the subsampling a page is decoded with.
+     * @param index The index of the page
+     * @param width The width to decode for, 0 for full resolution
+     * @return The subsampling, or 0 if the page was never decoded
+     */
+    private int getSubsampling(final int index, final int width) {
+        if (width <= 0) {
+            return 1;
+        }
+
+        Integer sourceWidth = sourceWidths.get(index);
+        if (sourceWidth == null) {
+            return 0;
+        }
+
+        return Math.max(1, sourceWidth / width);
+    }
+
+
+    /**
+     * Setter for the width pages are decoded for. Pages that are wider are
+     * decoded at a lower resolution, which is faster and uses less memory.
+     * @param width The width of the display, 0 for full resolution
+     */
+    public void setDisplayWidth(final int width) {
+        displayWidth = Math.max(0, width);
+    }
+
+
+    /**
+     * Method to free the decoded pages of the book, used when the book is
+     * not being read and memory runs low. The archive stays open.
+     * @return The number of raster bytes that were removed from the cache
+     */
+    public long releasePages() {
+        long releasedBytes = pageCache.getBookBytes(bookPath);
+        pageCache.removeBook(bookPath);
+
+        for (GifPageSource gifSource : gifSources.values()) {
+            releasedBytes += gifSource.releaseCanvases();
+        }
+
+        return releasedBytes;
+    }
+
+
+    /**
+     * Method to free everything of the book except its page index and
+     * current page, used when memory runs low. The archive is closed and
+     * opened again when a page of the book is needed. Waits for the pages
+     * that are being decoded, they read from the archive.
+     */
+    public void unload() throws IOException {
+        archiveLock.writeLock().lock();
+        try {
+            synchronized (this) {
+                if (unloaded) {
+                    return;
+                }
+                unloaded = true;
+
+                pageCache.removeBook(bookPath);
+                gifSources.clear();
+                sourceWidths.clear();
+                bookAttributes = null;
+
+                if (pageStore != null) {
+                    pageStore.close();
+                    pageStore = null;
+                }
+
+                closeArchive();
+            }
+        } finally {
+            archiveLock.writeLock().unlock();
+        }
+    }
+
+
+    /**
+     * Method to open the archive of an unloaded book again.
+     */
+    private synchronized void reload() {
+        if (!unloaded) {
+            return; // Another thread opened it first
+        }
+
+        try {
+            reopenBook();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (Exception e) {
+            throw new IllegalStateException("Could not reopen " + bookPath, e);
+        }
+        unloaded = false;
+    }
+
+
+    /**
+     * Getter for whether the archive of the book is closed to free memory.
+     * @return true if the book was unloaded
+     */
+    public boolean isUnloaded() {
+        return unloaded;
+    }
+
+
+    /**
+     * Method to close the book, its decoded pages are removed from the cache.
+     * Waits for the pages that are being decoded, like unload.
+     */
+    public void close() throws IOException {
+        pageCache.removeBook(bookPath);
+        ReaderMetrics.get().removeBook(metrics);
+        gifSources.clear();
+
+        archiveLock.writeLock().lock();
+        try {
+            if (pageStore != null) {
+                pageStore.close();
+            }
+
+            if (!unloaded) {
+                closeArchive();
+            }
+        } finally {
+            archiveLock.writeLock().unlock();
+        }
+    }
+
+
+    /**
+     * Getter for the number of pages of the current book.
+     * @return The number of pages
+     */
+    public int getPageCount() {
+        return pageIndex.size();
+    }
+
+
+    /**
+     * Getter for the decode counters of the book.
+     * @return The metrics of the book
+     */
+    public BookMetrics getMetrics() {
+        return metrics;
+    }
+
+
+    /**
+     * Getter for the current page of the book.
+     * @return The index of the current page
+     */
+    public int getCurrentBookPage() {
+        return currentBookPage;
+    }
+
+
+    /**
+     * Getter for an image of the book, without changing the current page.
+     * Used to decode pages ahead of time.
+     * @param index The index of the requested image
+     * @return The requested image
+     */
+    public ImageModel getPageImage(final int index) {
+        return loadPage(index);
+    }
+
+
+    /**
+     * Getter for the list of images of the current book.
+     *
+     * @param index The index of the requested image
+     * @return The requested image
+     */
+    public ImageModel getBookImage(final int index) {
+        int page = index != -1 ? index : currentBookPage;
+        currentBookPage = page;
+
+        return loadPage(page);
+    }
+
+
+    /**
+     * Method to turn to the next or previous page without decoding it,
+     * the page is decoded when it is shown.
+     * @param direction 1 for the next page, -1 for the previous page
+     * @return The index of the new current page, the first or last page
+     * if there is no page in that direction
+     */
+    public int turnPage(final int direction) {
+        int page = Math.clamp((long) currentBookPage + direction,
+                0, Math.max(0, pageIndex.size() - 1));
+        currentBookPage = page;
+        return page;
+    }
+
+
+    /**
+     * Method to get the previous book image.
+     * Used to go back a page in the comic book.
+     * @return ImageModel of the previous book image,
+     * or the first image if there is no previous image.
+     */
+    public ImageModel getPreviousBookImage() {
+        return loadPage(turnPage(-1));
+    }
+
+
+    /**
+     * Method to get the next book image.
+     * Used to go forward a page in the comic book.
+     * @return ImageModel of the next book image,
+     * or the last image if there is no next image.
+     */
+    public ImageModel getNextBookImage() {
+        return loadPage(turnPage(1));
+    }
+}
@@ -0,0 +1,307 @@
+package xyz.jelmer8.models;
+
+import com.github.junrar.Archive;
+import com.github.junrar.exception.RarException;
+import com.github.junrar.rarfile.FileHeader;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Repacks rar books into zip books that open fast. Rar decoding is slow,
+ * and a solid rar has to be decompressed from the start to read a page.
+ * The zip is written with stored entries, jpegs do not get smaller when
+ * deflated, in page order, so a page is read with a seek and a copy.
+ * A page index entry lists the pages and the frames of gifs, so the
+ * gifs do not have to be read when the book is opened.
+ * Books are repacked in parallel, but only a few write at the same time.
+ */
+public class BookRepacker {
+
+    /** The name of the page index entry. */
+    public static final String PAGEINDEXENTRY = "comicbook.idx";
+
+    /** The first line of the page index, the version of the format. */
+    static final String PAGEINDEXHEADER = "comicbook-index 1";
+
+    /** Number of books that are repacked at the same time. */
+    private static final int REPACKWORKERS = Integer.getInteger(
+            "comicbookreader.repack.workers",
+            Math.min(4, Runtime.getRuntime().availableProcessors()));
+
+    /** Number of books that are written to disk at the same time. */
+    private static final int IOPERMITS =
+            Integer.getInteger("comicbookreader.repack.io", 2);
+
+    /** If a page index entry is written into the repacked books. */
+    private static final boolean WRITEPAGEINDEX = Boolean.parseBoolean(
+            System.getProperty("comicbookreader.repack.index", "true"));
+
+    /** The outcome of repacking a book. */
+    public enum Status {
+        /** The book was repacked. */
+        REPACKED,
+        /** The book was not repacked, it is not a rar book or the zip exists. */
+        SKIPPED,
+        /** The book could not be repacked. */
+        FAILED
+    }
+
+    /**
+     * The result of repacking a book.
+     * @param source The rar book
+     * @param target The zip book
+     * @param status The outcome
+     * @param sourceBytes The size of the rar book
+     * @param targetBytes The size of the zip book, 0 if it was not written
+     * @param nanos The time repacking took
+     * @param message Why the book was skipped or failed, null if repacked
+     */
+    public record Result(Path source, Path target, Status status,
+                         long sourceBytes, long targetBytes, long nanos,
+                         String message) {
+    }
+
+    /** An extracted entry of a rar book. */
+    private record Entry(String name, byte[] bytes, FileTime lastModified) {
+    }
+
+    /** Limits the books that are written at the same time. */
+    private final Semaphore ioPermits = new Semaphore(IOPERMITS);
+
+
+    /**
+     * Method to repack books in parallel.
+     * @param books The books to repack, books that are not rar books are skipped
+     * @param listener Called from a worker thread with the result of each book
+     * @return The results, in the order of the books
+     */
+    public List<Result> repack(final List<Path> books,
+                               final Consumer<Result> listener)
+            throws InterruptedException {
+        ExecutorService repackers = Executors.newFixedThreadPool(REPACKWORKERS,
+                Thread.ofPlatform().daemon().name("book-repacker-", 0).factory());
+
+        try {
+            List<Future<Result>> futures = new ArrayList<>();
+            for (Path book : books) {
+                futures.add(repackers.submit(() -> {
+                    Result result = repackBook(book);
+                    listener.accept(result);
+                    return result;
+                }));
+            }
+
+            List<Result> results = new ArrayList<>();
+            for (Future<Result> future : futures) {
+                try {
+                    results.add(future.get());
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException(e.getCause());
+                }
+            }
+            return results;
+        } finally {
+            repackers.shutdownNow();
+        }
+    }
+
+
+    /**
+     * Method to repack a single book. The zip is written next to the rar,
+     * with the same name, and the rar is kept.
+     * @param book The rar book
+     * @return The result
+     */
+    public Result repackBook(final Path book) {
+        final long start = System.nanoTime();
+        final Path target = getTarget(book);
+
+        if (!book.getFileName().toString().endsWith(".cbr")) {
+            return new Result(book, target, Status.SKIPPED, 0, 0,
+                    System.nanoTime() - start, "Not a rar book");
+        }
+        if (Files.exists(target)) {
+            return new Result(book, target, Status.SKIPPED, 0, 0,
+                    System.nanoTime() - start, "The zip book already exists");
+        }
+
+        try {
+            long sourceBytes = Files.size(book);
+            writeBook(extractBook(book), target);
+
+            return new Result(book, target, Status.REPACKED, sourceBytes,
+                    Files.size(target), System.nanoTime() - start, null);
+        } catch (IOException | RarException | RuntimeException e) {
+            return new Result(book, target, Status.FAILED, 0, 0,
+                    System.nanoTime() - start, String.valueOf(e));
+        }
+    }
+
+
+    /**
+     * Method to get the path of the zip book of a rar book.
+     * @param book The rar book
+     * @return The path of the zip book
+     */
+    public static Path getTarget(final Path book) {
+        String fileName = book.getFileName().toString();
+        int extension = fileName.lastIndexOf('.');
+
+        return book.resolveSibling((extension > 0
+                ? fileName.substring(0, extension) : fileName) + ".cbz");
+    }
+
+
+    /**
+     * Method to extract all files of a rar book, in the order of the
+     * archive so a solid archive is decompressed once.
+     * @param book The rar book
+     * @return The entries, sorted by name
+     */
+    private List<Entry> extractBook(final Path book)
+            throws IOException, RarException {
+        List<Entry> entries = new ArrayList<>();
+
+        try (Archive archive = new Archive(book.toFile())) {
+            for (FileHeader fileHeader : archive.getFileHeaders()) {
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new InterruptedIOException("Repacking was cancelled");
+                }
+                if (fileHeader.isDirectory()) {
+                    continue;
+                }
+
+                ByteArrayOutputStream entryBytes = new ByteArrayOutputStream(
+                        (int) Math.min(fileHeader.getFullUnpackSize(),
+                                Integer.MAX_VALUE - 8));
+                archive.extractFile(fileHeader, entryBytes);
+
+                // Zip entries always use forward slashes
+                entries.add(new Entry(fileHeader.getFileName().replace('\\', '/'),
+                        entryBytes.toByteArray(), fileHeader.getLastModifiedTime()));
+            }
+        }
+
+        entries.sort(Comparator.comparing(Entry::name));
+        return entries;
+    }
+
+
+    /**
+     * Method to write the entries to a zip book. The zip is written to a
+     * temporary file first, so a zip book is never half written.
+     * @param entries The entries, sorted by name
+     * @param target The zip book
+     */
+    private void writeBook(final List<Entry> entries, final Path target)
+            throws IOException {
+        try {
+            ioPermits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Repacking was cancelled");
+        }
+
+        Path temporary = Files.createTempFile(target.getParent(),
+                target.getFileName().toString(), ".tmp");
+        try {
+            try (ZipOutputStream zip = new ZipOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+                String pageIndex = WRITEPAGEINDEX ? createPageIndex(entries) : null;
+                if (pageIndex != null) {
+                    writeEntry(zip, PAGEINDEXENTRY,
+                            pageIndex.getBytes(StandardCharsets.UTF_8), null);
+                }
+
+                for (Entry entry : entries) {
+                    writeEntry(zip, entry.name(), entry.bytes(),
+                            entry.lastModified());
+                }
+            }
+
+            Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+            ioPermits.release();
+        }
+    }
+
+
+    /**
+     * Method to write a stored entry. The sizes and checksum are written
+     * in the local header, so the entry can be read without the directory.
+     * @param zip The zip stream
+     * @param name The name of the entry
+     * @param bytes The content of the entry
+     * @param lastModified The time the file was changed, null for now
+     */
+    private static void writeEntry(final ZipOutputStream zip, final String name,
+                                   final byte[] bytes,
+                                   final FileTime lastModified)
+            throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+
+        ZipEntry zipEntry = new ZipEntry(name);
+        zipEntry.setMethod(ZipEntry.STORED);
+        zipEntry.setSize(bytes.length);
+        zipEntry.setCompressedSize(bytes.length);
+        zipEntry.setCrc(crc.getValue());
+        if (lastModified != null) {
+            zipEntry.setLastModifiedTime(lastModified);
+        }
+
+        zip.putNextEntry(zipEntry);
+        zip.write(bytes);
+        zip.closeEntry();
+    }
+
+
+    /**
+     * Method to create the page index of a book. Every page entry is a line
+     * with the name of the entry and its number of frames, separated by a tab.
+     * @param entries The entries, sorted by name
+     * @return The page index, or null if a page name does not fit in a line
+     */
+    private static String createPageIndex(final List<Entry> entries)
+            throws IOException {
+        StringBuilder pageIndex = new StringBuilder(PAGEINDEXHEADER).append('\n');
+
+        for (Entry entry : entries) {
+            String name = entry.name();
+
+            if (name.indexOf('\t') >= 0 || name.indexOf('\n') >= 0) {
+                return null;
+            }
+
+            if (name.endsWith(".gif")) {
+                int frameCount = new GifPageSource(entry.bytes()).getFrameCount();
+                pageIndex.append(name).append('\t').append(frameCount).append('\n');
+            } else if (name.endsWith(".jpg") || name.endsWith(".jpeg")) {
+                pageIndex.append(name).append('\t').append(1).append('\n');
+            }
+        }
+
+        return pageIndex.toString();
+    }
+}
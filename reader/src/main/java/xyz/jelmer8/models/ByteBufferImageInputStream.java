@@ -0,0 +1,65 @@
+package xyz.jelmer8.models;
+
+import javax.imageio.stream.ImageInputStreamImpl;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * An image input stream that reads directly from a byte buffer, so an image
+ * in (off-heap or mapped) memory can be decoded without copying it first.
+ */
+public class ByteBufferImageInputStream extends ImageInputStreamImpl {
+
+    /** The buffer with the image, read with absolute positions. */
+    private final ByteBuffer buffer;
+
+
+    /**
+     * Constructor of the ByteBufferImageInputStream class.
+     * @param buffer The buffer with the image, its position is not changed
+     */
+    public ByteBufferImageInputStream(final ByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+
+    @Override
+    public int read() throws IOException {
+        checkClosed();
+        bitOffset = 0;
+
+        if (streamPos >= buffer.limit()) {
+            return -1;
+        }
+
+        return buffer.get((int) streamPos++) & 0xff;
+    }
+
+
+    @Override
+    public int read(final byte[] b, final int off, final int len)
+            throws IOException {
+        checkClosed();
+        bitOffset = 0;
+
+        if (len == 0) {
+            return 0;
+        }
+
+        int remaining = (int) (buffer.limit() - streamPos);
+        if (remaining <= 0) {
+            return -1;
+        }
+
+        int count = Math.min(len, remaining);
+        buffer.get((int) streamPos, b, off, count);
+        streamPos += count;
+        return count;
+    }
+
+
+    @Override
+    public long length() {
+        return buffer.limit();
+    }
+}
@@ -0,0 +1,58 @@
+package xyz.jelmer8.models;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * A plain input stream that reads from a byte buffer, so an entry in
+ * (off-heap or mapped) memory can be read without copying it first.
+ */
+public class ByteBufferInputStream extends InputStream {
+
+    /** The buffer that is read, its position is the position of the stream. */
+    private final ByteBuffer buffer;
+
+
+    /**
+     * Constructor of the ByteBufferInputStream class.
+     * @param buffer The buffer to read, the stream moves its position
+     */
+    public ByteBufferInputStream(final ByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+
+    @Override
+    public int read() {
+        return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+    }
+
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) {
+        if (len == 0) {
+            return 0;
+        }
+        if (!buffer.hasRemaining()) {
+            return -1;
+        }
+
+        int count = Math.min(len, buffer.remaining());
+        buffer.get(b, off, count);
+        return count;
+    }
+
+
+    @Override
+    public long skip(final long n) {
+        int count = Math.clamp(n, 0, buffer.remaining());
+        buffer.position(buffer.position() + count);
+        return count;
+    }
+
+
+    @Override
+    public int available() {
+        return buffer.remaining();
+    }
+}
@@ -0,0 +1,85 @@
+package xyz.jelmer8.models;
+
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.GraphicsEnvironment;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+
+/**
+ * Converts decoded images to the pixel format of the screen.
+ * ImageIO decodes jpegs to formats like TYPE_3BYTE_BGR, which Java2D has
+ * to convert on every paint. Images in the format of the screen are drawn
+ * with a plain copy, and can be cached by Java2D as managed images.
+ */
+public final class CompatibleImages {
+
+    /** If decoded images are converted to the pixel format of the screen. */
+    private static final boolean CONVERTIMAGES = Boolean.parseBoolean(
+            System.getProperty("comicbookreader.compatibleimages", "true"));
+
+    private CompatibleImages() {
+
+    }
+
+
+    /**
+     * Method to convert an image to the pixel format of the screen.
+     * @param image The image to convert
+     * @return The converted image, or the image itself if it is
+     * already compatible or there is no screen
+     */
+    public static BufferedImage toCompatibleImage(final BufferedImage image) {
+        final GraphicsConfiguration configuration = getGraphicsConfiguration();
+
+        if (!CONVERTIMAGES || configuration == null || image.getColorModel()
+                .equals(configuration.getColorModel(image.getTransparency()))) {
+            return image;
+        }
+
+        BufferedImage compatible = configuration.createCompatibleImage(
+                image.getWidth(), image.getHeight(), image.getTransparency());
+
+        Graphics2D g = compatible.createGraphics();
+        g.drawImage(image, 0, 0, null);
+        g.dispose();
+        return compatible;
+    }
+
+
+    /**
+     * Method to create an empty image in the pixel format of the screen.
+     * @param width The width of the image
+     * @param height The height of the image
+     * @param transparency The transparency of the image
+     * @return The created image
+     */
+    public static BufferedImage createCompatibleImage(final int width,
+                                                      final int height,
+                                                      final int transparency) {
+        final GraphicsConfiguration configuration = getGraphicsConfiguration();
+
+        if (configuration == null) {
+            return new BufferedImage(width, height,
+                    transparency == Transparency.OPAQUE
+                            ? BufferedImage.TYPE_INT_RGB
+                            : BufferedImage.TYPE_INT_ARGB);
+        }
+
+        return configuration.createCompatibleImage(width, height, transparency);
+    }
+
+
+    /**
+     * Method to get the graphics configuration of the default screen.
+     * @return The graphics configuration, or null if there is no screen
+     */
+    private static GraphicsConfiguration getGraphicsConfiguration() {
+        if (GraphicsEnvironment.isHeadless()) {
+            return null;
+        }
+
+        return GraphicsEnvironment.getLocalGraphicsEnvironment()
+                .getDefaultScreenDevice().getDefaultConfiguration();
+    }
+}
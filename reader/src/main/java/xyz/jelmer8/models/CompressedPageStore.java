@@ -0,0 +1,122 @@
+package xyz.jelmer8.models;
+
+import javax.imageio.stream.ImageInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the compressed entries of a book in off-heap memory. Pages are
+ * decoded from here instead of from the archive, so the heap only holds
+ * the decoded pages in the page cache and the memory used by a book
+ * follows the size of the archive instead of the size of the decoded pages.
+ */
+public class CompressedPageStore implements Closeable {
+
+    /** The off-heap memory of the entries, freed when the store is closed. */
+    private final Arena arena = Arena.ofShared();
+
+    /** The compressed entries, by entry name. */
+    private final Map<String, MemorySegment> entries = new ConcurrentHashMap<>();
+
+    /** The number of bytes held by the store. */
+    private final AtomicLong storedBytes = new AtomicLong();
+
+
+    /**
+     * Method to copy an entry into the store.
+     * @param entryName The name of the entry
+     * @param is InputStream of the entry
+     */
+    public void put(final String entryName, final InputStream is)
+            throws IOException {
+        put(entryName, is.readAllBytes());
+    }
+
+
+    /**
+     * Method to copy an entry into the store.
+     * @param entryName The name of the entry
+     * @param bytes The bytes of the entry
+     */
+    public void put(final String entryName, final byte[] bytes) {
+        MemorySegment segment = arena.allocate(bytes.length);
+        MemorySegment.copy(bytes, 0, segment, ValueLayout.JAVA_BYTE, 0,
+                bytes.length);
+
+        entries.put(entryName, segment);
+        storedBytes.addAndGet(bytes.length);
+    }
+
+
+    /**
+     * Method to check if an entry is in the store.
+     * @param entryName The name of the entry
+     * @return true if the entry is stored
+     */
+    public boolean contains(final String entryName) {
+        return entries.containsKey(entryName);
+    }
+
+
+    /**
+     * Method to open a stored entry, without copying it.
+     * @param entryName The name of the entry
+     * @return ImageInputStream of the entry
+     */
+    public ImageInputStream open(final String entryName) throws IOException {
+        return new ByteBufferImageInputStream(getSegment(entryName).asByteBuffer());
+    }
+
+
+    /**
+     * Method to open a stored entry as a plain stream, without copying it.
+     * @param entryName The name of the entry
+     * @return InputStream of the entry
+     */
+    public InputStream openStream(final String entryName) throws IOException {
+        return new ByteBufferInputStream(getSegment(entryName).asByteBuffer());
+    }
+
+
+    /**
+     * Method to get the memory of a stored entry.
+     * @param entryName The name of the entry
+     * @return The memory segment of the entry
+     */
+    private MemorySegment getSegment(final String entryName) throws IOException {
+        MemorySegment segment = entries.get(entryName);
+
+        if (segment == null) {
+            throw new IOException("Entry not stored: " + entryName);
+        }
+
+        return segment;
+    }
+
+
+    /**
+     * Getter for the number of bytes held by the store.
+     * @return The number of bytes
+     */
+    public long getStoredBytes() {
+        return storedBytes.get();
+    }
+
+
+    /**
+     * Method to free the memory of the store. Entries that are still being
+     * read can not be read anymore, so the book only closes it when none of
+     * its pages are being decoded.
+     */
+    public void close() {
+        entries.clear();
+        arena.close();
+    }
+}
@@ -0,0 +1,591 @@
+package xyz.jelmer8.models;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DirectColorModel;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoded pages on disk, the second tier below the page cache. A page is
+ * stored as raw pixels after a fixed header, so reading it back is a
+ * memory-mapped copy instead of an inflate and a jpeg decode. Pages are
+ * keyed by the path, size and modification time of the book and the
+ * checksum of the entry, so a changed book never shows old pages. The
+ * least recently used pages are deleted when the cache is over its size,
+ * and pages that were not used for a long time are deleted as well.
+ */
+public class DiskPageCache {
+
+    /** The default directory the pages are stored in. */
+    private static final Path CACHEDIRECTORY = Path.of(System.getProperty(
+            "comicbookreader.diskcache.dir",
+            LibraryIndex.getCacheHome().resolve("pages").toString()));
+
+    /** The default number of bytes the pages on disk may take, 0 turns the cache off. */
+    private static final long BYTEBUDGET = Long.getLong(
+            "comicbookreader.diskcache.bytes", 2L << 30);
+
+    /** By default, pages that were not used for this long are deleted. */
+    private static final long MAXAGEMILLIS = TimeUnit.DAYS.toMillis(
+            Long.getLong("comicbookreader.diskcache.days", 30));
+
+    /** The number of pages that can wait to be written, more are dropped. */
+    private static final int PENDINGWRITES = 8;
+
+    /** The first bytes of a page file, followed by the format version. */
+    private static final int MAGIC = 0x43425047;
+    private static final int VERSION = 1;
+
+    /** The size of the header of a page file. */
+    private static final int HEADERSIZE = 32;
+
+    /** The pixel formats of a page file. */
+    private static final int RGB = 1;
+    private static final int ARGB = 2;
+
+    /** The color models of the pixel formats, the same as TYPE_INT_RGB and TYPE_INT_ARGB. */
+    private static final DirectColorModel RGBMODEL =
+            new DirectColorModel(24, 0xff0000, 0xff00, 0xff);
+    private static final DirectColorModel ARGBMODEL =
+            new DirectColorModel(32, 0xff0000, 0xff00, 0xff, 0xff000000);
+
+    /** The extension of page files. */
+    private static final String EXTENSION = ".page";
+
+    /** Pixels are stored in the byte order of the machine, they are copied as is. */
+    private static final ValueLayout.OfInt PIXEL = ValueLayout.JAVA_INT_UNALIGNED;
+
+    /**
+     * The identity of a page of a book.
+     * @param bookPath The path of the book
+     * @param bookSize The size of the book
+     * @param bookModified The modification time of the book
+     * @param entryName The name of the entry of the page
+     * @param entryCrc The checksum of the entry
+     * @param frame The frame of the entry, for gifs
+     */
+    public record PageId(String bookPath, long bookSize, long bookModified,
+                         String entryName, long entryCrc, int frame) {
+
+        /**
+         * Method to get the start of the file names of the page.
+         * @return A hash of the identity of the page
+         */
+        String toFilePrefix() {
+            String identity = bookPath + '\0' + bookSize + '\0' + bookModified
+                    + '\0' + entryName + '\0' + entryCrc + '\0' + frame;
+
+            try {
+                return HexFormat.of().formatHex(MessageDigest.getInstance("MD5")
+                        .digest(identity.getBytes(StandardCharsets.UTF_8)));
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e); // Every JVM has MD5
+            }
+        }
+    }
+
+    /**
+     * A page file in the cache. The name is the prefix of the page,
+     * its full resolution width and its subsampling.
+     * @param prefix The hash of the identity of the page
+     * @param sourceWidth The width of the page at full resolution
+     * @param subsampling The subsampling the page was decoded with
+     * @param bytes The size of the file
+     * @param lastUsed The time the page was last read or written
+     */
+    private record PageFile(String prefix, int sourceWidth, int subsampling,
+                            long bytes, long lastUsed) {
+
+        /**
+         * Method to get the name of the file.
+         * @return The file name
+         */
+        String fileName() {
+            return toFileName(prefix, sourceWidth, subsampling);
+        }
+    }
+
+    /** The directory the pages are stored in. */
+    private final Path directory;
+
+    /** The number of bytes the pages on disk may take, 0 turns the cache off. */
+    private final long byteBudget;
+
+    /** Pages that were not used for this long are deleted. */
+    private final long maxAgeMillis;
+
+    /** The page files by name, the least recently used first. */
+    private final LinkedHashMap<String, PageFile> pageFiles =
+            new LinkedHashMap<>(16, 0.75f, true);
+
+    /** The page files of every page, by the prefix of the page. */
+    private final Map<String, List<PageFile>> pageFilesByPrefix = new HashMap<>();
+
+    /** The total size of the page files. */
+    private long usedBytes = 0;
+
+    /** If the page files on disk have been listed. */
+    private boolean indexed = false;
+
+    /** Counters, for the statistics. */
+    private long hits = 0;
+    private long misses = 0;
+    private long writes = 0;
+
+    /** Writes pages in the background, pages are dropped if it falls behind. */
+    private final ThreadPoolExecutor writer = new ThreadPoolExecutor(1, 1,
+            0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(PENDINGWRITES),
+            Thread.ofPlatform().daemon().name("disk-page-cache").factory(),
+            new ThreadPoolExecutor.DiscardPolicy());
+
+
+    /**
+     * Constructor of the DiskPageCache class, with the directory and size
+     * set by the comicbookreader.diskcache properties.
+     */
+    public DiskPageCache() {
+        this(CACHEDIRECTORY, BYTEBUDGET, MAXAGEMILLIS);
+    }
+
+
+    /**
+     * Constructor of the DiskPageCache class. The directory is listed
+     * the first time the cache is used.
+     * @param directory The directory the pages are stored in
+     * @param byteBudget The number of bytes the pages may take, 0 for no cache
+     * @param maxAgeMillis Pages that were not used for this long are deleted
+     */
+    DiskPageCache(final Path directory, final long byteBudget,
+                  final long maxAgeMillis) {
+        this.directory = directory;
+        this.byteBudget = byteBudget;
+        this.maxAgeMillis = maxAgeMillis;
+    }
+
+
+    /**
+     * Method to check if pages are stored on disk.
+     * @return true if the cache has a size
+     */
+    public boolean isEnabled() {
+        return byteBudget > 0;
+    }
+
+
+    /**
+     * Method to read a page from disk, for the width it is shown at.
+     * @param pageId The identity of the page
+     * @param page The page number of the page in the book
+     * @param width The width to decode for, 0 for full resolution
+     * @return The page, or null if it is not on disk for that width
+     */
+    public ImageModel get(final PageId pageId, final int page, final int width) {
+        if (!isEnabled()) {
+            return null;
+        }
+
+        PageFile pageFile = findPageFile(pageId.toFilePrefix(), width);
+        if (pageFile == null) {
+            return null;
+        }
+
+        Path file = directory.resolve(pageFile.fileName());
+        try {
+            BufferedImage image = readPage(file, pageFile);
+            Files.setLastModifiedTime(file, FileTime.fromMillis(
+                    System.currentTimeMillis()));
+
+            return new ImageModel(CompatibleImages.toCompatibleImage(image),
+                    page, pageFile.sourceWidth(), pageFile.subsampling());
+        } catch (ClosedByInterruptException | InterruptedIOException e) {
+            // The read was cancelled, the page file itself is fine
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (IOException | RuntimeException e) {
+            e.printStackTrace(); // The page is decoded instead
+            removePageFile(pageFile);
+            return null;
+        }
+    }
+
+
+    /**
+     * Method to store a decoded page on disk, in the background.
+     * Tiled pages are not stored, they are kept compressed anyway.
+     * @param pageId The identity of the page
+     * @param page The decoded page
+     */
+    public void put(final PageId pageId, final ImageModel page) {
+        if (!isEnabled() || page.image() == null) {
+            return;
+        }
+
+        writer.execute(() -> {
+            try {
+                writePage(pageId.toFilePrefix(), page);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        });
+    }
+
+
+    /**
+     * Method to find the page file of a page that fits a width.
+     * @param prefix The hash of the identity of the page
+     * @param width The width to decode for, 0 for full resolution
+     * @return The page file, or null if there is none
+     */
+    private synchronized PageFile findPageFile(final String prefix,
+                                               final int width) {
+        indexPageFiles();
+
+        for (PageFile pageFile : pageFilesByPrefix.getOrDefault(prefix, List.of())) {
+            int subsampling = width > 0
+                    ? Math.max(1, pageFile.sourceWidth() / width) : 1;
+
+            if (pageFile.subsampling() == subsampling) {
+                // Moves the page to the end of the least recently used order
+                PageFile used = new PageFile(prefix, pageFile.sourceWidth(),
+                        subsampling, pageFile.bytes(), System.currentTimeMillis());
+                pageFiles.put(used.fileName(), used);
+                hits++;
+                return used;
+            }
+        }
+
+        misses++;
+        return null;
+    }
+
+
+    /**
+     * Method to read a page file. The file is mapped and its pixels are
+     * copied at once into the array of a raster with the layout of the
+     * file, a DataBufferInt can not wrap the mapped memory itself.
+     * @param file The page file
+     * @param pageFile The page file as named in the cache
+     * @return The image of the page
+     */
+    private static BufferedImage readPage(final Path file,
+                                          final PageFile pageFile)
+            throws IOException {
+        try (Arena arena = Arena.ofConfined();
+             FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MemorySegment segment = channel.map(FileChannel.MapMode.READ_ONLY,
+                    0, channel.size(), arena);
+
+            int width = segment.get(PIXEL, 8);
+            int height = segment.get(PIXEL, 12);
+            int format = segment.get(PIXEL, 16);
+
+            if (segment.get(PIXEL, 0) != MAGIC || segment.get(PIXEL, 4) != VERSION
+                    || segment.get(PIXEL, 20) != pageFile.sourceWidth()
+                    || segment.get(PIXEL, 24) != pageFile.subsampling()
+                    || width <= 0 || height <= 0 || (format != RGB && format != ARGB)
+                    || (long) width * height > Integer.MAX_VALUE
+                    || segment.byteSize() != HEADERSIZE + 4L * width * height) {
+                throw new IOException("Damaged page file: " + file);
+            }
+
+            int[] pixels = new int[width * height];
+            MemorySegment.copy(segment, PIXEL, HEADERSIZE, pixels, 0, pixels.length);
+
+            DirectColorModel colorModel = format == ARGB ? ARGBMODEL : RGBMODEL;
+            WritableRaster raster = Raster.createPackedRaster(
+                    new DataBufferInt(pixels, pixels.length), width, height,
+                    width, colorModel.getMasks(), null);
+
+            return new BufferedImage(colorModel, raster, false, null);
+        }
+    }
+
+
+    /**
+     * Method to write a page file. The file is written to a temporary file
+     * first, so a page is never read half written. Runs on the writer
+     * thread, the tests call it directly to write a page right away.
+     * @param prefix The hash of the identity of the page
+     * @param page The decoded page
+     */
+    void writePage(final String prefix, final ImageModel page)
+            throws IOException {
+        String fileName = toFileName(prefix, page.sourceWidth(), page.subsampling());
+        synchronized (this) {
+            indexPageFiles();
+            if (pageFiles.containsKey(fileName)) {
+                return;
+            }
+        }
+
+        BufferedImage image = page.image();
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int type = image.getType();
+
+        // Int images are copied as they are, other images are converted
+        boolean intPixels = type == BufferedImage.TYPE_INT_RGB
+                || type == BufferedImage.TYPE_INT_ARGB;
+        int format = type == BufferedImage.TYPE_INT_RGB
+                || (!intPixels && !image.getColorModel().hasAlpha()) ? RGB : ARGB;
+
+        Files.createDirectories(directory);
+        Path temporary = Files.createTempFile(directory, "page", ".tmp");
+
+        try {
+            try (FileChannel channel = FileChannel.open(temporary,
+                    StandardOpenOption.WRITE)) {
+                ByteBuffer header = ByteBuffer.allocate(HEADERSIZE)
+                        .order(ByteOrder.nativeOrder());
+                header.putInt(MAGIC).putInt(VERSION).putInt(width).putInt(height)
+                        .putInt(format).putInt(page.sourceWidth())
+                        .putInt(page.subsampling()).putInt(0).flip();
+                channel.write(header);
+
+                // Rows are written in batches of about a megabyte
+                int rowsPerBatch = Math.max(1, (1 << 20) / (4 * width));
+                ByteBuffer batch = ByteBuffer.allocate(4 * width * rowsPerBatch)
+                        .order(ByteOrder.nativeOrder());
+                int[] row = new int[width];
+
+                for (int y = 0; y < height; y++) {
+                    if (intPixels) {
+                        image.getRaster().getDataElements(0, y, width, 1, row);
+                    } else {
+                        image.getRGB(0, y, width, 1, row, 0, width);
+                    }
+                    batch.asIntBuffer().put(row);
+                    batch.position(batch.position() + 4 * width);
+
+                    if (!batch.hasRemaining() || y == height - 1) {
+                        batch.flip();
+                        while (batch.hasRemaining()) {
+                            channel.write(batch);
+                        }
+                        batch.clear();
+                    }
+                }
+            }
+
+            Files.move(temporary, directory.resolve(fileName),
+                    StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+
+        synchronized (this) {
+            PageFile pageFile = new PageFile(prefix, page.sourceWidth(),
+                    page.subsampling(), HEADERSIZE + 4L * width * height,
+                    System.currentTimeMillis());
+            addPageFile(pageFile);
+            writes++;
+            evictPageFiles();
+        }
+    }
+
+
+    /**
+     * Method to list the page files on disk the first time the cache is
+     * used. The files are ordered by their modification time, which is
+     * the time they were last used.
+     */
+    private void indexPageFiles() {
+        if (indexed) {
+            return;
+        }
+        indexed = true;
+
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+
+        List<PageFile> found = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                String fileName = file.getFileName().toString();
+
+                // Left behind by a write that did not finish
+                if (fileName.endsWith(".tmp")) {
+                    Files.deleteIfExists(file);
+                    continue;
+                }
+
+                PageFile pageFile = parseFileName(fileName, Files.readAttributes(
+                        file, BasicFileAttributes.class));
+                if (pageFile != null) {
+                    found.add(pageFile);
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
+        found.sort(Comparator.comparingLong(PageFile::lastUsed));
+        for (PageFile pageFile : found) {
+            addPageFile(pageFile);
+        }
+
+        evictPageFiles();
+    }
+
+
+    /**
+     * Method to delete the least recently used page files until the cache
+     * fits its size, and the page files that are too old.
+     */
+    private void evictPageFiles() {
+        long oldest = System.currentTimeMillis() - maxAgeMillis;
+        Iterator<Map.Entry<String, PageFile>> iterator =
+                pageFiles.entrySet().iterator();
+
+        while (iterator.hasNext()) {
+            PageFile pageFile = iterator.next().getValue();
+            if (usedBytes <= byteBudget && pageFile.lastUsed() >= oldest) {
+                break; // The other pages were used later
+            }
+
+            iterator.remove();
+            usedBytes -= pageFile.bytes();
+            unindexPageFile(pageFile);
+            deletePageFile(pageFile);
+        }
+    }
+
+
+    /**
+     * Method to remove a page file that could not be read.
+     * @param pageFile The page file
+     */
+    private synchronized void removePageFile(final PageFile pageFile) {
+        if (pageFiles.remove(pageFile.fileName()) != null) {
+            usedBytes -= pageFile.bytes();
+            unindexPageFile(pageFile);
+        }
+        deletePageFile(pageFile);
+    }
+
+
+    /**
+     * Method to add a page file to the cache, as the most recently used.
+     * @param pageFile The page file
+     */
+    private void addPageFile(final PageFile pageFile) {
+        pageFiles.put(pageFile.fileName(), pageFile);
+        usedBytes += pageFile.bytes();
+        pageFilesByPrefix.computeIfAbsent(pageFile.prefix(),
+                _ -> new ArrayList<>(1)).add(pageFile);
+    }
+
+
+    /**
+     * Method to remove a page file from the index by prefix.
+     * @param pageFile The page file
+     */
+    private void unindexPageFile(final PageFile pageFile) {
+        List<PageFile> prefixFiles = pageFilesByPrefix.get(pageFile.prefix());
+        if (prefixFiles == null) {
+            return;
+        }
+
+        // The index is not updated when a page is used, so files are matched by name
+        prefixFiles.removeIf(other -> other.fileName().equals(pageFile.fileName()));
+        if (prefixFiles.isEmpty()) {
+            pageFilesByPrefix.remove(pageFile.prefix());
+        }
+    }
+
+
+    /**
+     * Method to delete a page file from disk.
+     * @param pageFile The page file
+     */
+    private void deletePageFile(final PageFile pageFile) {
+        try {
+            Files.deleteIfExists(directory.resolve(pageFile.fileName()));
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+
+    /**
+     * Method to get the name of a page file.
+     * @param prefix The hash of the identity of the page
+     * @param sourceWidth The width of the page at full resolution
+     * @param subsampling The subsampling the page was decoded with
+     * @return The file name
+     */
+    private static String toFileName(final String prefix, final int sourceWidth,
+                                     final int subsampling) {
+        return prefix + "-" + sourceWidth + "-" + subsampling + EXTENSION;
+    }
+
+
+    /**
+     * Method to read the page of a file name.
+     * @param fileName The name of the file
+     * @param attributes The attributes of the file
+     * @return The page file, or null if the file is not a page file
+     */
+    private static PageFile parseFileName(final String fileName,
+                                          final BasicFileAttributes attributes) {
+        if (!fileName.endsWith(EXTENSION)) {
+            return null;
+        }
+
+        String[] fields = fileName.substring(0,
+                fileName.length() - EXTENSION.length()).split("-");
+        if (fields.length != 3) {
+            return null;
+        }
+
+        try {
+            return new PageFile(fields[0], Integer.parseInt(fields[1]),
+                    Integer.parseInt(fields[2]), attributes.size(),
+                    attributes.lastModifiedTime().toMillis());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+
+    /**
+     * Getter for the statistics of the cache.
+     * @return The statistics, as text
+     */
+    public synchronized String getStats() {
+        return "hits=" + hits + ", misses=" + misses + ", writes=" + writes
+                + ", used=" + (usedBytes >> 20) + "MB/" + (byteBudget >> 20) + "MB";
+    }
+}
@@ -0,0 +1,389 @@
+package xyz.jelmer8.models;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.SequenceInputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeMap;
+
+/**
+ * The frames of a gif, decoded when they are shown. The blocks of the gif
+ * are indexed in a single pass without decoding anything. A frame is
+ * decoded on its own, as a gif of one frame, and drawn over the frames
+ * before it following their disposal methods. The canvas is saved every
+ * so many frames, so a jump into the gif only replays the frames from the
+ * saved canvas before it, and turning to the next frame draws one frame.
+ */
+public class GifPageSource {
+
+    /** The canvas is saved before every n-th frame. */
+    private static final int KEYFRAMEINTERVAL =
+            Integer.getInteger("comicbookreader.gif.keyframes", 16);
+
+    /** Block labels of a gif. */
+    private static final int EXTENSION = 0x21;
+    private static final int IMAGEDESCRIPTOR = 0x2c;
+    private static final int TRAILER = 0x3b;
+    private static final int GRAPHICCONTROL = 0xf9;
+
+    /** Disposal methods of a frame. */
+    private static final int RESTORETOBACKGROUND = 2;
+    private static final int RESTORETOPREVIOUS = 3;
+
+    /**
+     * A frame of the gif.
+     * @param start The position of its graphic control extension,
+     *              or of its image descriptor if it has none
+     * @param end The position after its image data
+     * @param x The left of the frame on the canvas
+     * @param y The top of the frame on the canvas
+     * @param width The width of the frame
+     * @param height The height of the frame
+     * @param disposal How the frame is removed before the next frame is drawn
+     */
+    private record Frame(int start, int end, int x, int y, int width,
+                         int height, int disposal) {
+    }
+
+    /** The gif. */
+    private final byte[] gif;
+
+    /** The size of the canvas of the gif. */
+    private final int width;
+    private final int height;
+
+    /** The length of the header, logical screen and global color table. */
+    private final int headerLength;
+
+    /** The frames of the gif, in order. */
+    private final List<Frame> frames = new ArrayList<>();
+
+    /** The saved canvases, before the frame with the key is drawn. */
+    private final TreeMap<Integer, int[]> keyframes = new TreeMap<>();
+
+    /** The canvas before the frame after the last decoded frame is drawn. */
+    private int[] nextCanvas;
+
+    /** The frame nextCanvas is for, -1 if there is none. */
+    private int nextFrame = -1;
+
+
+    /**
+     * Constructor of the GifPageSource class, indexes the frames of the gif.
+     * @param gif The bytes of the gif
+     * @throws IOException If the gif is damaged
+     */
+    public GifPageSource(final byte[] gif) throws IOException {
+        this.gif = gif;
+
+        try {
+            if (gif[0] != 'G' || gif[1] != 'I' || gif[2] != 'F') {
+                throw new IOException("Not a gif");
+            }
+
+            width = readShort(6);
+            height = readShort(8);
+
+            int flags = gif[10] & 0xff;
+            int position = 13;
+            if ((flags & 0x80) != 0) {
+                position += 3 << ((flags & 0x07) + 1);
+            }
+            headerLength = position;
+
+            indexFrames(position);
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new IOException("Truncated gif", e);
+        }
+
+        if (frames.isEmpty()) {
+            throw new IOException("Gif without frames");
+        }
+
+    }
+
+
+    /**
+     * Method to find the frames of the gif, the image data is skipped.
+     * A truncated gif keeps the frames that are complete.
+     * @param firstBlock The position of the first block after the header
+     */
+    private void indexFrames(final int firstBlock) {
+        int position = firstBlock;
+        int frameStart = -1;
+        int disposal = 0;
+
+        try {
+            while (position < gif.length) {
+                int label = gif[position] & 0xff;
+
+                if (label == EXTENSION) {
+                    if ((gif[position + 1] & 0xff) == GRAPHICCONTROL) {
+                        frameStart = position;
+                        disposal = (gif[position + 3] >> 2) & 0x07;
+                    }
+                    position = skipSubBlocks(position + 2);
+                } else if (label == IMAGEDESCRIPTOR) {
+                    int start = frameStart >= 0 ? frameStart : position;
+                    int x = readShort(position + 1);
+                    int y = readShort(position + 3);
+                    int frameWidth = readShort(position + 5);
+                    int frameHeight = readShort(position + 7);
+
+                    int flags = gif[position + 9] & 0xff;
+                    position += 10;
+                    if ((flags & 0x80) != 0) {
+                        position += 3 << ((flags & 0x07) + 1);
+                    }
+
+                    // Skip the minimum code size and the compressed image data
+                    position = skipSubBlocks(position + 1);
+
+                    frames.add(new Frame(start, position, x, y, frameWidth,
+                            frameHeight, disposal));
+                    frameStart = -1;
+                    disposal = 0;
+                } else {
+                    // The trailer, or garbage after the last frame
+                    break;
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException e) {
+            // The last frame is cut off
+        }
+    }
+
+
+    /**
+     * Method to skip a chain of data sub-blocks.
+     * @param position The position of the first sub-block
+     * @return The position after the block terminator
+     */
+    private int skipSubBlocks(final int position) {
+        int next = position;
+        int size;
+
+        while ((size = gif[next] & 0xff) != 0) {
+            next += size + 1;
+        }
+
+        return next + 1;
+    }
+
+
+    /**
+     * Method to read a little endian unsigned short.
+     * @param position The position of the short
+     * @return The value
+     */
+    private int readShort(final int position) {
+        return (gif[position] & 0xff) | (gif[position + 1] & 0xff) << 8;
+    }
+
+
+    /**
+     * Getter for the number of frames of the gif.
+     * @return The number of frames
+     */
+    public int getFrameCount() {
+        return frames.size();
+    }
+
+
+    /**
+     * Getter for the width of the canvas of the gif.
+     * @return The width
+     */
+    public int getWidth() {
+        return width;
+    }
+
+
+    /**
+     * Method to decode a frame as it is shown, drawn over the frames before it.
+     * @param frame The index of the frame
+     * @param subsampling Only every n-th pixel of every n-th row is kept
+     * @return The frame
+     */
+    public synchronized BufferedImage decodeFrame(final int frame,
+                                                  final int subsampling)
+            throws IOException {
+        // Continue from the last decoded frame, or the saved canvas before it
+        Integer keyframe = keyframes.floorKey(frame);
+        int first = keyframe != null ? keyframe : 0;
+        int[] canvas;
+        if (nextFrame >= first && nextFrame <= frame) {
+            first = nextFrame;
+            canvas = nextCanvas;
+        } else if (keyframe != null) {
+            canvas = keyframes.get(first).clone();
+        } else {
+            canvas = new int[width * height]; // The empty canvas
+        }
+        nextFrame = -1; // The canvas is changed from here
+
+        for (int i = first; i < frame; i++) {
+            canvas = drawAndDispose(canvas, i);
+
+            if ((i + 1) % KEYFRAMEINTERVAL == 0 && !keyframes.containsKey(i + 1)) {
+                keyframes.put(i + 1, canvas.clone());
+            }
+        }
+
+        int[] shown = canvas.clone();
+        drawFrame(shown, frame);
+        BufferedImage image = toImage(shown, subsampling);
+
+        // Keep the canvas for the next frame, the common case is turning pages
+        nextCanvas = dispose(shown, canvas, frame);
+        nextFrame = frame + 1;
+
+        return image;
+    }
+
+
+    /**
+     * Method to free the saved canvases, they are saved again when
+     * frames are decoded.
+     * @return The number of bytes of the canvases
+     */
+    public synchronized long releaseCanvases() {
+        long releasedBytes = (long) keyframes.size() * width * height * 4;
+        if (nextCanvas != null) {
+            releasedBytes += (long) nextCanvas.length * 4;
+        }
+
+        keyframes.clear();
+        nextCanvas = null;
+        nextFrame = -1;
+        return releasedBytes;
+    }
+
+
+    /**
+     * Method to draw a frame and remove it as its disposal method says.
+     * @param canvas The canvas before the frame, it is changed
+     * @param frame The index of the frame
+     * @return The canvas before the next frame
+     */
+    private int[] drawAndDispose(final int[] canvas, final int frame)
+            throws IOException {
+        int[] previous = frames.get(frame).disposal() == RESTORETOPREVIOUS
+                ? canvas.clone() : null;
+
+        drawFrame(canvas, frame);
+        return dispose(canvas, previous, frame);
+    }
+
+
+    /**
+     * Method to remove a drawn frame from the canvas.
+     * @param canvas The canvas with the frame, it is changed
+     * @param previous The canvas before the frame was drawn, only used
+     *                 when the frame is restored to the previous canvas
+     * @param frame The index of the frame
+     * @return The canvas before the next frame
+     */
+    private int[] dispose(final int[] canvas, final int[] previous,
+                          final int frame) {
+        Frame info = frames.get(frame);
+
+        if (info.disposal() == RESTORETOPREVIOUS && previous != null) {
+            return previous;
+        }
+
+        if (info.disposal() == RESTORETOBACKGROUND) {
+            // The background is transparent, like in web browsers
+            for (int y = info.y(); y < Math.min(height, info.y() + info.height()); y++) {
+                int row = y * width;
+                Arrays.fill(canvas, row + Math.min(info.x(), width),
+                        row + Math.min(info.x() + info.width(), width), 0);
+            }
+        }
+
+        return canvas;
+    }
+
+
+    /**
+     * Method to draw a frame on the canvas, transparent pixels are skipped.
+     * @param canvas The canvas, it is changed
+     * @param frame The index of the frame
+     */
+    private void drawFrame(final int[] canvas, final int frame)
+            throws IOException {
+        Frame info = frames.get(frame);
+        BufferedImage image = readFrame(info);
+
+        int frameWidth = Math.min(image.getWidth(), width - info.x());
+        int frameHeight = Math.min(image.getHeight(), height - info.y());
+        if (frameWidth <= 0 || frameHeight <= 0) {
+            return;
+        }
+
+        int[] row = new int[frameWidth];
+        for (int y = 0; y < frameHeight; y++) {
+            image.getRGB(0, y, frameWidth, 1, row, 0, frameWidth);
+
+            int offset = (info.y() + y) * width + info.x();
+            for (int x = 0; x < frameWidth; x++) {
+                if (row[x] >>> 24 != 0) {
+                    canvas[offset + x] = row[x];
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Method to decode a single frame, as a gif with only that frame.
+     * @param info The frame
+     * @return The frame, without the frames before it
+     */
+    private BufferedImage readFrame(final Frame info) throws IOException {
+        ImageReader reader = ImageIO.getImageReadersByFormatName("gif").next();
+
+        try (ImageInputStream iis = ImageIO.createImageInputStream(
+                new SequenceInputStream(
+                        new ByteArrayInputStream(gif, 0, headerLength),
+                        new SequenceInputStream(new ByteArrayInputStream(gif,
+                                info.start(), info.end() - info.start()),
+                                new ByteArrayInputStream(new byte[] {TRAILER}))))) {
+            reader.setInput(iis, true);
+            return reader.read(0);
+        } finally {
+            reader.dispose();
+        }
+    }
+
+
+    /**
+     * Method to create an image of a canvas.
+     * @param canvas The canvas
+     * @param subsampling Only every n-th pixel of every n-th row is kept
+     * @return The image
+     */
+    private BufferedImage toImage(final int[] canvas, final int subsampling) {
+        int imageWidth = (width + subsampling - 1) / subsampling;
+        int imageHeight = (height + subsampling - 1) / subsampling;
+        BufferedImage image = new BufferedImage(imageWidth, imageHeight,
+                BufferedImage.TYPE_INT_ARGB);
+
+        int[] row = new int[imageWidth];
+        for (int y = 0; y < imageHeight; y++) {
+            int offset = y * subsampling * width;
+            for (int x = 0; x < imageWidth; x++) {
+                row[x] = canvas[offset + x * subsampling];
+            }
+            image.setRGB(0, y, imageWidth, 1, row, 0, imageWidth);
+        }
+
+        return image;
+    }
+}
@@ -0,0 +1,28 @@
+package xyz.jelmer8.models;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * A decoded page of a book.
+ * @param image The decoded image, null if the page is tiled
+ * @param page The page number of the image
+ * @param sourceWidth The width of the page at full resolution
+ * @param subsampling The subsampling the page was decoded with,
+ *                    1 if the page was decoded at full resolution
+ * @param tiledImage The tiles of a very tall page, null for other pages
+ */
+public record ImageModel(BufferedImage image, int page, int sourceWidth,
+                         int subsampling, TiledImage tiledImage) {
+
+    /**
+     * Constructor for a page that is decoded as a whole.
+     * @param image The decoded image
+     * @param page The page number of the image
+     * @param sourceWidth The width of the page at full resolution
+     * @param subsampling The subsampling the page was decoded with
+     */
+    public ImageModel(final BufferedImage image, final int page,
+                      final int sourceWidth, final int subsampling) {
+        this(image, page, sourceWidth, subsampling, null);
+    }
+}
@@ -0,0 +1,496 @@
+package xyz.jelmer8.models;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The books of a library folder, kept on disk between runs. A rescan only
+ * lists the folders whose modification time changed since the last scan,
+ * the books of the other folders are taken from the index, so a rescan of
+ * a large library costs a stat per folder instead of a stat per file.
+ */
+public class LibraryIndex {
+
+    /** The directory the indexes are stored in. */
+    private static final Path INDEXDIRECTORY = getIndexDirectory();
+
+    /** The first bytes of an index file, followed by the format version. */
+    private static final int MAGIC = 0x43425249;
+    private static final int VERSION = 1;
+
+    /** A book in the library. */
+    public record BookEntry(Path path, long size, long lastModified) {
+    }
+
+    /**
+     * The books that were added to and removed from the library, and the
+     * books that were written to, which have a new size or modification time.
+     */
+    public record Changes(List<BookEntry> added, List<BookEntry> removed,
+                          List<BookEntry> changed) {
+        /**
+         * Method to check if any books were added, removed or changed.
+         * @return true if nothing changed
+         */
+        public boolean isEmpty() {
+            return added.isEmpty() && removed.isEmpty() && changed.isEmpty();
+        }
+    }
+
+    /** A folder of the library, with its books and sub folders. */
+    private record DirectoryEntry(long lastModified, List<Path> directories,
+                                  List<BookEntry> books) {
+    }
+
+    /** The root folder of the library. */
+    private final Path libraryPath;
+
+    /** The file the index is stored in. */
+    private final Path indexFile;
+
+    /** The folders of the library, by path. */
+    private Map<Path, DirectoryEntry> directories = new HashMap<>();
+
+    /** If the index changed since it was loaded or saved. */
+    private boolean modified = false;
+
+
+    /**
+     * Constructor of the LibraryIndex class.
+     * @param libraryPath The root folder of the library
+     */
+    public LibraryIndex(final Path libraryPath) {
+        this.libraryPath = libraryPath.toAbsolutePath().normalize();
+        this.indexFile = INDEXDIRECTORY.resolve("library-" + Integer.toHexString(
+                this.libraryPath.toString().hashCode()) + ".idx");
+    }
+
+
+    /**
+     * Method to check if a file is a supported comic book.
+     * @param fileName The name of the file
+     * @return true if the file has a supported extension
+     */
+    public static boolean isBook(final String fileName) {
+        return fileName.endsWith(".cbr")
+                || fileName.endsWith(".cbz")
+                || fileName.endsWith(".nhlcomic");
+    }
+
+
+    /**
+     * Getter for the root folder of the library.
+     * @return The root folder
+     */
+    public Path getLibraryPath() {
+        return libraryPath;
+    }
+
+
+    /**
+     * Method to read the index from disk.
+     * @return true if there was an index of this library
+     */
+    public synchronized boolean load() {
+        if (!Files.isRegularFile(indexFile)) {
+            return false;
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                Files.newInputStream(indexFile)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION
+                    || !in.readUTF().equals(libraryPath.toString())) {
+                return false; // Another format, or a hash collision
+            }
+
+            Map<Path, DirectoryEntry> loaded = new HashMap<>();
+            int directoryCount = in.readInt();
+
+            for (int i = 0; i < directoryCount; i++) {
+                Path directory = Path.of(in.readUTF());
+                long lastModified = in.readLong();
+
+                List<Path> subdirectories = new ArrayList<>();
+                int subdirectoryCount = in.readInt();
+                for (int j = 0; j < subdirectoryCount; j++) {
+                    subdirectories.add(Path.of(in.readUTF()));
+                }
+
+                List<BookEntry> books = new ArrayList<>();
+                int bookCount = in.readInt();
+                for (int j = 0; j < bookCount; j++) {
+                    books.add(new BookEntry(Path.of(in.readUTF()),
+                            in.readLong(), in.readLong()));
+                }
+
+                loaded.put(directory, new DirectoryEntry(lastModified,
+                        subdirectories, books));
+            }
+
+            directories = loaded;
+            modified = false;
+            return true;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+
+    /**
+     * Method to write the index to disk, if it changed. The index is written
+     * to a temporary file first, so a crash never leaves half an index.
+     */
+    public synchronized void save() throws IOException {
+        if (!modified) {
+            return;
+        }
+
+        Files.createDirectories(INDEXDIRECTORY);
+        Path temporary = Files.createTempFile(INDEXDIRECTORY, "library", ".tmp");
+
+        try {
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeUTF(libraryPath.toString());
+                out.writeInt(directories.size());
+
+                for (Map.Entry<Path, DirectoryEntry> entry : directories.entrySet()) {
+                    DirectoryEntry directory = entry.getValue();
+
+                    out.writeUTF(entry.getKey().toString());
+                    out.writeLong(directory.lastModified());
+
+                    out.writeInt(directory.directories().size());
+                    for (Path subdirectory : directory.directories()) {
+                        out.writeUTF(subdirectory.toString());
+                    }
+
+                    out.writeInt(directory.books().size());
+                    for (BookEntry book : directory.books()) {
+                        out.writeUTF(book.path().toString());
+                        out.writeLong(book.size());
+                        out.writeLong(book.lastModified());
+                    }
+                }
+            }
+
+            try {
+                Files.move(temporary, indexFile, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporary, indexFile,
+                        StandardCopyOption.REPLACE_EXISTING);
+            }
+            modified = false;
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+
+    /**
+     * Method to bring the index up to date with the library on disk.
+     * Only folders whose modification time changed are listed again,
+     * so the size and time of a book that is rewritten in place are
+     * only updated when its folder changes.
+     * @return true if the index changed and should be saved
+     * @throws NoSuchFileException if the library folder does not exist
+     * @throws InterruptedIOException if the thread was interrupted
+     */
+    public synchronized boolean rescan() throws IOException {
+        if (!Files.isDirectory(libraryPath)) {
+            throw new NoSuchFileException(libraryPath.toString());
+        }
+
+        Map<Path, DirectoryEntry> scanned = new HashMap<>();
+        boolean changed = scanDirectory(libraryPath, scanned);
+
+        // Folders that were not reached anymore have been removed
+        changed |= !scanned.keySet().equals(directories.keySet());
+
+        directories = scanned;
+        modified |= changed;
+        return changed;
+    }
+
+
+    /**
+     * Method to update the index for folders that changed on disk.
+     * The folders are listed again, new sub folders are scanned and
+     * removed folders are dropped from the index.
+     * @param changedDirectories The folders that changed, or null to
+     *                           rescan the whole library
+     * @return The books that were added, removed and changed
+     */
+    public synchronized Changes update(final Collection<Path> changedDirectories)
+            throws IOException {
+        final Map<Path, BookEntry> before = getBooksByPath();
+
+        if (changedDirectories == null) {
+            rescan();
+        } else {
+            for (Path directory : changedDirectories) {
+                // Folders outside the library, or in a folder that was
+                // not indexed (yet), are picked up through their parent
+                if (!directories.containsKey(directory)) {
+                    continue;
+                }
+
+                directories.remove(directory);
+                scanDirectory(directory, directories);
+            }
+
+            // Drop the folders that can not be reached anymore
+            Map<Path, DirectoryEntry> reachable = new HashMap<>();
+            collectDirectories(libraryPath, reachable);
+            directories = reachable;
+            modified = true;
+        }
+
+        final Map<Path, BookEntry> after = getBooksByPath();
+        List<BookEntry> added = new ArrayList<>();
+        List<BookEntry> removed = new ArrayList<>();
+        List<BookEntry> changed = new ArrayList<>();
+
+        for (BookEntry book : after.values()) {
+            BookEntry old = before.get(book.path());
+            if (old == null) {
+                added.add(book);
+            } else if (!old.equals(book)) {
+                changed.add(book);
+            }
+        }
+        for (BookEntry book : before.values()) {
+            if (!after.containsKey(book.path())) {
+                removed.add(book);
+            }
+        }
+
+        return new Changes(added, removed, changed);
+    }
+
+
+    /**
+     * Getter for the folders of the library.
+     * @return The paths of the folders
+     */
+    public synchronized Set<Path> getDirectories() {
+        return new HashSet<>(directories.keySet());
+    }
+
+
+    /**
+     * Method to get the books of the library by their path.
+     * @return The books by path
+     */
+    private Map<Path, BookEntry> getBooksByPath() {
+        Map<Path, BookEntry> books = new HashMap<>();
+
+        for (BookEntry book : getBooks()) {
+            books.put(book.path(), book);
+        }
+
+        return books;
+    }
+
+
+    /**
+     * Method to collect a folder and its sub folders that are in the index.
+     * @param directory The folder
+     * @param reachable The folders that are collected
+     */
+    private void collectDirectories(final Path directory,
+                                    final Map<Path, DirectoryEntry> reachable) {
+        DirectoryEntry entry = directories.get(directory);
+
+        if (entry == null) {
+            return;
+        }
+
+        reachable.put(directory, entry);
+
+        for (Path subdirectory : entry.directories()) {
+            collectDirectories(subdirectory, reachable);
+        }
+    }
+
+
+    /**
+     * Method to scan a folder and its sub folders.
+     * @param directory The folder to scan
+     * @param scanned The scanned folders, the folder is added to it
+     * @return true if the folder or one of its sub folders changed
+     */
+    private boolean scanDirectory(final Path directory,
+                                  final Map<Path, DirectoryEntry> scanned)
+            throws IOException {
+        if (Thread.currentThread().isInterrupted()) {
+            throw new InterruptedIOException("Library scan cancelled");
+        }
+
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(directory,
+                    BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        } catch (NoSuchFileException e) {
+            return true; // Removed while scanning
+        }
+
+        long lastModified = attributes.lastModifiedTime().toMillis();
+        DirectoryEntry entry = directories.get(directory);
+        boolean changed = false;
+
+        // The books and sub folders of a folder only change with its mtime
+        if (entry == null || entry.lastModified() != lastModified) {
+            try {
+                entry = listDirectory(directory, lastModified);
+            } catch (NoSuchFileException e) {
+                return true; // Removed while scanning
+            }
+            changed = true;
+        }
+
+        scanned.put(directory, entry);
+
+        for (Path subdirectory : entry.directories()) {
+            changed |= scanDirectory(subdirectory, scanned);
+        }
+
+        return changed;
+    }
+
+
+    /**
+     * Method to list the books and sub folders of a folder.
+     * @param directory The folder to list
+     * @param lastModified The modification time of the folder
+     * @return The entry of the folder
+     */
+    private DirectoryEntry listDirectory(final Path directory,
+                                         final long lastModified)
+            throws IOException {
+        List<Path> subdirectories = new ArrayList<>();
+        List<BookEntry> books = new ArrayList<>();
+
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory)) {
+            for (Path path : entries) {
+                BasicFileAttributes attributes;
+                try {
+                    attributes = Files.readAttributes(path,
+                            BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+
+                    if (attributes.isDirectory()) {
+                        subdirectories.add(path);
+                        continue;
+                    }
+
+                    if (!isBook(path.getFileName().toString())) {
+                        continue;
+                    }
+
+                    // Like Files.walk, links to books are listed as books
+                    if (attributes.isSymbolicLink()) {
+                        attributes = Files.readAttributes(path,
+                                BasicFileAttributes.class);
+                    }
+                } catch (IOException e) {
+                    continue; // Removed while listing, or a broken link
+                }
+
+                if (attributes.isRegularFile()) {
+                    books.add(new BookEntry(path, attributes.size(),
+                            attributes.lastModifiedTime().toMillis()));
+                }
+            }
+        }
+
+        subdirectories.sort(Comparator.naturalOrder());
+        books.sort(Comparator.comparing(BookEntry::path));
+        return new DirectoryEntry(lastModified, subdirectories, books);
+    }
+
+
+    /**
+     * Getter for the books of the library, in folder order.
+     * @return The books
+     */
+    public synchronized List<BookEntry> getBooks() {
+        List<BookEntry> books = new ArrayList<>();
+        collectBooks(libraryPath, books);
+        return books;
+    }
+
+
+    /**
+     * Method to add the books of a folder and its sub folders to a list.
+     * @param directory The folder
+     * @param books The list to add the books to
+     */
+    private void collectBooks(final Path directory, final List<BookEntry> books) {
+        DirectoryEntry entry = directories.get(directory);
+
+        if (entry == null) {
+            return;
+        }
+
+        books.addAll(entry.books());
+
+        for (Path subdirectory : entry.directories()) {
+            collectBooks(subdirectory, books);
+        }
+    }
+
+
+    /**
+     * Method to get the directory indexes are stored in, the user cache
+     * directory unless comicbookreader.index.dir is set, which can point
+     * next to the library.
+     * @return The index directory
+     */
+    private static Path getIndexDirectory() {
+        String indexDirectory = System.getProperty("comicbookreader.index.dir");
+        if (indexDirectory != null) {
+            return Path.of(indexDirectory);
+        }
+
+        return getCacheHome();
+    }
+
+
+    /**
+     * Method to get the cache directory of the reader in the user cache
+     * directory, XDG_CACHE_HOME or ~/.cache.
+     * @return The cache directory
+     */
+    static Path getCacheHome() {
+        String cacheHome = System.getenv("XDG_CACHE_HOME");
+        if (cacheHome != null && !cacheHome.isEmpty()) {
+            return Path.of(cacheHome, "comicbookreader");
+        }
+
+        return Path.of(System.getProperty("user.home"), ".cache",
+                "comicbookreader");
+    }
+}
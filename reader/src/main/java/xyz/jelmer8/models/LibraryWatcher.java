@@ -0,0 +1,266 @@
+package xyz.jelmer8.models;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Keeps a library index up to date while the reader runs. The folders of
+ * the library are watched with a WatchService, events are collected until
+ * the library has been quiet for a moment, and the changed folders are
+ * then updated in the index at once. Network mounts do not report changes
+ * to a WatchService, those libraries are rescanned every so often instead.
+ */
+public class LibraryWatcher implements Closeable {
+
+    /** How long the library has to be quiet before the changes are applied. */
+    private static final long QUIETMILLIS = 500;
+
+    /** The longest time changes are collected before they are applied. */
+    private static final long MAXBATCHMILLIS = 5000;
+
+    /** The time between two rescans when the library is polled. */
+    private static final long POLLSECONDS =
+            Long.getLong("comicbookreader.watch.poll.seconds", 30);
+
+    /** If the library is always polled instead of watched. */
+    private static final boolean ALWAYSPOLL =
+            Boolean.getBoolean("comicbookreader.watch.poll");
+
+    /** File store types of network mounts, which are polled. */
+    private static final Set<String> NETWORKFILESYSTEMS = Set.of("nfs", "nfs4",
+            "cifs", "smb", "smb2", "smb3", "smbfs", "fuse.sshfs", "sshfs",
+            "9p", "afpfs", "davfs", "webdav");
+
+    /** The index that is kept up to date. */
+    private final LibraryIndex libraryIndex;
+
+    /** Called with the books that were added and removed. */
+    private final Consumer<LibraryIndex.Changes> listener;
+
+    /** The watch service, null when the library is polled. */
+    private final WatchService watchService;
+
+    /** The watched folders, by their watch key. */
+    private final Map<WatchKey, Path> watchedDirectories = new HashMap<>();
+
+    /** The thread that waits for changes. */
+    private final Thread watcherThread;
+
+    /** Set when the watcher is closed. */
+    private volatile boolean closed = false;
+
+
+    /**
+     * Constructor of the LibraryWatcher class, the watcher starts right away.
+     * @param libraryIndex The scanned index of the library
+     * @param listener Called from the watcher thread with the books that
+     *                 were added and removed, after the index was updated
+     */
+    public LibraryWatcher(final LibraryIndex libraryIndex,
+                          final Consumer<LibraryIndex.Changes> listener) {
+        this.libraryIndex = libraryIndex;
+        this.listener = listener;
+        this.watchService = createWatchService(libraryIndex.getLibraryPath());
+
+        watcherThread = Thread.ofPlatform().daemon().name("library-watcher")
+                .start(watchService != null ? this::watch : this::poll);
+    }
+
+
+    /**
+     * Method to create a watch service for the library,
+     * if changes in the library can be watched.
+     * @param libraryPath The root folder of the library
+     * @return The watch service, or null if the library has to be polled
+     */
+    private WatchService createWatchService(final Path libraryPath) {
+        if (ALWAYSPOLL) {
+            return null;
+        }
+
+        try {
+            String type = Files.getFileStore(libraryPath).type()
+                    .toLowerCase(Locale.ROOT);
+
+            if (NETWORKFILESYSTEMS.contains(type)) {
+                return null;
+            }
+
+            return FileSystems.getDefault().newWatchService();
+        } catch (IOException | UnsupportedOperationException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+
+    /**
+     * Method to watch the library until the watcher is closed.
+     */
+    private void watch() {
+        try {
+            registerDirectories();
+
+            while (!closed) {
+                WatchKey key = watchService.take();
+
+                Set<Path> changedDirectories = new HashSet<>();
+                boolean overflow = false;
+                long batchStart = System.currentTimeMillis();
+
+                // Collect events until the library is quiet,
+                // a folder being copied in gives many events
+                while (key != null) {
+                    overflow |= collectEvents(key, changedDirectories);
+
+                    if (System.currentTimeMillis() - batchStart > MAXBATCHMILLIS) {
+                        break;
+                    }
+                    key = watchService.poll(QUIETMILLIS, TimeUnit.MILLISECONDS);
+                }
+
+                // Too many events were lost, check the whole library
+                update(overflow ? null : changedDirectories);
+                registerDirectories();
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // The watcher was closed
+        } catch (IOException e) {
+            if (!closed) {
+                // Like running out of watches, poll the library instead
+                e.printStackTrace();
+                poll();
+            }
+        }
+    }
+
+
+    /**
+     * Method to rescan the library every so often until the watcher is closed.
+     */
+    private void poll() {
+        try {
+            while (!closed) {
+                Thread.sleep(TimeUnit.SECONDS.toMillis(POLLSECONDS));
+                update(null);
+            }
+        } catch (InterruptedException e) {
+            // The watcher was closed
+        }
+    }
+
+
+    /**
+     * Method to take the events of a watch key.
+     * @param key The signalled watch key
+     * @param changedDirectories The folders that changed, the folder of
+     *                           the key is added to it
+     * @return true if events were lost
+     */
+    private boolean collectEvents(final WatchKey key,
+                                  final Set<Path> changedDirectories) {
+        boolean overflow = false;
+
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                overflow = true;
+            }
+        }
+
+        Path directory = watchedDirectories.get(key);
+        if (directory != null) {
+            changedDirectories.add(directory);
+        }
+
+        // A key of a removed folder can not be reset
+        if (!key.reset()) {
+            watchedDirectories.remove(key);
+        }
+
+        return overflow;
+    }
+
+
+    /**
+     * Method to update the index and report the changes.
+     * @param changedDirectories The folders that changed,
+     *                           or null to rescan the whole library
+     */
+    private void update(final Set<Path> changedDirectories) {
+        if (closed) {
+            return;
+        }
+
+        LibraryIndex.Changes changes;
+        try {
+            changes = libraryIndex.update(changedDirectories);
+            libraryIndex.save();
+        } catch (IOException e) {
+            if (!closed) {
+                e.printStackTrace(); // Tried again with the next change
+            }
+            return;
+        }
+
+        if (!changes.isEmpty()) {
+            listener.accept(changes);
+        }
+    }
+
+
+    /**
+     * Method to watch the folders of the index that are not watched yet.
+     */
+    private void registerDirectories() throws IOException {
+        Set<Path> watched = new HashSet<>(watchedDirectories.values());
+
+        for (Path directory : libraryIndex.getDirectories()) {
+            if (watched.contains(directory)) {
+                continue;
+            }
+
+            try {
+                WatchKey key = directory.register(watchService,
+                        StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_DELETE,
+                        StandardWatchEventKinds.ENTRY_MODIFY);
+                watchedDirectories.put(key, directory);
+            } catch (NoSuchFileException e) {
+                // Removed since it was indexed, the parent reports it
+            }
+        }
+    }
+
+
+    /**
+     * Method to stop watching the library.
+     */
+    public void close() {
+        closed = true;
+        watcherThread.interrupt();
+
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+}
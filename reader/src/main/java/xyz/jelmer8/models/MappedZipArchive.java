@@ -0,0 +1,336 @@
+package xyz.jelmer8.models;
+
+import javax.imageio.stream.ImageInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A zip file that is mapped into memory. The central directory is read
+ * from the mapping, and entries that are stored without compression are
+ * read as slices of the mapping, so a page goes from the page cache of the
+ * operating system to the image decoder without being copied. Entries that
+ * are compressed or encrypted have to be read with zip4j.
+ */
+public class MappedZipArchive implements Closeable {
+
+    /** Signatures of the zip records. */
+    private static final int LOCALHEADER = 0x04034b50;
+    private static final int CENTRALHEADER = 0x02014b50;
+    private static final int ENDOFDIRECTORY = 0x06054b50;
+    private static final int ZIP64ENDOFDIRECTORY = 0x06064b50;
+    private static final int ZIP64LOCATOR = 0x07064b50;
+
+    /** The id of the extra field with the 64 bit sizes and offset. */
+    private static final int ZIP64EXTRA = 0x0001;
+
+    /** The sizes of the fixed parts of the zip records. */
+    private static final int LOCALHEADERSIZE = 30;
+    private static final int CENTRALHEADERSIZE = 46;
+    private static final int ENDOFDIRECTORYSIZE = 22;
+    private static final int ZIP64LOCATORSIZE = 20;
+
+    /** The longest comment of a zip file. */
+    private static final int MAXCOMMENTSIZE = 0xffff;
+
+    /** The flag of entries with a name in utf-8, the others are in cp437. */
+    private static final int UTF8FLAG = 0x800;
+
+    /** The charset of entry names without the utf-8 flag, as zip4j reads them. */
+    private static final Charset CP437 = Charset.forName("IBM437");
+
+    /** The compression method of entries that are not compressed. */
+    private static final int STORED = 0;
+
+    /** Little endian layouts, a zip file is little endian. */
+    private static final ValueLayout.OfShort SHORT =
+            ValueLayout.JAVA_SHORT_UNALIGNED.withOrder(ByteOrder.LITTLE_ENDIAN);
+    private static final ValueLayout.OfInt INT =
+            ValueLayout.JAVA_INT_UNALIGNED.withOrder(ByteOrder.LITTLE_ENDIAN);
+    private static final ValueLayout.OfLong LONG =
+            ValueLayout.JAVA_LONG_UNALIGNED.withOrder(ByteOrder.LITTLE_ENDIAN);
+
+    /**
+     * An entry of the central directory.
+     * @param name The name of the entry
+     * @param method The compression method
+     * @param encrypted If the entry is encrypted
+     * @param crc The checksum of the uncompressed entry
+     * @param compressedSize The size of the entry in the zip file
+     * @param size The size of the entry when uncompressed
+     * @param localHeaderOffset The position of the local header of the entry
+     */
+    private record Entry(String name, int method, boolean encrypted, long crc,
+                         long compressedSize, long size, long localHeaderOffset) {
+
+        /**
+         * Method to check if the entry can be read from the mapping.
+         * @return true if the entry is stored, not encrypted and
+         * small enough for a byte buffer
+         */
+        boolean isMappable() {
+            return method == STORED && !encrypted && size == compressedSize
+                    && size <= Integer.MAX_VALUE;
+        }
+    }
+
+    /** The memory of the mapping, unmapped when the archive is closed. */
+    private final Arena arena = Arena.ofShared();
+
+    /** The mapped zip file. */
+    private final MemorySegment mapping;
+
+    /** The entries of the central directory, by name. */
+    private final Map<String, Entry> entries = new HashMap<>();
+
+    /** The names of the entries, in the order of the central directory. */
+    private final List<String> entryNames = new ArrayList<>();
+
+
+    /**
+     * Constructor of the MappedZipArchive class, maps the file and reads
+     * its central directory.
+     * @param zipPath The path of the zip file
+     * @throws IOException If the file can not be mapped or is not a zip file
+     * that can be read, zip4j has to be used then
+     */
+    public MappedZipArchive(final Path zipPath) throws IOException {
+        try (FileChannel channel = FileChannel.open(zipPath,
+                StandardOpenOption.READ)) {
+            // The mapping stays valid after the channel is closed
+            mapping = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                    channel.size(), arena);
+        } catch (IOException | RuntimeException e) {
+            arena.close();
+            throw e;
+        }
+
+        try {
+            readCentralDirectory();
+        } catch (IOException | IndexOutOfBoundsException e) {
+            arena.close();
+            throw e instanceof IOException ioException ? ioException
+                    : new IOException("Damaged zip file: " + zipPath, e);
+        }
+    }
+
+
+    /**
+     * Method to read the central directory from the mapping.
+     */
+    private void readCentralDirectory() throws IOException {
+        long end = findEndOfDirectory();
+
+        if ((mapping.get(SHORT, end + 4) & 0xffff) != 0
+                || (mapping.get(SHORT, end + 6) & 0xffff) != 0) {
+            throw new IOException("Split zip files are not mapped");
+        }
+
+        long entryCount = mapping.get(SHORT, end + 10) & 0xffff;
+        long directoryOffset = mapping.get(INT, end + 16) & 0xffffffffL;
+
+        // Large zip files keep the real values in the zip64 records
+        long locator = end - ZIP64LOCATORSIZE;
+        if (locator >= 0 && mapping.get(INT, locator) == ZIP64LOCATOR) {
+            long zip64End = mapping.get(LONG, locator + 8);
+            if (mapping.get(INT, zip64End) != ZIP64ENDOFDIRECTORY) {
+                throw new IOException("Missing zip64 end of central directory");
+            }
+
+            entryCount = mapping.get(LONG, zip64End + 32);
+            directoryOffset = mapping.get(LONG, zip64End + 48);
+        }
+
+        long position = directoryOffset;
+        for (long i = 0; i < entryCount; i++) {
+            if (mapping.get(INT, position) != CENTRALHEADER) {
+                throw new IOException("Damaged central directory");
+            }
+
+            int flags = mapping.get(SHORT, position + 8) & 0xffff;
+            int method = mapping.get(SHORT, position + 10) & 0xffff;
+            long crc = mapping.get(INT, position + 16) & 0xffffffffL;
+            long compressedSize = mapping.get(INT, position + 20) & 0xffffffffL;
+            long size = mapping.get(INT, position + 24) & 0xffffffffL;
+            int nameLength = mapping.get(SHORT, position + 28) & 0xffff;
+            int extraLength = mapping.get(SHORT, position + 30) & 0xffff;
+            int commentLength = mapping.get(SHORT, position + 32) & 0xffff;
+            long localHeaderOffset = mapping.get(INT, position + 42) & 0xffffffffL;
+
+            String name = new String(mapping.asSlice(position + CENTRALHEADERSIZE,
+                    nameLength).toArray(ValueLayout.JAVA_BYTE),
+                    (flags & UTF8FLAG) != 0 ? StandardCharsets.UTF_8 : CP437);
+
+            // The zip64 extra field only has the values that did not fit
+            long extra = position + CENTRALHEADERSIZE + nameLength;
+            long extraEnd = extra + extraLength;
+            while (extra + 4 <= extraEnd) {
+                int id = mapping.get(SHORT, extra) & 0xffff;
+                int length = mapping.get(SHORT, extra + 2) & 0xffff;
+                long value = extra + 4;
+
+                if (id == ZIP64EXTRA) {
+                    if (size == 0xffffffffL) {
+                        size = mapping.get(LONG, value);
+                        value += 8;
+                    }
+                    if (compressedSize == 0xffffffffL) {
+                        compressedSize = mapping.get(LONG, value);
+                        value += 8;
+                    }
+                    if (localHeaderOffset == 0xffffffffL) {
+                        localHeaderOffset = mapping.get(LONG, value);
+                    }
+                }
+                extra += 4 + length;
+            }
+
+            if (!name.endsWith("/")) {
+                entries.put(name, new Entry(name, method, (flags & 1) != 0,
+                        crc, compressedSize, size, localHeaderOffset));
+                entryNames.add(name);
+            }
+
+            position = extraEnd + commentLength;
+        }
+    }
+
+
+    /**
+     * Method to find the end of central directory record, it is at the end
+     * of the file, before the comment of the zip file.
+     * @return The position of the record
+     */
+    private long findEndOfDirectory() throws IOException {
+        long last = mapping.byteSize() - ENDOFDIRECTORYSIZE;
+        long first = Math.max(0, last - MAXCOMMENTSIZE);
+
+        for (long position = last; position >= first; position--) {
+            if (mapping.get(INT, position) == ENDOFDIRECTORY) {
+                return position;
+            }
+        }
+
+        throw new IOException("Not a zip file");
+    }
+
+
+    /**
+     * Getter for the names of the files in the zip file.
+     * @return The names, folders are left out
+     */
+    public List<String> getEntryNames() {
+        return List.copyOf(entryNames);
+    }
+
+
+    /**
+     * Method to check if an entry is in the zip file.
+     * @param entryName The name of the entry
+     * @return true if the zip file has the entry
+     */
+    public boolean contains(final String entryName) {
+        return entries.containsKey(entryName);
+    }
+
+
+    /**
+     * Getter for the checksum of an entry.
+     * @param entryName The name of the entry
+     * @return The crc32 of the uncompressed entry
+     */
+    public long getCrc(final String entryName) throws IOException {
+        Entry entry = entries.get(entryName);
+
+        if (entry == null) {
+            throw new IOException("Missing entry " + entryName);
+        }
+
+        return entry.crc();
+    }
+
+
+    /**
+     * Method to check if an entry can be read from the mapping.
+     * @param entryName The name of the entry
+     * @return true if the entry is stored and not encrypted
+     */
+    public boolean isMapped(final String entryName) {
+        Entry entry = entries.get(entryName);
+        return entry != null && entry.isMappable();
+    }
+
+
+    /**
+     * Method to open a stored entry, without copying it.
+     * @param entryName The name of the entry
+     * @return ImageInputStream of the entry
+     */
+    public ImageInputStream open(final String entryName) throws IOException {
+        return new ByteBufferImageInputStream(getSlice(entryName).asByteBuffer());
+    }
+
+
+    /**
+     * Method to open a stored entry as a plain stream, without copying it.
+     * @param entryName The name of the entry
+     * @return InputStream of the entry
+     */
+    public InputStream openStream(final String entryName) throws IOException {
+        return new ByteBufferInputStream(getSlice(entryName).asByteBuffer());
+    }
+
+
+    /**
+     * Method to get the data of a stored entry. The data starts after the
+     * local header, which can have a different extra field than the entry
+     * in the central directory.
+     * @param entryName The name of the entry
+     * @return The slice of the mapping with the data of the entry
+     */
+    private MemorySegment getSlice(final String entryName) throws IOException {
+        Entry entry = entries.get(entryName);
+
+        if (entry == null || !entry.isMappable()) {
+            throw new IOException("Entry can not be mapped: " + entryName);
+        }
+
+        try {
+            long header = entry.localHeaderOffset();
+            if (mapping.get(INT, header) != LOCALHEADER) {
+                throw new IOException("Damaged local header: " + entryName);
+            }
+
+            int nameLength = mapping.get(SHORT, header + 26) & 0xffff;
+            int extraLength = mapping.get(SHORT, header + 28) & 0xffff;
+
+            return mapping.asSlice(header + LOCALHEADERSIZE + nameLength
+                    + extraLength, entry.size());
+        } catch (IndexOutOfBoundsException e) {
+            throw new IOException("Entry outside of the zip file: " + entryName, e);
+        }
+    }
+
+
+    /**
+     * Method to unmap the zip file. Entries that are still being read
+     * can not be read anymore, so the book only closes it when none of
+     * its pages are being decoded.
+     */
+    public void close() {
+        arena.close();
+    }
+}
@@ -0,0 +1,80 @@
+package xyz.jelmer8.models;
+
+import javax.management.ListenerNotFoundException;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import java.io.Closeable;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryNotificationInfo;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+
+/**
+ * Tells the reader when the heap runs low. A usage threshold is set on the
+ * heap pools that support one, the old generation, and the JVM sends a
+ * notification when a pool goes over it. The collection usage threshold
+ * is checked after every garbage collection, so it keeps notifying while
+ * the memory that is still used after a collection stays too high.
+ */
+public class MemoryGovernor implements Closeable {
+
+    /** The percentage of a heap pool that can be used before the reader frees memory. */
+    private static final int THRESHOLDPERCENTAGE = Math.clamp(
+            Integer.getInteger("comicbookreader.memory.threshold", 75), 1, 99);
+
+    /** Called when a heap pool goes over its threshold. */
+    private final Runnable onPressure;
+
+    /** Receives the threshold notifications of the memory bean. */
+    private final NotificationListener listener;
+
+
+    /**
+     * Constructor of the MemoryGovernor class, sets the thresholds
+     * of the heap pools and starts listening.
+     * @param onPressure Called when the heap runs low, on the notification
+     *                   thread of the JVM
+     */
+    public MemoryGovernor(final Runnable onPressure) {
+        this.onPressure = onPressure;
+
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            long max = pool.getUsage().getMax();
+            if (pool.getType() != MemoryType.HEAP || max <= 0) {
+                continue;
+            }
+
+            long threshold = max / 100 * THRESHOLDPERCENTAGE;
+            if (pool.isUsageThresholdSupported()) {
+                pool.setUsageThreshold(threshold);
+            }
+            if (pool.isCollectionUsageThresholdSupported()) {
+                pool.setCollectionUsageThreshold(threshold);
+            }
+        }
+
+        listener = (notification, _) -> {
+            String type = notification.getType();
+            if (MemoryNotificationInfo.MEMORY_THRESHOLD_EXCEEDED.equals(type)
+                    || MemoryNotificationInfo.MEMORY_COLLECTION_THRESHOLD_EXCEEDED
+                    .equals(type)) {
+                this.onPressure.run();
+            }
+        };
+        ((NotificationEmitter) ManagementFactory.getMemoryMXBean())
+                .addNotificationListener(listener, null, null);
+    }
+
+
+    /**
+     * Method to stop listening, the thresholds stay set.
+     */
+    public void close() {
+        try {
+            ((NotificationEmitter) ManagementFactory.getMemoryMXBean())
+                    .removeNotificationListener(listener);
+        } catch (ListenerNotFoundException e) {
+            e.printStackTrace();
+        }
+    }
+}
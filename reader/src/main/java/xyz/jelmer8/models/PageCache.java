@@ -0,0 +1,255 @@
+package xyz.jelmer8.models;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Cache of decoded pages, shared by all the book models of the application.
+ * The cache is bounded by the number of raster bytes it holds, the least
+ * recently used pages are evicted first. Evicted pages are kept as soft
+ * references, so they can still be reused until the garbage collector
+ * needs the memory.
+ */
+public class PageCache {
+
+    /**
+     * Key of a page in the cache.
+     * @param bookPath The path of the book the page belongs to
+     * @param page The page number
+     * @param subsampling The subsampling the page was decoded with
+     */
+    public record Key(String bookPath, int page, int subsampling) {
+
+    }
+
+    /**
+     * Statistics of the cache.
+     * @param hits Number of lookups that found a page
+     * @param softHits Number of hits that were revived from a soft reference
+     * @param misses Number of lookups that did not find a page
+     * @param evictions Number of pages evicted because of the byte budget
+     * @param usedBytes The raster bytes currently held by the cache
+     * @param byteBudget The maximum raster bytes held by the cache
+     */
+    public record Stats(long hits, long softHits, long misses, long evictions,
+                        long usedBytes, long byteBudget) {
+
+        @Override
+        public String toString() {
+            return "hits=" + hits + " (soft " + softHits + "), misses=" + misses
+                    + ", evictions=" + evictions + ", used=" + (usedBytes >> 20)
+                    + "MB/" + (byteBudget >> 20) + "MB";
+        }
+    }
+
+    /** Soft reference to an evicted page, remembers its key for cleanup. */
+    private static final class SoftPage extends SoftReference<ImageModel> {
+
+        /** The key of the evicted page. */
+        private final Key key;
+
+        SoftPage(final Key key, final ImageModel page,
+                 final ReferenceQueue<ImageModel> queue) {
+            super(page, queue);
+            this.key = key;
+        }
+    }
+
+    /** The maximum number of raster bytes held by the cache. */
+    private final long byteBudget;
+
+    /** The number of raster bytes currently held by the cache. */
+    private long usedBytes = 0;
+
+    /** The cached pages, in least recently used order. */
+    private final LinkedHashMap<Key, ImageModel> pages =
+            new LinkedHashMap<>(16, 0.75f, true);
+
+    /** The evicted pages that have not been collected yet. */
+    private final Map<Key, SoftPage> evictedPages = new HashMap<>();
+
+    /** Queue of soft references that have been cleared. */
+    private final ReferenceQueue<ImageModel> clearedPages = new ReferenceQueue<>();
+
+    /** Counters for the statistics of the cache. */
+    private long hits = 0;
+    private long softHits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+
+    /**
+     * Constructor of the PageCache class.
+     * @param byteBudget The maximum raster bytes held by the cache
+     */
+    public PageCache(final long byteBudget) {
+        this.byteBudget = byteBudget;
+    }
+
+
+    /**
+     * Method to get a page from the cache.
+     * @param key The key of the page
+     * @return The page, or null if it is not cached
+     */
+    public synchronized ImageModel get(final Key key) {
+        purgeClearedPages();
+
+        ImageModel page = pages.get(key);
+        if (page != null) {
+            hits++;
+            return page;
+        }
+
+        // Revive the page if it was evicted but not collected yet
+        SoftPage softPage = evictedPages.remove(key);
+        page = softPage == null ? null : softPage.get();
+        if (page != null) {
+            hits++;
+            softHits++;
+            put(key, page);
+            return page;
+        }
+
+        misses++;
+        return null;
+    }
+
+
+    /**
+     * Method to add a page to the cache.
+     * @param key The key of the page
+     * @param page The decoded page
+     */
+    public synchronized void put(final Key key, final ImageModel page) {
+        ImageModel previous = pages.put(key, page);
+        if (previous != null) {
+            usedBytes -= sizeOf(previous);
+        }
+        usedBytes += sizeOf(page);
+
+        evictToBudget();
+    }
+
+
+    /**
+     * Method to remove all pages of a book from the cache.
+     * @param bookPath The path of the book
+     */
+    public synchronized void removeBook(final String bookPath) {
+        Iterator<Map.Entry<Key, ImageModel>> iterator = pages.entrySet().iterator();
+
+        while (iterator.hasNext()) {
+            Map.Entry<Key, ImageModel> entry = iterator.next();
+
+            if (entry.getKey().bookPath().equals(bookPath)) {
+                usedBytes -= sizeOf(entry.getValue());
+                iterator.remove();
+            }
+        }
+
+        evictedPages.keySet().removeIf(key -> key.bookPath().equals(bookPath));
+    }
+
+
+    /**
+     * Getter for the raster bytes of the cached pages of a book.
+     * @param bookPath The path of the book
+     * @return The number of bytes
+     */
+    public synchronized long getBookBytes(final String bookPath) {
+        long bytes = 0;
+
+        for (Map.Entry<Key, ImageModel> entry : pages.entrySet()) {
+            if (entry.getKey().bookPath().equals(bookPath)) {
+                bytes += sizeOf(entry.getValue());
+            }
+        }
+
+        return bytes;
+    }
+
+
+    /**
+     * Getter for the statistics of the cache.
+     * @return The current statistics
+     */
+    public synchronized Stats getStats() {
+        return new Stats(hits, softHits, misses, evictions, usedBytes, byteBudget);
+    }
+
+
+    /**
+     * Getter for the maximum number of raster bytes held by the cache.
+     * @return The byte budget of the cache
+     */
+    public long getByteBudget() {
+        return byteBudget;
+    }
+
+
+    /**
+     * Method to evict the least recently used pages until the cache
+     * fits in its byte budget.
+     */
+    private void evictToBudget() {
+        Iterator<Map.Entry<Key, ImageModel>> iterator = pages.entrySet().iterator();
+
+        while (usedBytes > byteBudget && iterator.hasNext()) {
+            Map.Entry<Key, ImageModel> entry = iterator.next();
+            iterator.remove();
+
+            usedBytes -= sizeOf(entry.getValue());
+            evictions++;
+
+            evictedPages.put(entry.getKey(),
+                    new SoftPage(entry.getKey(), entry.getValue(), clearedPages));
+        }
+    }
+
+
+    /**
+     * Method to remove the soft references that have been cleared
+     * by the garbage collector.
+     */
+    private void purgeClearedPages() {
+        SoftPage cleared;
+
+        while ((cleared = (SoftPage) clearedPages.poll()) != null) {
+            evictedPages.remove(cleared.key, cleared);
+        }
+    }
+
+
+    /**
+     * Method to calculate the number of bytes a page holds on to.
+     * @param page The page
+     * @return The size of the page in bytes
+     */
+    public static long sizeOf(final ImageModel page) {
+        if (page.tiledImage() != null) {
+            return page.tiledImage().getRetainedBytes();
+        }
+
+        return sizeOf(page.image());
+    }
+
+
+    /**
+     * Method to calculate the number of raster bytes of an image.
+     * @param image The image
+     * @return The size of the raster in bytes
+     */
+    static long sizeOf(final BufferedImage image) {
+        DataBuffer dataBuffer = image.getRaster().getDataBuffer();
+
+        return (long) dataBuffer.getSize() * dataBuffer.getNumBanks()
+                * DataBuffer.getDataTypeSize(dataBuffer.getDataType()) / 8;
+    }
+}
@@ -0,0 +1,18 @@
+package xyz.jelmer8.models;
+
+/**
+ * A single page in the page index of a book.
+ * @param page The page number
+ * @param entryName The name of the archive entry that holds the page
+ * @param frame The frame of the entry, only used for multi-frame gifs
+ */
+public record PageEntry(int page, String entryName, int frame) {
+
+    /**
+     * Method to check if the page is a frame of a gif.
+     * @return true if the entry is a gif
+     */
+    public boolean isGif() {
+        return entryName.endsWith(".gif");
+    }
+}
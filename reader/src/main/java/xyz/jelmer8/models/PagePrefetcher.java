@@ -0,0 +1,130 @@
+package xyz.jelmer8.models;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+/**
+ * Decodes the pages around the current page in the background, so turning
+ * a page does not have to wait for the decode. Pages in the direction the
+ * user is reading in are decoded first.
+ */
+public class PagePrefetcher {
+
+    /** Number of pages to prefetch in the reading direction. */
+    private static final int PAGESAHEAD =
+            Integer.getInteger("comicbookreader.prefetch.ahead", 3);
+
+    /** Number of pages to prefetch against the reading direction. */
+    private static final int PAGESBEHIND =
+            Integer.getInteger("comicbookreader.prefetch.behind", 1);
+
+    /** Number of threads that decode pages. */
+    private static final int THREADS =
+            Integer.getInteger("comicbookreader.prefetch.threads", 2);
+
+    /** The executor that decodes the pages, tasks run in submission order. */
+    private final ExecutorService executor = Executors.newFixedThreadPool(
+            THREADS, Thread.ofPlatform().daemon().name("page-prefetch-", 0).factory());
+
+    /** The prefetch tasks that have been submitted and may still be running. */
+    private final List<Future<?>> pendingTasks = new ArrayList<>();
+
+    /** Called with every prefetched page, used to pre-scale the page. */
+    private final Consumer<ImageModel> pagePreparer;
+
+    /** The book of the previous page change. */
+    private BookModel currentBook;
+
+    /** The page of the previous page change. */
+    private int currentPage = -1;
+
+    /** The direction the user is reading in, 1 for forward, -1 for backward. */
+    private int readingDirection = 1;
+
+
+    /**
+     * Constructor of the PagePrefetcher class.
+     * @param pagePreparer Called with every prefetched page
+     */
+    public PagePrefetcher(final Consumer<ImageModel> pagePreparer) {
+        this.pagePreparer = pagePreparer;
+    }
+
+
+    /**
+     * Method to let the prefetcher know the current page has changed.
+     * Stale prefetch work is cancelled and the pages around the new
+     * current page are scheduled.
+     * @param bookModel The book that is being read
+     * @param page The new current page
+     */
+    public synchronized void pageChanged(final BookModel bookModel, final int page) {
+        // When the user jumps, the running decodes are no longer useful
+        boolean jumped = bookModel != currentBook
+                || Math.abs(page - currentPage) > 1;
+        cancelPendingTasks(jumped);
+
+        if (!jumped && page != currentPage) {
+            readingDirection = page > currentPage ? 1 : -1;
+        }
+        currentBook = bookModel;
+        currentPage = page;
+
+        // Schedule the reading direction first, the executor keeps this order
+        for (int i = 1; i <= Math.max(PAGESAHEAD, PAGESBEHIND); i++) {
+            if (i <= PAGESAHEAD) {
+                schedulePage(bookModel, page + i * readingDirection);
+            }
+            if (i <= PAGESBEHIND) {
+                schedulePage(bookModel, page - i * readingDirection);
+            }
+        }
+    }
+
+
+    /**
+     * Method to cancel all prefetch work, used when the user stops reading.
+     */
+    public synchronized void cancel() {
+        cancelPendingTasks(true);
+        currentBook = null;
+        currentPage = -1;
+    }
+
+
+    /**
+     * Method to schedule a page to be prefetched.
+     * @param bookModel The book of the page
+     * @param page The page to prefetch
+     */
+    private void schedulePage(final BookModel bookModel, final int page) {
+        if (page < 0 || page >= bookModel.getPageCount()) {
+            return;
+        }
+
+        pendingTasks.add(executor.submit(() -> {
+            try {
+                pagePreparer.accept(bookModel.getPageImage(page));
+            } catch (RuntimeException e) {
+                // The page will be decoded (and the error shown) when it is opened
+                e.printStackTrace();
+            }
+        }));
+    }
+
+
+    /**
+     * Method to cancel the prefetch tasks.
+     * @param interrupt If running tasks should be interrupted
+     */
+    private void cancelPendingTasks(final boolean interrupt) {
+        for (Future<?> task : pendingTasks) {
+            task.cancel(interrupt);
+        }
+        pendingTasks.clear();
+    }
+}
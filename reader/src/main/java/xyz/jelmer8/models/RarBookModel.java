@@ -0,0 +1,183 @@
+package xyz.jelmer8.models;
+
+import com.github.junrar.Archive;
+import com.github.junrar.exception.RarException;
+import com.github.junrar.rarfile.FileHeader;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public class RarBookModel extends BookModel {
+
+    /** If solid archives are extracted in a single pass when indexing. */
+    private static final boolean STREAMSOLIDARCHIVES = Boolean.parseBoolean(
+            System.getProperty("comicbookreader.rar.streaming", "true"));
+
+    /** The opened rar archive, kept open to decode pages on demand. */
+    private Archive archive;
+
+    /** The file headers of the pages, by entry name. */
+    private final Map<String, FileHeader> fileHeaders = new HashMap<>();
+
+    /** Constructor of the RarBookModel class.
+     * @param bookPath The path of the book
+     * @param pageCache The cache of decoded pages
+     */
+    public RarBookModel(String bookPath, PageCache pageCache) {
+        super(bookPath, pageCache);
+    }
+
+    /**
+     * Method to index the pages of the current set book.
+     */
+    public void indexBook() throws RarException, IOException {
+        List<FileHeader> fileHeaderList = new ArrayList<>(openArchive());
+        fileHeaderList.sort(Comparator.comparing(FileHeader::getFileName));
+
+        for (FileHeader fileHeader : fileHeaderList) {
+            String fileName = fileHeader.getFileName();
+
+            if (fileName.endsWith(".gif")) {
+                fileHeaders.put(fileName, fileHeader);
+                synchronized (this) {
+                    try (InputStream is = openPageEntry(fileName)) {
+                        addGifToBookImages(is, fileName);
+                    }
+                }
+                continue;
+            }
+
+            // Continue if file does not end with .jpg or .jpeg
+            if ((!fileName.endsWith(".jpg")
+                    && !fileName.endsWith(".jpeg"))) {
+                continue;
+            }
+
+            // Add the page to the page index
+            fileHeaders.put(fileName, fileHeader);
+            pageIndex.add(new PageEntry(pageIndex.size(), fileName, 0));
+        }
+
+        storeCompressedPages();
+    }
+
+    /**
+     * Method to open the archive of an unloaded book again.
+     */
+    void reopenBook() throws RarException, IOException {
+        Set<String> pageNames = new HashSet<>();
+        for (PageEntry page : pageIndex) {
+            pageNames.add(page.entryName());
+        }
+
+        for (FileHeader fileHeader : openArchive()) {
+            if (pageNames.contains(fileHeader.getFileName())) {
+                fileHeaders.put(fileHeader.getFileName(), fileHeader);
+            }
+        }
+
+        storeCompressedPages();
+    }
+
+    /**
+     * Method to open the archive. Solid archives are extracted right away.
+     * @return The file headers in the order of the archive
+     */
+    private List<FileHeader> openArchive() throws RarException, IOException {
+        archive = new Archive(new File(this.bookPath));
+
+        List<FileHeader> fileHeaderList = archive.getFileHeaders();
+
+        // Extract solid archives before sorting, while the headers
+        // are still in the physical order of the archive
+        if (STREAMSOLIDARCHIVES && archive.getMainHeader().isSolid()) {
+            extractSolidArchive(fileHeaderList);
+        }
+
+        return fileHeaderList;
+    }
+
+    /**
+     * Method to unrar and decode a single page of the book.
+     * @param page The page entry to decode
+     * @param width The width to decode for, 0 for full resolution
+     * @return The decoded image
+     */
+    synchronized ImageModel decodePage(final PageEntry page, final int width)
+            throws IOException {
+        try (InputStream is = openEntry(page.entryName())) {
+            return readImage(is, page, width);
+        }
+    }
+
+    /**
+     * Method to open an entry of the archive.
+     * @param entryName The name of the entry
+     * @return InputStream of the entry
+     */
+    InputStream openEntry(final String entryName) throws IOException {
+        return archive.getInputStream(fileHeaders.get(entryName));
+    }
+
+    /**
+     * Getter for the checksum of an entry of the archive.
+     * @param entryName The name of the entry
+     * @return The crc32 of the entry
+     */
+    long getEntryCrc(final String entryName) {
+        return fileHeaders.get(entryName).getFileCRC() & 0xffffffffL;
+    }
+
+    /**
+     * Method to extract a solid archive in a single pass.
+     * In a solid archive every entry depends on the entries before it,
+     * so extracting the entries one by one in sorted order would decompress
+     * the start of the archive again for every page.
+     * The page entries are kept in the page store, off the heap.
+     * @param physicalHeaders The file headers in the order of the archive
+     */
+    private void extractSolidArchive(final List<FileHeader> physicalHeaders)
+            throws RarException {
+        for (FileHeader fileHeader : physicalHeaders) {
+            if (fileHeader.isDirectory()) {
+                continue;
+            }
+
+            String fileName = fileHeader.getFileName();
+
+            // Other entries are still extracted, the decompressor needs them
+            if (!fileName.endsWith(".gif") && !fileName.endsWith(".jpg")
+                    && !fileName.endsWith(".jpeg")) {
+                archive.extractFile(fileHeader, OutputStream.nullOutputStream());
+                continue;
+            }
+
+            ByteArrayOutputStream entryBytes = new ByteArrayOutputStream(
+                    (int) Math.min(fileHeader.getFullUnpackSize(), Integer.MAX_VALUE - 8));
+            archive.extractFile(fileHeader, entryBytes);
+            getPageStore().put(fileName, entryBytes.toByteArray());
+            metrics.addBytesInflated(entryBytes.size());
+        }
+    }
+
+    /**
+     * Method to close the rar archive of the book.
+     */
+    void closeArchive() throws IOException {
+        fileHeaders.clear();
+        if (archive != null) {
+            archive.close();
+            archive = null;
+        }
+    }
+}
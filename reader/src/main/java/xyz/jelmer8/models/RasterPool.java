@@ -0,0 +1,66 @@
+package xyz.jelmer8.models;
+
+import javax.imageio.ImageTypeSpecifier;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * A small pool of images that pages are decoded into. When a decoded page
+ * is converted to the pixel format of the screen, the image it was decoded
+ * into is only needed for a moment. Reusing it for the next decode saves
+ * allocating (and collecting) a full page raster for every page.
+ */
+public class RasterPool {
+
+    /** Maximum number of images kept in the pool. */
+    private static final int POOLSIZE =
+            Integer.getInteger("comicbookreader.rasterpool.size", 4);
+
+    /** The pool shared by all books. */
+    static final RasterPool SHARED = new RasterPool();
+
+    /** The images that are free to be reused. */
+    private final List<BufferedImage> images = new ArrayList<>();
+
+
+    /**
+     * Method to take an image of the given type and size out of the pool.
+     * @param type The image type the reader decodes to
+     * @param width The width of the image
+     * @param height The height of the image
+     * @return An image to decode into, or null if the pool has none
+     */
+    synchronized BufferedImage acquire(final ImageTypeSpecifier type,
+                                       final int width, final int height) {
+        Iterator<BufferedImage> iterator = images.iterator();
+
+        while (iterator.hasNext()) {
+            BufferedImage image = iterator.next();
+
+            if (image.getWidth() == width && image.getHeight() == height
+                    && type.equals(new ImageTypeSpecifier(image))) {
+                iterator.remove();
+                return image;
+            }
+        }
+
+        return null;
+    }
+
+
+    /**
+     * Method to give an image back to the pool.
+     * The image must not be used by anything else anymore.
+     * @param image The image to reuse
+     */
+    synchronized void release(final BufferedImage image) {
+        // The oldest image is dropped when the pool is full
+        if (images.size() >= POOLSIZE) {
+            images.removeFirst();
+        }
+
+        images.add(image);
+    }
+}
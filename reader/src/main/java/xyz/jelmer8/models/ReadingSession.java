@@ -0,0 +1,367 @@
+package xyz.jelmer8.models;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.function.Consumer;
+
+/**
+ * The reading session, kept on disk between runs: the book that was open,
+ * the page every book was left at, and snapshots of the open page and the
+ * pages next to it, decoded for the width of the view. A restart shows the
+ * snapshot of the open page right away, before the book is opened, and the
+ * snapshots fill the page cache so turning a page needs no decoding.
+ */
+public class ReadingSession {
+
+    /** The directory the session is stored in. */
+    private static final Path SESSIONDIRECTORY = getSessionDirectory();
+
+    /** The file with the open book and the pages of the books. */
+    private static final Path SESSIONFILE = SESSIONDIRECTORY.resolve("session.properties");
+
+    /** The file with the book and the decode settings of the snapshots. */
+    private static final Path SNAPSHOTFILE = SESSIONDIRECTORY.resolve("snapshots.properties");
+
+    /** The compression quality of the snapshots, high is fast and large. */
+    private static final float SNAPSHOTQUALITY = 0.75f;
+
+    /** Keys of the session files. */
+    private static final String OPENBOOK = "open";
+    private static final String PAGEPREFIX = "page.";
+    private static final String BOOK = "book";
+    private static final String SIZE = "size";
+    private static final String MODIFIED = "modified";
+    private static final String WIDTH = "width";
+    private static final String SNAPSHOTS = "pages";
+
+    /** The session that was loaded, changed while reading. */
+    private final Properties session = new Properties();
+
+    /** The snapshot settings that were loaded. */
+    private final Properties snapshots = new Properties();
+
+
+    /**
+     * Method to read the session of the last run. A missing or damaged
+     * session is an empty session.
+     * @return true if there was a session
+     */
+    public synchronized boolean load() {
+        try (InputStream in = Files.newInputStream(SESSIONFILE)) {
+            session.load(in);
+        } catch (NoSuchFileException e) {
+            return false;
+        } catch (IOException | IllegalArgumentException e) {
+            e.printStackTrace();
+            session.clear();
+            return false;
+        }
+
+        try (InputStream in = Files.newInputStream(SNAPSHOTFILE)) {
+            snapshots.load(in);
+        } catch (NoSuchFileException e) {
+            // The reader was closed in the main menu
+        } catch (IOException | IllegalArgumentException e) {
+            e.printStackTrace();
+            snapshots.clear();
+        }
+
+        return true;
+    }
+
+
+    /**
+     * Method to write the session to disk. The file is written to a
+     * temporary file first, so a crash never leaves half a session.
+     */
+    public synchronized void save() throws IOException {
+        writeProperties(session, SESSIONFILE);
+    }
+
+
+    /**
+     * Getter for the page a book was left at.
+     * @param bookPath The path of the book
+     * @return The index of the page, 0 if the book was not read before
+     */
+    public synchronized int getPage(final String bookPath) {
+        try {
+            return Integer.parseInt(session.getProperty(PAGEPREFIX + bookPath, "0"));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+
+    /**
+     * Setter for the page a book was left at.
+     * @param bookPath The path of the book
+     * @param page The index of the page
+     */
+    public synchronized void setPage(final String bookPath, final int page) {
+        session.setProperty(PAGEPREFIX + bookPath, Integer.toString(page));
+    }
+
+
+    /**
+     * Getter for the book that was being read when the reader was closed.
+     * @return The path of the book, or null if no book was open
+     * or the book is gone
+     */
+    public synchronized String getOpenBook() {
+        String bookPath = session.getProperty(OPENBOOK);
+
+        if (bookPath == null || !Files.isRegularFile(Path.of(bookPath))) {
+            return null;
+        }
+
+        return bookPath;
+    }
+
+
+    /**
+     * Setter for the book that is being read.
+     * @param bookPath The path of the book, or null if no book is open
+     */
+    public synchronized void setOpenBook(final String bookPath) {
+        if (bookPath == null) {
+            session.remove(OPENBOOK);
+        } else {
+            session.setProperty(OPENBOOK, bookPath);
+        }
+    }
+
+
+    /**
+     * Getter for the width the snapshots were decoded for.
+     * @param bookPath The path of the book
+     * @return The width of the view, or 0 if the book has no snapshots
+     */
+    public synchronized int getSnapshotWidth(final String bookPath) {
+        if (!hasSnapshots(bookPath)) {
+            return 0;
+        }
+
+        try {
+            return Integer.parseInt(snapshots.getProperty(WIDTH, "0"));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+
+    /**
+     * Method to read the snapshots of a book, in the order they were saved.
+     * Snapshots are only read if the book did not change since they were made.
+     * @param bookPath The path of the book
+     * @param onLoaded Called with every snapshot as soon as it is read,
+     *                 so the open page can be shown before the others are read
+     * @return The snapshots, or an empty list if there are none
+     */
+    public synchronized List<ImageModel> loadSnapshots(
+            final String bookPath, final Consumer<ImageModel> onLoaded) {
+        List<ImageModel> pages = new ArrayList<>();
+
+        if (!hasSnapshots(bookPath)) {
+            return pages;
+        }
+
+        for (String snapshot : snapshots.getProperty(SNAPSHOTS, "").split(",")) {
+            if (snapshot.isEmpty()) {
+                continue; // No page could be saved
+            }
+
+            try {
+                // page:sourceWidth:subsampling
+                String[] fields = snapshot.split(":");
+                int page = Integer.parseInt(fields[0]);
+
+                BufferedImage image = ImageIO.read(
+                        getSnapshotFile(page).toFile());
+                if (image == null) {
+                    continue;
+                }
+
+                ImageModel snapshotPage = new ImageModel(
+                        CompatibleImages.toCompatibleImage(image), page,
+                        Integer.parseInt(fields[1]), Integer.parseInt(fields[2]));
+                pages.add(snapshotPage);
+                onLoaded.accept(snapshotPage);
+            } catch (IOException | RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+
+        return pages;
+    }
+
+
+    /**
+     * Method to write snapshots of the pages of a book, replacing the
+     * snapshots of the last run. Tiled pages are left out.
+     * @param bookPath The path of the book
+     * @param pages The decoded pages, the open page first
+     * @param width The width the pages were decoded for
+     */
+    public synchronized void saveSnapshots(final String bookPath,
+                                           final List<ImageModel> pages,
+                                           final int width) throws IOException {
+        Files.createDirectories(SESSIONDIRECTORY);
+        Files.deleteIfExists(SNAPSHOTFILE);
+        deleteSnapshots();
+
+        BasicFileAttributes attributes = Files.readAttributes(Path.of(bookPath),
+                BasicFileAttributes.class);
+        List<String> savedPages = new ArrayList<>();
+
+        for (ImageModel page : pages) {
+            if (page == null || page.image() == null) {
+                continue;
+            }
+
+            writeSnapshot(page.image(), getSnapshotFile(page.page()));
+            savedPages.add(page.page() + ":" + page.sourceWidth() + ":"
+                    + page.subsampling());
+        }
+
+        snapshots.clear();
+        snapshots.setProperty(BOOK, bookPath);
+        snapshots.setProperty(SIZE, Long.toString(attributes.size()));
+        snapshots.setProperty(MODIFIED, Long.toString(
+                attributes.lastModifiedTime().toMillis()));
+        snapshots.setProperty(WIDTH, Integer.toString(width));
+        snapshots.setProperty(SNAPSHOTS, String.join(",", savedPages));
+        writeProperties(snapshots, SNAPSHOTFILE);
+    }
+
+
+    /**
+     * Method to check if the snapshots are of a book, as it is now.
+     * @param bookPath The path of the book
+     * @return true if the snapshots can be used
+     */
+    private boolean hasSnapshots(final String bookPath) {
+        if (!bookPath.equals(snapshots.getProperty(BOOK))) {
+            return false;
+        }
+
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(
+                    Path.of(bookPath), BasicFileAttributes.class);
+
+            return Long.toString(attributes.size()).equals(snapshots.getProperty(SIZE))
+                    && Long.toString(attributes.lastModifiedTime().toMillis())
+                    .equals(snapshots.getProperty(MODIFIED));
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+
+    /**
+     * Method to write a snapshot as a png. Pages are large, so the png is
+     * compressed lightly, which is several times faster to write. The png
+     * is buffered in memory, not in a temporary file of ImageIO.
+     * @param image The decoded page
+     * @param snapshotFile The file of the snapshot
+     */
+    private static void writeSnapshot(final BufferedImage image,
+                                      final Path snapshotFile) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("png").next();
+
+        // Closing the image stream does not close the file, so both are closed
+        try (OutputStream file = Files.newOutputStream(snapshotFile);
+             ImageOutputStream out = new MemoryCacheImageOutputStream(file)) {
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(SNAPSHOTQUALITY);
+
+            writer.setOutput(out);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+    }
+
+
+    /**
+     * Method to delete the snapshots of the last run.
+     */
+    private static void deleteSnapshots() throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(
+                SESSIONDIRECTORY, "snapshot-*.png")) {
+            for (Path file : files) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+
+    /**
+     * Method to write properties to a file, through a temporary file.
+     * @param properties The properties to write
+     * @param file The file to replace
+     */
+    private static void writeProperties(final Properties properties,
+                                        final Path file) throws IOException {
+        Files.createDirectories(SESSIONDIRECTORY);
+        Path temporary = Files.createTempFile(SESSIONDIRECTORY, "session", ".tmp");
+
+        try {
+            try (OutputStream out = Files.newOutputStream(temporary)) {
+                properties.store(out, "Comic Book Reader session");
+            }
+
+            try {
+                Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+
+    /**
+     * Method to get the file of the snapshot of a page.
+     * @param page The index of the page
+     * @return The path of the snapshot
+     */
+    private static Path getSnapshotFile(final int page) {
+        return SESSIONDIRECTORY.resolve("snapshot-" + page + ".png");
+    }
+
+
+    /**
+     * Method to get the directory the session is stored in, in the cache
+     * directory unless comicbookreader.session.dir is set.
+     * @return The session directory
+     */
+    private static Path getSessionDirectory() {
+        String sessionDirectory = System.getProperty("comicbookreader.session.dir");
+        if (sessionDirectory != null) {
+            return Path.of(sessionDirectory);
+        }
+
+        return LibraryIndex.getCacheHome().resolve("session");
+    }
+}
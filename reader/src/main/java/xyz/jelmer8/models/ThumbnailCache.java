@@ -0,0 +1,535 @@
+package xyz.jelmer8.models;
+
+import com.github.junrar.Archive;
+import com.github.junrar.exception.RarException;
+import com.github.junrar.rarfile.FileHeader;
+import net.lingala.zip4j.ZipFile;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cover thumbnails of books. The cover is the first image of a book in
+ * name order, only that entry is read and it is decoded subsampled to
+ * about the size of the thumbnail. Thumbnails are stored on disk by the
+ * checksum and size of the cover entry, so a thumbnail is made once per
+ * cover, even when the book is renamed or moved. Like the pages on disk,
+ * the least recently used thumbnails are deleted when the folder is over
+ * its size, and thumbnails that were not used for a long time as well.
+ */
+public class ThumbnailCache {
+
+    /** The size of a thumbnail. */
+    public static final int THUMBNAILWIDTH = 60;
+    public static final int THUMBNAILHEIGHT = 90;
+
+    /** Number of threads that make thumbnails. */
+    private static final int THUMBNAILWORKERS =
+            Integer.getInteger("comicbookreader.thumbnail.workers", 2);
+
+    /** Maximum number of thumbnails kept in memory. */
+    private static final int MEMORYTHUMBNAILS = 512;
+
+    /** The directory thumbnails are stored in. */
+    private static final Path THUMBNAILDIRECTORY = Path.of(System.getProperty(
+            "comicbookreader.thumbnail.dir",
+            LibraryIndex.getCacheHome().resolve("thumbnails").toString()));
+
+    /** The number of bytes the thumbnails on disk may take. */
+    private static final long THUMBNAILBYTES = Long.getLong(
+            "comicbookreader.thumbnail.bytes", 64L << 20);
+
+    /** Thumbnails that were not used for this long are deleted. */
+    private static final long MAXAGEMILLIS = TimeUnit.DAYS.toMillis(
+            Long.getLong("comicbookreader.thumbnail.days", 90));
+
+    /**
+     * A thumbnail file on disk.
+     * @param bytes The size of the file
+     * @param lastUsed The time the thumbnail was last read or written
+     */
+    private record ThumbnailFile(long bytes, long lastUsed) {
+    }
+
+    /**
+     * A request for a thumbnail, the latest request is handled first,
+     * so the rows that are on screen now go before rows scrolled past.
+     */
+    private final class ThumbnailTask implements Runnable,
+            Comparable<ThumbnailTask> {
+
+        private final Path book;
+        private final long sequence = requestSequence.incrementAndGet();
+
+        /**
+         * Constructor of the ThumbnailTask class.
+         * @param book The book to make the thumbnail of
+         */
+        ThumbnailTask(final Path book) {
+            this.book = book;
+        }
+
+        @Override
+        public void run() {
+            loadThumbnail(book);
+        }
+
+        @Override
+        public int compareTo(final ThumbnailTask other) {
+            return Long.compare(other.sequence, sequence);
+        }
+    }
+
+    /** Numbers the requests, a higher number is a newer request. */
+    private final AtomicLong requestSequence = new AtomicLong();
+
+    /** Makes the thumbnails, newest request first. */
+    private final ExecutorService thumbnailWorkers = new ThreadPoolExecutor(
+            THUMBNAILWORKERS, THUMBNAILWORKERS, 0, TimeUnit.MILLISECONDS,
+            new PriorityBlockingQueue<>(), Thread.ofPlatform().daemon()
+            .priority(Thread.MIN_PRIORITY).name("thumbnail-", 0).factory());
+
+    /** The thumbnails in memory, in least recently used order. */
+    private final Map<Path, BufferedImage> thumbnails =
+            new LinkedHashMap<>(16, 0.75f, true);
+
+    /** Called when the thumbnail of a requested book is ready, by book. */
+    private final Map<Path, Runnable> pendingBooks = new LinkedHashMap<>();
+
+    /** Books without a cover, or with a cover that can not be read. */
+    private final Set<Path> failedBooks = new HashSet<>();
+
+    /**
+     * The thumbnail files on disk, the least recently used first.
+     * Also the lock of the files, so the files are not listed while
+     * holding the lock of the thumbnails in memory.
+     */
+    private final LinkedHashMap<Path, ThumbnailFile> thumbnailFiles =
+            new LinkedHashMap<>(16, 0.75f, true);
+
+    /** The total size of the thumbnail files. */
+    private long usedBytes = 0;
+
+    /** If the thumbnail files on disk have been listed. */
+    private boolean indexed = false;
+
+
+    /**
+     * Method to get the thumbnail of a book. If the thumbnail is not in
+     * memory it is loaded in the background, and the listener is called
+     * when it is ready.
+     * @param book The path of the book
+     * @param onLoaded Called from a worker thread when the thumbnail is ready
+     * @return The thumbnail, or null if it is not loaded yet
+     */
+    public synchronized BufferedImage getThumbnail(final Path book,
+                                                   final Runnable onLoaded) {
+        BufferedImage thumbnail = thumbnails.get(book);
+
+        if (thumbnail == null && !failedBooks.contains(book)) {
+            // Only queue a book again when it is not queued yet, the newer
+            // listener replaces the old one
+            if (pendingBooks.put(book, onLoaded) == null) {
+                thumbnailWorkers.execute(new ThumbnailTask(book));
+            }
+        }
+
+        return thumbnail;
+    }
+
+
+    /**
+     * Method to forget the thumbnail of a book that changed or was removed,
+     * and that its cover could not be read. The next time the thumbnail is
+     * asked for, it is made again.
+     * @param book The path of the book
+     */
+    public synchronized void forget(final Path book) {
+        thumbnails.remove(book);
+        failedBooks.remove(book);
+    }
+
+
+    /**
+     * Method to load the thumbnail of a book from disk, or make it
+     * from the cover of the book.
+     * @param book The path of the book
+     */
+    private void loadThumbnail(final Path book) {
+        BufferedImage thumbnail = null;
+
+        try {
+            thumbnail = readThumbnail(book);
+        } catch (IOException | RarException | RuntimeException e) {
+            e.printStackTrace(); // The book is shown without a thumbnail
+        }
+
+        Runnable onLoaded;
+        synchronized (this) {
+            onLoaded = pendingBooks.remove(book);
+
+            if (thumbnail == null) {
+                failedBooks.add(book);
+                return;
+            }
+
+            thumbnails.put(book, thumbnail);
+
+            // Drop the least recently used thumbnails
+            Iterator<Path> iterator = thumbnails.keySet().iterator();
+            while (thumbnails.size() > MEMORYTHUMBNAILS && iterator.hasNext()) {
+                iterator.next();
+                iterator.remove();
+            }
+        }
+
+        if (onLoaded != null) {
+            onLoaded.run();
+        }
+    }
+
+
+    /**
+     * Method to read the thumbnail of a book from disk, or make it.
+     * @param book The path of the book
+     * @return The thumbnail, or null if the book has no cover
+     */
+    private BufferedImage readThumbnail(final Path book)
+            throws IOException, RarException {
+        String fileName = book.getFileName().toString();
+
+        if (fileName.endsWith(".cbr")) {
+            return readRarThumbnail(book);
+        }
+
+        return readZipThumbnail(book);
+    }
+
+
+    /**
+     * Method to get the thumbnail of a zip book.
+     * @param book The path of the book
+     * @return The thumbnail, or null if the book has no cover
+     */
+    private BufferedImage readZipThumbnail(final Path book) throws IOException {
+        try (ZipFile zipFile = new ZipFile(book.toFile())) {
+            // Only the central directory is read to find the cover
+            net.lingala.zip4j.model.FileHeader cover = zipFile.getFileHeaders()
+                    .stream()
+                    .filter(header -> isImage(header.getFileName()))
+                    .min(Comparator.comparing(header -> header.getFileName()))
+                    .orElse(null);
+
+            if (cover == null) {
+                return null;
+            }
+
+            Path thumbnailFile = getThumbnailFile(cover.getCrc(),
+                    cover.getUncompressedSize());
+            BufferedImage thumbnail = readThumbnailFile(thumbnailFile);
+            if (thumbnail != null) {
+                return thumbnail;
+            }
+
+            try (InputStream is = zipFile.getInputStream(cover)) {
+                return createThumbnail(is, thumbnailFile);
+            }
+        }
+    }
+
+
+    /**
+     * Method to get the thumbnail of a rar book. The cover of a solid
+     * archive can only be read after the entries before it.
+     * @param book The path of the book
+     * @return The thumbnail, or null if the book has no cover
+     */
+    private BufferedImage readRarThumbnail(final Path book)
+            throws IOException, RarException {
+        try (Archive archive = new Archive(book.toFile())) {
+            FileHeader cover = archive.getFileHeaders().stream()
+                    .filter(header -> !header.isDirectory()
+                            && isImage(header.getFileName()))
+                    .min(Comparator.comparing(header -> header.getFileName()))
+                    .orElse(null);
+
+            if (cover == null) {
+                return null;
+            }
+
+            Path thumbnailFile = getThumbnailFile(
+                    Integer.toUnsignedLong(cover.getFileCRC()),
+                    cover.getFullUnpackSize());
+            BufferedImage thumbnail = readThumbnailFile(thumbnailFile);
+            if (thumbnail != null) {
+                return thumbnail;
+            }
+
+            try (InputStream is = archive.getInputStream(cover)) {
+                return createThumbnail(is, thumbnailFile);
+            }
+        }
+    }
+
+
+    /**
+     * Method to decode a cover to a thumbnail and store it on disk.
+     * The cover is subsampled while decoding, and then scaled smoothly
+     * to the thumbnail size.
+     * @param is InputStream of the cover
+     * @param thumbnailFile The file to store the thumbnail in
+     * @return The thumbnail
+     */
+    private BufferedImage createThumbnail(final InputStream is,
+                                          final Path thumbnailFile)
+            throws IOException {
+        BufferedImage cover;
+
+        try (ImageInputStream iis = ImageIO.createImageInputStream(is)) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(iis);
+            if (!readers.hasNext()) {
+                throw new IOException("Unsupported cover image");
+            }
+
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(iis, true);
+
+                // Decode at no less than twice the thumbnail size,
+                // so the scaled thumbnail stays sharp
+                int subsampling = Math.max(1, Math.min(
+                        reader.getWidth(0) / (THUMBNAILWIDTH * 2),
+                        reader.getHeight(0) / (THUMBNAILHEIGHT * 2)));
+
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                cover = reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+
+        // Fit the cover in the thumbnail, keeping its aspect ratio
+        double scale = Math.min((double) THUMBNAILWIDTH / cover.getWidth(),
+                (double) THUMBNAILHEIGHT / cover.getHeight());
+        int width = Math.max(1, (int) (cover.getWidth() * scale));
+        int height = Math.max(1, (int) (cover.getHeight() * scale));
+
+        BufferedImage thumbnail = new BufferedImage(width, height,
+                BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = thumbnail.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+                RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g.drawImage(cover, 0, 0, width, height, null);
+        g.dispose();
+
+        writeThumbnailFile(thumbnail, thumbnailFile);
+        return thumbnail;
+    }
+
+
+    /**
+     * Method to get the file a thumbnail is stored in.
+     * @param crc The checksum of the cover entry
+     * @param size The uncompressed size of the cover entry
+     * @return The thumbnail file
+     */
+    private static Path getThumbnailFile(final long crc, final long size) {
+        return THUMBNAILDIRECTORY.resolve(String.format("%08x-%d-%dx%d.jpg",
+                crc, size, THUMBNAILWIDTH, THUMBNAILHEIGHT));
+    }
+
+
+    /**
+     * Method to read a stored thumbnail. A thumbnail that is read is
+     * touched, so it is the most recently used.
+     * @param thumbnailFile The thumbnail file
+     * @return The thumbnail, or null if it is not stored
+     */
+    private BufferedImage readThumbnailFile(final Path thumbnailFile) {
+        synchronized (thumbnailFiles) {
+            indexThumbnailFiles();
+            if (!thumbnailFiles.containsKey(thumbnailFile)) {
+                return null;
+            }
+        }
+
+        try {
+            BufferedImage thumbnail = ImageIO.read(thumbnailFile.toFile());
+            if (thumbnail != null) {
+                long now = System.currentTimeMillis();
+                Files.setLastModifiedTime(thumbnailFile, FileTime.fromMillis(now));
+
+                synchronized (thumbnailFiles) {
+                    ThumbnailFile used = thumbnailFiles.get(thumbnailFile);
+                    if (used != null) {
+                        thumbnailFiles.put(thumbnailFile,
+                                new ThumbnailFile(used.bytes(), now));
+                    }
+                }
+            }
+            return thumbnail;
+        } catch (IOException e) {
+            return null; // Made again
+        }
+    }
+
+
+    /**
+     * Method to store a thumbnail. The thumbnail is written to a temporary
+     * file first, so a thumbnail file is never half written.
+     * @param thumbnail The thumbnail
+     * @param thumbnailFile The thumbnail file
+     */
+    private void writeThumbnailFile(final BufferedImage thumbnail,
+                                    final Path thumbnailFile) {
+        try {
+            Files.createDirectories(THUMBNAILDIRECTORY);
+            Path temporary = Files.createTempFile(THUMBNAILDIRECTORY,
+                    "thumbnail", ".tmp");
+
+            try {
+                ImageIO.write(thumbnail, "jpg", temporary.toFile());
+                Files.move(temporary, thumbnailFile,
+                        StandardCopyOption.REPLACE_EXISTING);
+            } finally {
+                Files.deleteIfExists(temporary);
+            }
+
+            ThumbnailFile written = new ThumbnailFile(Files.size(thumbnailFile),
+                    System.currentTimeMillis());
+            synchronized (thumbnailFiles) {
+                indexThumbnailFiles();
+                addThumbnailFile(thumbnailFile, written);
+                evictThumbnailFiles();
+            }
+        } catch (IOException e) {
+            e.printStackTrace(); // The thumbnail is still shown
+        }
+    }
+
+
+    /**
+     * Method to list the thumbnail files on disk the first time a
+     * thumbnail is read or written. The files are ordered by their
+     * modification time, which is the time they were last used.
+     */
+    private void indexThumbnailFiles() {
+        if (indexed) {
+            return;
+        }
+        indexed = true;
+
+        if (!Files.isDirectory(THUMBNAILDIRECTORY)) {
+            return;
+        }
+
+        List<Map.Entry<Path, ThumbnailFile>> found = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(THUMBNAILDIRECTORY)) {
+            for (Path file : files) {
+                String fileName = file.getFileName().toString();
+
+                // Left behind by a write that did not finish
+                if (fileName.endsWith(".tmp")) {
+                    Files.deleteIfExists(file);
+                } else if (fileName.endsWith(".jpg")) {
+                    BasicFileAttributes attributes = Files.readAttributes(file,
+                            BasicFileAttributes.class);
+                    found.add(Map.entry(file, new ThumbnailFile(attributes.size(),
+                            attributes.lastModifiedTime().toMillis())));
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
+        found.sort(Comparator.comparingLong(entry -> entry.getValue().lastUsed()));
+        for (Map.Entry<Path, ThumbnailFile> entry : found) {
+            addThumbnailFile(entry.getKey(), entry.getValue());
+        }
+
+        evictThumbnailFiles();
+    }
+
+
+    /**
+     * Method to add a thumbnail file, as the most recently used.
+     * A file that was already listed is replaced.
+     * @param file The thumbnail file
+     * @param thumbnailFile The size and last use of the file
+     */
+    private void addThumbnailFile(final Path file,
+                                  final ThumbnailFile thumbnailFile) {
+        ThumbnailFile replaced = thumbnailFiles.remove(file);
+        if (replaced != null) {
+            usedBytes -= replaced.bytes();
+        }
+
+        thumbnailFiles.put(file, thumbnailFile);
+        usedBytes += thumbnailFile.bytes();
+    }
+
+
+    /**
+     * Method to delete the least recently used thumbnail files until the
+     * folder fits its size, and the thumbnail files that are too old.
+     */
+    private void evictThumbnailFiles() {
+        long oldest = System.currentTimeMillis() - MAXAGEMILLIS;
+        Iterator<Map.Entry<Path, ThumbnailFile>> iterator =
+                thumbnailFiles.entrySet().iterator();
+
+        while (iterator.hasNext()) {
+            Map.Entry<Path, ThumbnailFile> entry = iterator.next();
+            if (usedBytes <= THUMBNAILBYTES && entry.getValue().lastUsed() >= oldest) {
+                break; // The other thumbnails were used later
+            }
+
+            iterator.remove();
+            usedBytes -= entry.getValue().bytes();
+
+            try {
+                Files.deleteIfExists(entry.getKey());
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+
+    /**
+     * Method to check if an entry is an image that can be a cover.
+     * @param entryName The name of the entry
+     * @return true if the entry is a cover image
+     */
+    private static boolean isImage(final String entryName) {
+        return entryName.endsWith(".jpg") || entryName.endsWith(".jpeg")
+                || entryName.endsWith(".gif");
+    }
+}
@@ -0,0 +1,479 @@
+package xyz.jelmer8.models;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.Raster;
+import java.awt.image.SampleModel;
+import java.awt.image.WritableRaster;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * A very tall page (like a webtoon strip) that is decoded in horizontal
+ * tiles. Only the compressed image is kept, tiles are decoded when they
+ * come into view and dropped when they leave it, so the memory used does
+ * not depend on the height of the page.
+ *
+ * <p>A jpeg can only be decoded from the top, so a tile is not decoded on
+ * its own. A pass of the decoder goes down the image, keeps the rows of
+ * one tile at a time and waits before a tile that is not wanted yet. The
+ * next tile down continues the pass, only a tile above the pass starts a
+ * new one.</p>
+ */
+public class TiledImage {
+
+    /** The height of a tile, after subsampling. */
+    public static final int TILEHEIGHT = 512;
+
+    /** Maximum number of decoded tiles that are kept. */
+    private static final int MAXTILES = 16;
+
+    /** How long a pass waits for a tile to be wanted, before it stops. */
+    private static final long PASSTIMEOUTMILLIS =
+            Long.getLong("comicbookreader.tiled.passtimeout", 10000);
+
+    /** Creates the threads of the passes, a pass can wait for a long time. */
+    private static final ThreadFactory PASSTHREADS =
+            Thread.ofPlatform().daemon().name("tile-decoder").factory();
+
+    /** The compressed image. */
+    private final byte[] imageBytes;
+
+    /** The size of the image at full resolution. */
+    private final int sourceWidth;
+    private final int sourceHeight;
+
+    /** The subsampling the tiles are decoded with. */
+    private final int subsampling;
+
+    /** The decoded tiles, in least recently used order. */
+    private final Map<Integer, BufferedImage> tiles =
+            new LinkedHashMap<>(16, 0.75f, true);
+
+    /** The first and last tile that are still wanted. */
+    private int firstRetainedTile = 0;
+    private int lastRetainedTile = Integer.MAX_VALUE;
+
+    /** The pass stops before the tiles after this tile. */
+    private int lastWantedTile = -1;
+
+    /** The pass that is decoding the image, or null if there is none. */
+    private DecodePass pass;
+
+    /** Called when a tile is decoded. */
+    private Runnable onDecoded = () -> { };
+
+
+    /**
+     * Constructor of the TiledImage class.
+     * @param imageBytes The compressed image
+     * @param sourceWidth The width of the image at full resolution
+     * @param sourceHeight The height of the image at full resolution
+     * @param subsampling The subsampling to decode the tiles with
+     */
+    public TiledImage(final byte[] imageBytes, final int sourceWidth,
+                      final int sourceHeight, final int subsampling) {
+        this.imageBytes = imageBytes;
+        this.sourceWidth = sourceWidth;
+        this.sourceHeight = sourceHeight;
+        this.subsampling = subsampling;
+    }
+
+
+    /**
+     * Getter for the width of the image, after subsampling.
+     * @return The width of the image
+     */
+    public int getWidth() {
+        return (sourceWidth + subsampling - 1) / subsampling;
+    }
+
+
+    /**
+     * Getter for the height of the image, after subsampling.
+     * @return The height of the image
+     */
+    public int getHeight() {
+        return (sourceHeight + subsampling - 1) / subsampling;
+    }
+
+
+    /**
+     * Getter for the number of tiles of the image.
+     * @return The number of tiles
+     */
+    public int getTileCount() {
+        return (getHeight() + TILEHEIGHT - 1) / TILEHEIGHT;
+    }
+
+
+    /**
+     * Getter for the bytes this image can hold on to, the compressed image
+     * and the maximum number of decoded tiles.
+     * @return The number of bytes
+     */
+    public long getRetainedBytes() {
+        return imageBytes.length + (long) MAXTILES * getWidth() * TILEHEIGHT * 4;
+    }
+
+
+    /**
+     * Method to get a decoded tile. If the tile is not decoded yet it is
+     * decoded in the background, and the listener is called when it is done.
+     * @param index The index of the tile
+     * @param onDecoded Called from the decoder thread when the tile is decoded
+     * @return The tile, or null if it is not decoded yet
+     */
+    public synchronized BufferedImage getTile(final int index,
+                                              final Runnable onDecoded) {
+        BufferedImage tile = tiles.get(index);
+
+        if (tile == null) {
+            this.onDecoded = onDecoded;
+
+            if (pass == null || pass.tile > index) {
+                // The pass is already past the tile, a new pass starts at it
+                if (pass != null) {
+                    pass.cancelled = true;
+                }
+                lastWantedTile = index;
+                pass = new DecodePass(index);
+                PASSTHREADS.newThread(pass).start();
+            } else {
+                lastWantedTile = Math.max(lastWantedTile, index);
+            }
+
+            notifyAll();
+        }
+
+        return tile;
+    }
+
+
+    /**
+     * Method to drop the decoded tiles outside of a range of tiles.
+     * The pass does not decode tiles after the range.
+     * @param firstTile The first tile to keep
+     * @param lastTile The last tile to keep
+     */
+    public synchronized void retainTiles(final int firstTile, final int lastTile) {
+        firstRetainedTile = firstTile;
+        lastRetainedTile = lastTile;
+        lastWantedTile = Math.min(lastWantedTile, lastTile);
+
+        tiles.keySet().removeIf(index -> index < firstTile || index > lastTile);
+    }
+
+
+    /**
+     * A pass of the decoder down the image, from a tile to the bottom.
+     * The decoder writes its rows into a destination that only stores the
+     * rows of the tile that is being decoded.
+     */
+    private final class DecodePass implements Runnable {
+
+        /** The tile the pass starts at. */
+        private final int firstTile;
+
+        /** The tile that is decoded now, or the next one. Guarded by the image. */
+        private int tile;
+
+        /** If the pass is replaced by a pass that starts higher. Guarded by the image. */
+        private boolean cancelled;
+
+        /** The reader of the pass, one reader for all tiles. */
+        private ImageReader reader;
+
+        /** The layout of the rows the reader writes. */
+        private ImageTypeSpecifier type;
+        private SampleModel tileModel;
+        private int scanlineStride;
+        private int banks;
+
+        /** The first row of the part of the image that is being read. */
+        private int firstRegionRow;
+
+        /** The rows of the tile that is being decoded, or null. */
+        private DataBuffer tileRows;
+        private int tileRowsIndex = -1;
+
+        /** If the pass stopped before the bottom of the image. */
+        private boolean stopped;
+
+
+        /**
+         * Constructor of the DecodePass class.
+         * @param firstTile The tile the pass starts at
+         */
+        DecodePass(final int firstTile) {
+            this.firstTile = firstTile;
+            this.tile = firstTile;
+        }
+
+
+        /**
+         * Method to decode the tiles, until the bottom of the image or
+         * until no tile is wanted anymore.
+         */
+        @Override
+        public void run() {
+            try (ImageInputStream iis = ImageIO.createImageInputStream(
+                    new ByteArrayInputStream(imageBytes))) {
+                reader = ImageIO.getImageReaders(iis).next();
+
+                try {
+                    reader.setInput(iis, true);
+                    decodeTiles();
+                } finally {
+                    reader.dispose();
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            } finally {
+                stop();
+            }
+        }
+
+
+        /**
+         * Method to read the image from the first tile down. The destination
+         * of a read can not have more than Integer.MAX_VALUE elements, so
+         * an image that is too large is read in parts of whole tiles.
+         */
+        private void decodeTiles() throws IOException {
+            type = reader.getImageTypes(0).next();
+            tileModel = type.getSampleModel(getWidth(), TILEHEIGHT);
+
+            if (!(tileModel instanceof ComponentSampleModel model)) {
+                throw new IOException("Unsupported image type: " + tileModel);
+            }
+            scanlineStride = model.getScanlineStride();
+            for (int bank : model.getBankIndices()) {
+                banks = Math.max(banks, bank + 1);
+            }
+
+            int tileCount = getTileCount();
+            int regionTiles = (int) Math.min(tileCount, Math.max(1,
+                    Integer.MAX_VALUE / ((long) scanlineStride * TILEHEIGHT)));
+
+            for (int regionTile = firstTile; regionTile < tileCount && !stopped;
+                 regionTile += regionTiles) {
+                decodeRegion(regionTile, Math.min(regionTiles, tileCount - regionTile));
+            }
+        }
+
+
+        /**
+         * Method to read the rows of a number of tiles with one read.
+         * The rows above the tiles are skipped by the reader.
+         * @param regionTile The first tile
+         * @param regionTiles The number of tiles
+         */
+        private void decodeRegion(final int regionTile, final int regionTiles)
+                throws IOException {
+            firstRegionRow = regionTile * TILEHEIGHT;
+            int rows = Math.min(regionTiles * TILEHEIGHT, getHeight() - firstRegionRow);
+            int sourceY = firstRegionRow * subsampling;
+
+            ImageReadParam param = reader.getDefaultReadParam();
+            param.setSourceRegion(new Rectangle(0, sourceY, sourceWidth,
+                    Math.min(rows * subsampling, sourceHeight - sourceY)));
+            param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+
+            SampleModel regionModel = type.getSampleModel(getWidth(), rows);
+            WritableRaster raster = Raster.createWritableRaster(regionModel,
+                    new TileRowsBuffer(regionModel.getDataType(),
+                            scanlineStride * rows, banks), null);
+            ColorModel colorModel = type.getColorModel();
+            param.setDestination(new BufferedImage(colorModel, raster,
+                    colorModel.isAlphaPremultiplied(), null));
+
+            reader.read(0, param);
+
+            if (!stopped) {
+                finishTile();
+            }
+        }
+
+
+        /**
+         * Method to get the rows of the tile an element of the destination
+         * is in. The tile before it is finished, and the pass waits until
+         * the tile is wanted.
+         * @param element The index of the element in the destination
+         * @return The rows of the tile, or null if the pass stopped
+         */
+        private DataBuffer getTileRows(final int element) {
+            int tileIndex = (firstRegionRow + element / scanlineStride) / TILEHEIGHT;
+
+            if (tileIndex != tileRowsIndex && !stopped) {
+                finishTile();
+
+                if (tileIndex < tileRowsIndex || !awaitTile(tileIndex)) {
+                    // Stopped, or the rows are not decoded from the top down
+                    stopped = true;
+                    reader.abort();
+                } else {
+                    tileRows = tileModel.createDataBuffer();
+                    tileRowsIndex = tileIndex;
+                }
+            }
+
+            return stopped ? null : tileRows;
+        }
+
+
+        /**
+         * Method to get the index of an element in the rows of its tile.
+         * @param element The index of the element in the destination
+         * @return The index in the rows of the tile
+         */
+        private int getTileElement(final int element) {
+            return element - (tileRowsIndex * TILEHEIGHT - firstRegionRow) * scanlineStride;
+        }
+
+
+        /**
+         * Method to wait until a tile is wanted.
+         * @param tileIndex The tile
+         * @return If the tile is wanted, false if the pass has to stop
+         */
+        private boolean awaitTile(final int tileIndex) {
+            synchronized (TiledImage.this) {
+                long deadline = System.currentTimeMillis() + PASSTIMEOUTMILLIS;
+
+                while (!cancelled && tileIndex > lastWantedTile) {
+                    long timeout = deadline - System.currentTimeMillis();
+                    if (timeout <= 0) {
+                        return false; // Nothing below was wanted for a while
+                    }
+
+                    try {
+                        TiledImage.this.wait(timeout);
+                    } catch (InterruptedException e) {
+                        return false;
+                    }
+                }
+
+                tile = tileIndex;
+                return !cancelled;
+            }
+        }
+
+
+        /**
+         * Method to turn the rows of the decoded tile into an image, it is
+         * kept if it is still wanted.
+         */
+        private void finishTile() {
+            if (tileRows == null) {
+                return;
+            }
+
+            int rows = Math.min(TILEHEIGHT, getHeight() - tileRowsIndex * TILEHEIGHT);
+            WritableRaster raster = Raster.createWritableRaster(tileModel,
+                    tileRows, null).createWritableChild(0, 0, getWidth(), rows,
+                    0, 0, null);
+            ColorModel colorModel = type.getColorModel();
+            BufferedImage image = CompatibleImages.toCompatibleImage(
+                    new BufferedImage(colorModel, raster,
+                            colorModel.isAlphaPremultiplied(), null));
+            tileRows = null;
+
+            Runnable listener;
+            synchronized (TiledImage.this) {
+                tile = tileRowsIndex + 1;
+
+                if (tileRowsIndex >= firstRetainedTile
+                        && tileRowsIndex <= lastRetainedTile) {
+                    tiles.put(tileRowsIndex, image);
+
+                    // Drop the least recently used tiles
+                    Iterator<Integer> iterator = tiles.keySet().iterator();
+                    while (tiles.size() > MAXTILES && iterator.hasNext()) {
+                        iterator.next();
+                        iterator.remove();
+                    }
+                }
+
+                listener = onDecoded;
+            }
+
+            listener.run();
+        }
+
+
+        /**
+         * Method to end the pass, a later tile starts a new pass.
+         */
+        private void stop() {
+            synchronized (TiledImage.this) {
+                cancelled = true;
+                if (pass == this) {
+                    pass = null;
+                }
+            }
+        }
+
+
+        /**
+         * The destination of the reader. It has the size of the whole
+         * region, but only stores the rows of the tile that is being decoded.
+         */
+        private final class TileRowsBuffer extends DataBuffer {
+
+            /**
+             * Constructor of the TileRowsBuffer class.
+             * @param dataType The type of the elements
+             * @param size The number of elements of a bank
+             * @param banks The number of banks
+             */
+            TileRowsBuffer(final int dataType, final int size, final int banks) {
+                super(dataType, size, banks);
+            }
+
+
+            /**
+             * Method to get an element, the rows outside the tile are empty.
+             * @param bank The bank of the element
+             * @param i The index of the element
+             * @return The element
+             */
+            @Override
+            public int getElem(final int bank, final int i) {
+                int tileIndex = (firstRegionRow + i / scanlineStride) / TILEHEIGHT;
+
+                return tileRows != null && tileIndex == tileRowsIndex
+                        ? tileRows.getElem(bank, getTileElement(i)) : 0;
+            }
+
+
+            /**
+             * Method to set an element, in the rows of its tile.
+             * @param bank The bank of the element
+             * @param i The index of the element
+             * @param value The element
+             */
+            @Override
+            public void setElem(final int bank, final int i, final int value) {
+                DataBuffer rows = getTileRows(i);
+
+                if (rows != null) {
+                    rows.setElem(bank, getTileElement(i), value);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,402 @@
+package xyz.jelmer8.models;
+
+import net.lingala.zip4j.ZipFile;
+import net.lingala.zip4j.model.FileHeader;
+
+import javax.imageio.stream.ImageInputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntConsumer;
+
+public class ZipBookModel extends BookModel {
+
+    /** Number of workers that decode pages in parallel when preloading. */
+    private static final int DECODEWORKERS = Integer.getInteger(
+            "comicbookreader.decode.workers",
+            Runtime.getRuntime().availableProcessors());
+
+    /** If zip files are mapped into memory to read stored pages without copying. */
+    private static final boolean MAPARCHIVES = Boolean.parseBoolean(
+            System.getProperty("comicbookreader.zip.mapped", "true"));
+
+    /** The opened zip file, kept open to decode pages on demand. */
+    private ZipFile zipFile;
+
+    /** The mapped zip file, null if it is not mapped. */
+    private MappedZipArchive mappedArchive;
+
+    /** The file headers of the entries read with zip4j, by entry name. */
+    private final Map<String, FileHeader> fileHeaders = new ConcurrentHashMap<>();
+
+    /** Constructor of the ZipBookModel class.
+     * @param bookPath The path of the book
+     * @param pageCache The cache of decoded pages
+     */
+    public ZipBookModel(String bookPath, PageCache pageCache) {
+        super(bookPath, pageCache);
+    }
+
+    /**
+     * Method to index the pages of the current set book.
+     * When the zip file is mapped, its central directory is read from the
+     * mapping and zip4j only reads it if there are compressed pages.
+     */
+    public void indexBook() throws IOException {
+        openArchive();
+
+        // Repacked books list their pages, the gifs are not read then
+        if (!hasEntry(BookRepacker.PAGEINDEXENTRY) || !readPageIndex()) {
+            List<String> entryNames = new ArrayList<>(getEntryNames());
+            entryNames.sort(Comparator.naturalOrder());
+
+            for (String fileName : entryNames) {
+                if (fileName.endsWith(".gif")) {
+                    try (InputStream is = openEntry(fileName)) {
+                        addGifToBookImages(is, fileName);
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                    }
+                    continue;
+                }
+
+                if (fileName.endsWith(".jpg") || fileName.endsWith(".jpeg")) {
+                    pageIndex.add(new PageEntry(pageIndex.size(), fileName, 0));
+                }
+            }
+        }
+
+        preparePages();
+    }
+
+    /**
+     * Method to open the zip file of an unloaded book again.
+     */
+    void reopenBook() throws IOException {
+        openArchive();
+        preparePages();
+    }
+
+    /**
+     * Method to open the zip file, mapped if it can be.
+     */
+    private void openArchive() {
+        zipFile = new ZipFile(this.bookPath);
+        mappedArchive = openMappedArchive();
+    }
+
+    /**
+     * Method to get the indexed pages ready to be decoded.
+     */
+    private void preparePages() throws IOException {
+        // Look up the headers of the pages that zip4j reads now,
+        // the map is only read when pages are decoded
+        for (PageEntry page : pageIndex) {
+            if (!isMapped(page)) {
+                getFileHeader(page.entryName());
+            }
+        }
+
+        // Mapped pages are in memory already
+        if (mappedArchive == null) {
+            storeCompressedPages();
+        }
+    }
+
+    /**
+     * Method to map the zip file into memory.
+     * @return The mapped zip file, or null if it is read with zip4j only
+     */
+    private MappedZipArchive openMappedArchive() {
+        if (!MAPARCHIVES) {
+            return null;
+        }
+
+        try {
+            return new MappedZipArchive(Path.of(this.bookPath));
+        } catch (IOException e) {
+            e.printStackTrace(); // zip4j reads the zip file
+            return null;
+        }
+    }
+
+    /**
+     * Getter for the names of the files in the zip file.
+     * @return The names of the entries
+     */
+    private List<String> getEntryNames() throws IOException {
+        if (mappedArchive != null) {
+            return mappedArchive.getEntryNames();
+        }
+
+        List<String> entryNames = new ArrayList<>();
+        for (FileHeader fileHeader : zipFile.getFileHeaders()) {
+            entryNames.add(fileHeader.getFileName());
+        }
+        return entryNames;
+    }
+
+    /**
+     * Method to check if the zip file has an entry.
+     * @param entryName The name of the entry
+     * @return true if the zip file has the entry
+     */
+    private boolean hasEntry(final String entryName) throws IOException {
+        if (mappedArchive != null) {
+            return mappedArchive.contains(entryName);
+        }
+
+        return zipFile.getFileHeader(entryName) != null;
+    }
+
+    /**
+     * Getter for the zip4j file header of an entry.
+     * @param entryName The name of the entry
+     * @return The file header
+     */
+    private FileHeader getFileHeader(final String entryName) throws IOException {
+        FileHeader fileHeader = fileHeaders.get(entryName);
+
+        if (fileHeader == null) {
+            fileHeader = zipFile.getFileHeader(entryName);
+            if (fileHeader == null) {
+                throw new IOException("Missing entry " + entryName);
+            }
+            fileHeaders.put(entryName, fileHeader);
+        }
+
+        return fileHeader;
+    }
+
+    /**
+     * Method to read the page index entry of a repacked book.
+     * @return true if the page index was read, false if the pages
+     * have to be found in the zip file instead
+     */
+    private boolean readPageIndex() {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                openEntry(BookRepacker.PAGEINDEXENTRY), StandardCharsets.UTF_8))) {
+            if (!BookRepacker.PAGEINDEXHEADER.equals(reader.readLine())) {
+                return false;
+            }
+
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int separator = line.lastIndexOf('\t');
+                if (separator < 0) {
+                    // Not written by the repacker, the pages are found instead
+                    pageIndex.clear();
+                    return false;
+                }
+
+                String fileName = line.substring(0, separator);
+                int frameCount = Integer.parseInt(line.substring(separator + 1));
+
+                if (!hasEntry(fileName)) {
+                    throw new IOException("Missing page " + fileName);
+                }
+
+                for (int frame = 0; frame < frameCount; frame++) {
+                    pageIndex.add(new PageEntry(pageIndex.size(), fileName, frame));
+                }
+            }
+
+            return true;
+        } catch (IOException | RuntimeException e) {
+            // The book was changed after it was repacked
+            e.printStackTrace();
+            pageIndex.clear();
+            return false;
+        }
+    }
+
+    /**
+     * Method to check if a page is read from the mapped zip file.
+     * @param page The page entry
+     * @return true if the page is stored in a mapped zip file
+     */
+    private boolean isMapped(final PageEntry page) {
+        return mappedArchive != null && mappedArchive.isMapped(page.entryName());
+    }
+
+    /**
+     * Method to unzip and decode a single page of the book.
+     * Mapped pages are decoded without taking the lock of the zip file,
+     * so they can be decoded at the same time.
+     * @param page The page entry to decode
+     * @param width The width to decode for, 0 for full resolution
+     * @return The decoded image
+     */
+    ImageModel decodePage(final PageEntry page, final int width)
+            throws IOException {
+        if (isMapped(page)) {
+            return decodeMappedPage(page, width);
+        }
+
+        synchronized (this) {
+            return decodePage(zipFile, page, width);
+        }
+    }
+
+    /**
+     * Method to open an entry of the zip file.
+     * @param entryName The name of the entry
+     * @return InputStream of the entry
+     */
+    InputStream openEntry(final String entryName) throws IOException {
+        if (mappedArchive != null && mappedArchive.isMapped(entryName)) {
+            return mappedArchive.openStream(entryName);
+        }
+
+        return zipFile.getInputStream(getFileHeader(entryName));
+    }
+
+    /**
+     * Getter for the checksum of an entry of the zip file.
+     * @param entryName The name of the entry
+     * @return The crc32 of the entry
+     */
+    long getEntryCrc(final String entryName) throws IOException {
+        if (mappedArchive != null) {
+            return mappedArchive.getCrc(entryName);
+        }
+
+        return getFileHeader(entryName).getCrc();
+    }
+
+    /**
+     * Method to decode a page from the mapped zip file. The image decoder
+     * reads the mapped memory directly, nothing is copied or inflated.
+     * @param page The page entry to decode
+     * @param width The width to decode for, 0 for full resolution
+     * @return The decoded image
+     */
+    private ImageModel decodeMappedPage(final PageEntry page, final int width)
+            throws IOException {
+        try (ImageInputStream iis = mappedArchive.open(page.entryName())) {
+            ImageModel image = readImage(iis, page, width);
+
+            // Counted as read out of the archive, like an inflated page
+            metrics.addBytesInflated(iis.getStreamPosition());
+            return image;
+        }
+    }
+
+    /**
+     * Method to unzip and decode a single page from the given zip file.
+     * @param pageZipFile The zip file handle to read the page with
+     * @param page The page entry to decode
+     * @param width The width to decode for, 0 for full resolution
+     * @return The decoded image
+     */
+    private ImageModel decodePage(final ZipFile pageZipFile,
+                                  final PageEntry page, final int width)
+            throws IOException {
+        try (InputStream is = pageZipFile.getInputStream(
+                fileHeaders.get(page.entryName()))) {
+            return readImage(is, page, width);
+        }
+    }
+
+    /**
+     * Method to decode the pages of the book into the page cache.
+     * The pages are spread over a fork-join pool, every worker reads
+     * the archive with its own zip file handle.
+     * @param progress Called with the number of preloaded pages
+     */
+    @Override
+    public void preloadPages(final IntConsumer progress) throws IOException {
+        if (DECODEWORKERS <= 1) {
+            super.preloadPages(progress);
+            return;
+        }
+
+        final Queue<ZipFile> workerZipFiles = new ConcurrentLinkedQueue<>();
+        final ThreadLocal<ZipFile> workerZipFile = ThreadLocal.withInitial(() -> {
+            ZipFile handle = new ZipFile(this.bookPath);
+            workerZipFiles.add(handle);
+            return handle;
+        });
+
+        final long byteLimit = getPreloadByteLimit();
+        final AtomicLong preloadedBytes = new AtomicLong();
+        final AtomicInteger preloadedPages = new AtomicInteger();
+        final AtomicBoolean cancelled = new AtomicBoolean();
+
+        // One task per page, the page number decides the slot in the book
+        final List<Callable<Void>> tasks = new ArrayList<>();
+        for (int page : getPreloadOrder()) {
+            tasks.add(() -> {
+                if (cancelled.get() || preloadedBytes.get() >= byteLimit) {
+                    return null;
+                }
+
+                ImageModel image = loadPage(page,
+                        (entry, width) -> isStored(entry)
+                                ? decodeStoredPage(entry, width)
+                                : isMapped(entry)
+                                ? decodeMappedPage(entry, width)
+                                : decodePage(workerZipFile.get(), entry, width));
+                preloadedBytes.addAndGet(PageCache.sizeOf(image));
+                progress.accept(preloadedPages.incrementAndGet());
+                return null;
+            });
+        }
+
+        final ForkJoinPool pool = new ForkJoinPool(DECODEWORKERS);
+        try {
+            for (Future<Void> result : pool.invokeAll(tasks)) {
+                try {
+                    result.get();
+                } catch (ExecutionException e) {
+                    e.getCause().printStackTrace();
+                }
+            }
+        } catch (InterruptedException e) {
+            cancelled.set(true);
+            Thread.currentThread().interrupt();
+        } finally {
+            pool.shutdownNow();
+
+            // Wait for the decodes that are still running, they read with
+            // the handles. close waits even if this thread is interrupted.
+            pool.close();
+
+            for (ZipFile handle : workerZipFiles) {
+                handle.close();
+            }
+        }
+    }
+
+    /**
+     * Method to close the zip file of the book.
+     */
+    void closeArchive() throws IOException {
+        fileHeaders.clear();
+        if (zipFile != null) {
+            zipFile.close();
+            zipFile = null;
+        }
+        if (mappedArchive != null) {
+            mappedArchive.close();
+            mappedArchive = null;
+        }
+    }
+}
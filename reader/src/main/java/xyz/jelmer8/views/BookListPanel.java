@@ -0,0 +1,327 @@
+package xyz.jelmer8.views;
+
+import java.awt.BorderLayout;
+import java.awt.Button;
+import java.awt.Canvas;
+import java.awt.EventQueue;
+import java.awt.Graphics;
+import java.awt.Label;
+import java.awt.Panel;
+import java.awt.Scrollbar;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.IntConsumer;
+
+/**
+ * A scrolling list of books that only has components for the rows that
+ * are visible. Scrolling gives the rows the names of other books, so the
+ * number of components does not depend on the number of books.
+ */
+public class BookListPanel extends Panel {
+
+    /** The height of a row, a thumbnail fits in it. */
+    private static final int ROWHEIGHT = 96;
+
+    /** The size of the thumbnail of a row. */
+    private static final int THUMBNAILWIDTH = 60;
+    private static final int THUMBNAILHEIGHT = 90;
+
+    /** The size of the load button of a row. */
+    private static final int BUTTONWIDTH = 75;
+    private static final int BUTTONHEIGHT = 25;
+
+    /** The number of rows scrolled by a notch of the mouse wheel. */
+    private static final int WHEELROWS = 3;
+
+    /** Gives the thumbnails of the books. */
+    public interface ThumbnailProvider {
+
+        /**
+         * Method to get the thumbnail of a book.
+         * @param index The index of the book
+         * @param onLoaded Called from any thread when a thumbnail that
+         *                 was not ready yet has been loaded
+         * @return The thumbnail, or null if it is not ready
+         */
+        BufferedImage getThumbnail(int index, Runnable onLoaded);
+    }
+
+    /** Shows the thumbnail of a row. */
+    private static final class Thumbnail extends Canvas {
+
+        /** The shown thumbnail, null for none. */
+        private BufferedImage image;
+
+        /**
+         * Setter for the shown thumbnail.
+         * @param image The thumbnail, or null for none
+         */
+        void setImage(final BufferedImage image) {
+            if (this.image != image) {
+                this.image = image;
+                repaint();
+            }
+        }
+
+        @Override
+        public void paint(final Graphics g) {
+            if (image != null) {
+                // Center the thumbnail, covers do not all have the same shape
+                g.drawImage(image, (getWidth() - image.getWidth()) / 2,
+                        (getHeight() - image.getHeight()) / 2, null);
+            }
+        }
+    }
+
+    /** A row of the list, reused for the book that is shown in its place. */
+    private record Row(Thumbnail thumbnail, Label label, Button button) {
+    }
+
+    /** The names of the books. */
+    private final List<String> bookNames = new ArrayList<>();
+
+    /** The rows that fit in the panel. */
+    private final List<Row> rows = new ArrayList<>();
+
+    /** The panel the rows are placed in. */
+    private final Panel rowsPanel = new Panel(null);
+
+    /** The scrollbar, its value is the first visible book. */
+    private final Scrollbar scrollbar = new Scrollbar(Scrollbar.VERTICAL);
+
+    /** Called with the index of the book when a load button is clicked. */
+    private IntConsumer bookListener = _ -> { };
+
+    /** Gives the thumbnails of the books. */
+    private ThumbnailProvider thumbnailProvider = (_, _) -> null;
+
+    /** Set while an update of the rows for loaded thumbnails is queued. */
+    private final AtomicBoolean thumbnailUpdateQueued = new AtomicBoolean();
+
+    /** The index of the book in the first row. */
+    private int firstBook = 0;
+
+
+    /**
+     * Constructor of the BookListPanel class.
+     */
+    public BookListPanel() {
+        setLayout(new BorderLayout());
+        add(rowsPanel, BorderLayout.CENTER);
+        add(scrollbar, BorderLayout.EAST);
+
+        scrollbar.addAdjustmentListener(e -> scrollTo(e.getValue()));
+        rowsPanel.addMouseWheelListener(e -> {
+            scrollTo(firstBook + e.getWheelRotation() * WHEELROWS);
+            scrollbar.setValue(firstBook);
+        });
+
+        // The number of rows follows the height of the panel
+        rowsPanel.addComponentListener(new ComponentAdapter() {
+            @Override
+            public void componentResized(final ComponentEvent componentEvent) {
+                layoutRows();
+            }
+        });
+    }
+
+
+    /**
+     * Setter for the listener of the load buttons.
+     * @param listener Called with the index of the book to load
+     */
+    public void setBookListener(final IntConsumer listener) {
+        bookListener = listener;
+    }
+
+
+    /**
+     * Setter for the provider of the thumbnails.
+     * @param provider Gives the thumbnail of a book by its index
+     */
+    public void setThumbnailProvider(final ThumbnailProvider provider) {
+        thumbnailProvider = provider;
+        updateRows();
+    }
+
+
+    /**
+     * Method to show a new list of books.
+     * @param names The names of the books
+     */
+    public void setBooks(final List<String> names) {
+        bookNames.clear();
+        bookNames.addAll(names);
+        firstBook = 0;
+
+        updateScrollbar();
+        updateRows();
+    }
+
+
+    /**
+     * Method to ask for the thumbnails of the visible books again,
+     * after the thumbnails of some books were forgotten.
+     */
+    public void refreshThumbnails() {
+        updateRows();
+    }
+
+
+    /**
+     * Method to add a book to the list.
+     * @param index The position of the book
+     * @param name The name of the book
+     */
+    public void addBook(final int index, final String name) {
+        bookNames.add(index, name);
+
+        updateScrollbar();
+        updateRows();
+    }
+
+
+    /**
+     * Method to remove a book from the list.
+     * @param index The position of the book
+     */
+    public void removeBook(final int index) {
+        bookNames.remove(index);
+
+        updateScrollbar();
+        updateRows();
+    }
+
+
+    /**
+     * Method to scroll the list.
+     * @param book The index of the book to show in the first row
+     */
+    private void scrollTo(final int book) {
+        int lastFirstBook = Math.max(0, bookNames.size() - getVisibleRows());
+        int clamped = Math.clamp(book, 0, lastFirstBook);
+
+        if (clamped != firstBook) {
+            firstBook = clamped;
+            updateRows();
+        }
+    }
+
+
+    /**
+     * Method to create or remove rows so they fill the panel,
+     * and place them below each other.
+     */
+    private void layoutRows() {
+        int rowCount = getVisibleRows() + 1; // The last row can be partly visible
+
+        while (rows.size() < rowCount) {
+            final int rowIndex = rows.size();
+
+            Thumbnail thumbnail = new Thumbnail();
+            Label label = new Label("", Label.CENTER);
+            Button button = new Button("Load");
+            button.addActionListener(_ -> {
+                if (firstBook + rowIndex < bookNames.size()) {
+                    bookListener.accept(firstBook + rowIndex);
+                }
+            });
+
+            rowsPanel.add(thumbnail);
+            rowsPanel.add(label);
+            rowsPanel.add(button);
+            rows.add(new Row(thumbnail, label, button));
+        }
+
+        while (rows.size() > rowCount) {
+            Row row = rows.removeLast();
+            rowsPanel.remove(row.thumbnail());
+            rowsPanel.remove(row.label());
+            rowsPanel.remove(row.button());
+        }
+
+        int width = rowsPanel.getWidth();
+        for (int i = 0; i < rows.size(); i++) {
+            Row row = rows.get(i);
+            int y = i * ROWHEIGHT;
+            int buttonY = y + (ROWHEIGHT - BUTTONHEIGHT) / 2;
+
+            row.thumbnail().setBounds(0, y, THUMBNAILWIDTH, THUMBNAILHEIGHT);
+            row.label().setBounds(THUMBNAILWIDTH, buttonY,
+                    Math.max(0, width - THUMBNAILWIDTH - BUTTONWIDTH),
+                    BUTTONHEIGHT);
+            row.button().setBounds(width - BUTTONWIDTH, buttonY,
+                    BUTTONWIDTH, BUTTONHEIGHT);
+        }
+
+        // More rows can make the list scroll back
+        scrollTo(firstBook);
+        updateScrollbar();
+        updateRows();
+    }
+
+
+    /**
+     * Method to show the books in the rows, rows past the end are hidden.
+     * Only the thumbnails of the visible rows are requested, so the
+     * thumbnails of the books on screen are made first.
+     */
+    private void updateRows() {
+        for (int i = 0; i < rows.size(); i++) {
+            Row row = rows.get(i);
+            int book = firstBook + i;
+            boolean visible = book < bookNames.size();
+
+            if (visible) {
+                row.label().setText(bookNames.get(book));
+                row.thumbnail().setImage(thumbnailProvider.getThumbnail(book,
+                        this::thumbnailLoaded));
+            }
+            row.thumbnail().setVisible(visible);
+            row.label().setVisible(visible);
+            row.button().setVisible(visible);
+        }
+    }
+
+
+    /**
+     * Method to update the rows on the event dispatch thread after a
+     * thumbnail was loaded. Thumbnails loaded at about the same time
+     * share one update.
+     */
+    private void thumbnailLoaded() {
+        if (thumbnailUpdateQueued.compareAndSet(false, true)) {
+            EventQueue.invokeLater(() -> {
+                thumbnailUpdateQueued.set(false);
+                updateRows();
+            });
+        }
+    }
+
+
+    /**
+     * Method to update the scrollbar to the number of books.
+     */
+    private void updateScrollbar() {
+        int visibleRows = Math.max(1, getVisibleRows());
+
+        firstBook = Math.clamp(firstBook, 0,
+                Math.max(0, bookNames.size() - visibleRows));
+        scrollbar.setValues(firstBook, visibleRows, 0,
+                Math.max(visibleRows, bookNames.size()));
+        scrollbar.setBlockIncrement(visibleRows);
+    }
+
+
+    /**
+     * Getter for the number of rows that fit in the panel completely.
+     * @return The number of rows
+     */
+    private int getVisibleRows() {
+        return rowsPanel.getHeight() / ROWHEIGHT;
+    }
+}
@@ -0,0 +1,634 @@
+package xyz.jelmer8.views;
+
+import xyz.jelmer8.metrics.ReaderEvents;
+import xyz.jelmer8.metrics.ReaderMetrics;
+import xyz.jelmer8.models.CompatibleImages;
+import xyz.jelmer8.models.ImageModel;
+import xyz.jelmer8.models.TiledImage;
+
+import javax.swing.JPanel;
+import javax.swing.Timer;
+import java.awt.Panel;
+import java.awt.FlowLayout;
+import java.awt.Dimension;
+import java.awt.Button;
+import java.awt.Label;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+
+import java.awt.event.ActionListener;
+import java.awt.event.ComponentListener;
+import java.awt.image.BufferedImage;
+
+import java.awt.event.MouseListener;
+import java.awt.event.MouseMotionListener;
+
+import java.io.Serial;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class ComicBookView extends Panel {
+
+    /** The comic book image with original size. */
+    private BufferedImage originalComicBookImage;
+
+    /** The comic book image. */
+    private BufferedImage comicBookImage;
+
+    /** The tiles of the comic book image, if the page is very tall. */
+    private TiledImage tiledComicBookImage;
+
+    /** Number of tiles above and below the view that are decoded early. */
+    private static final int TILEMARGIN = 2;
+
+    /** The page number of the comic book image. */
+    private int comicBookPage;
+
+    /**
+     * Key of a scaled image. The key holds the decoded image itself, not its
+     * page number, so a page of another book is never taken for it, even
+     * when a prefetch finishes after the book was closed.
+     * @param source The decoded image, compared by identity
+     * @param width The width the image is scaled to
+     */
+    private record ScaleKey(BufferedImage source, int width) {
+
+    }
+
+    /** Maximum number of scaled images that are kept. */
+    private static final int MAXSCALEDIMAGES = 8;
+
+    /** Delay after the last resize before the image is scaled properly. */
+    private static final int RESIZEDELAY = 200;
+
+    /** Scaled images of the recently shown and prefetched pages. */
+    private final Map<ScaleKey, BufferedImage> scaledImages =
+            new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(
+                        final Map.Entry<ScaleKey, BufferedImage> eldest) {
+                    return size() > MAXSCALEDIMAGES;
+                }
+            };
+
+    /** If the view is being resized and the image is scaled while painting. */
+    private boolean resizing = false;
+
+    /** Scales the image properly once the view stops being resized. */
+    private final Timer resizeTimer = new Timer(RESIZEDELAY, _ -> finishResize());
+
+    /** Offset of the image relative to the frame due to panning. */
+    private final int[] imageOffset = new int[] {0, 0};
+
+    /** Used for calculating imageOffset. */
+    private final int[] cursorOffset = new int[] {0, 0};
+
+    /** The JPanel where the comic book image is drawn on. */
+    private final JPanel imageJPanel;
+
+    /** The return button. */
+    private final Button returnButton;
+
+    /** The previous page button. */
+    private final Button previousPageButton;
+
+    /** The next page button. */
+    private final Button nextPageButton;
+
+    /** The label that shows the progress of loading the book. */
+    private final Label progressLabel;
+
+
+    /**
+     * Constructor for the ComicBookView.
+     * @param viewSize The size of the view panel
+     */
+    public ComicBookView(final Dimension viewSize) {
+        setSize(viewSize);
+        setLayout(new FlowLayout());
+        setIgnoreRepaint(true);
+
+        returnButton = new Button("Stop Reading");
+        add(returnButton);
+
+        previousPageButton = new Button("<");
+        add(previousPageButton);
+
+        nextPageButton = new Button(">");
+        add(nextPageButton);
+
+        progressLabel = new Label("");
+        progressLabel.setPreferredSize(new Dimension(150, 25));
+        add(progressLabel);
+
+        imageJPanel = createImagePanel();
+        resizeTimer.setRepeats(false);
+
+        add(imageJPanel);
+        resetImagePan();
+    }
+
+
+    /**
+     * Method to set the button listeners for the buttons.
+     * @param returnListener The listener for the return button
+     * @param previousPageListener The listener for the previous page button
+     * @param nextPageListener The listener for the next page button
+     */
+    public void setButtonListeners(final ActionListener returnListener,
+                                   final ActionListener previousPageListener,
+                                   final ActionListener nextPageListener) {
+        returnButton.addActionListener(returnListener);
+        previousPageButton.addActionListener(previousPageListener);
+        nextPageButton.addActionListener(nextPageListener);
+    }
+
+
+    /**
+     * Method to set the MouseMotion and Mouse Listeners to the JPanel.
+     * @param motionListener the MouseMotionListener to set
+     * @param mouseListener the MouseListener to set
+     */
+    public void setPanelListener(final MouseMotionListener motionListener,
+                                  final MouseListener mouseListener) {
+        imageJPanel.addMouseMotionListener(motionListener);
+        imageJPanel.addMouseListener(mouseListener);
+    }
+
+    public void addComponentListener(final ComponentListener componentListener) {
+        super.addComponentListener(componentListener);
+    }
+
+
+    /**
+     * Method to set the comic book image.
+     * @param imageModel The ImageModel to set
+     */
+    public void setComicBookImage(final ImageModel imageModel) {
+        ReaderEvents.PageDisplay event = new ReaderEvents.PageDisplay();
+        event.start();
+
+        showComicBookImage(imageModel);
+
+        event.page = imageModel.page();
+        event.tiled = imageModel.tiledImage() != null;
+        ReaderMetrics.get().recordPageDisplay(event.finish());
+    }
+
+
+    /**
+     * Method to show a comic book image, scaling it if needed.
+     * @param imageModel The ImageModel to show
+     */
+    private void showComicBookImage(final ImageModel imageModel) {
+        // Set the image to the panel
+
+        // Very tall pages are painted tile by tile
+        if (imageModel.tiledImage() != null) {
+            tiledComicBookImage = imageModel.tiledImage();
+            originalComicBookImage = null;
+            comicBookImage = null;
+            comicBookPage = imageModel.page();
+            resizing = false;
+
+            imageJPanel.revalidate();
+            imageJPanel.repaint();
+            resetImagePan();
+            return;
+        }
+
+        final BufferedImage image = imageModel.image();
+
+        tiledComicBookImage = null;
+        originalComicBookImage = image;
+        comicBookImage = image;
+        comicBookPage = imageModel.page();
+        resizing = false;
+
+        // If the frame is wider than the original image,
+        // the image will get sized to fit the frame
+        if (this.getWidth() > image.getWidth()) {
+            comicBookImage = getScaledImage(comicBookPage, image, this.getWidth());
+        }
+
+
+        // Repaint panel and reset pan
+        imageJPanel.repaint();
+        resetImagePan();
+    }
+
+
+    /**
+     * Method to show the progress of loading the book.
+     * @param loadedPages The number of pages that are loaded
+     * @param pageCount The number of pages of the book,
+     *                  or 0 to clear the progress
+     */
+    public void setLoadingProgress(final int loadedPages, final int pageCount) {
+        if (pageCount == 0) {
+            progressLabel.setText("");
+        } else {
+            progressLabel.setText("Loaded " + loadedPages + "/" + pageCount);
+        }
+    }
+
+
+    /**
+     * Method to resize the comic book image to current frame size.
+     * While the view is being resized the image is scaled quickly while
+     * painting, it is scaled properly once the resizing stops.
+     */
+    public void resizeComicBookImage() {
+        // Set the image to the panel
+
+        if (tiledComicBookImage != null) {
+            imageJPanel.revalidate();
+            imageJPanel.repaint();
+            resetImagePan();
+            return; // Tiles are scaled while painting
+        }
+
+        if (comicBookImage == null) {
+            return; // No image to resize
+        }
+
+        // This variable is used a lot in this method
+        int originalImageWidth = originalComicBookImage.getWidth();
+
+        // If the image is already the same size as the frame or original image,
+        // no resizing is needed
+        if (!resizing && this.getWidth() == comicBookImage.getWidth()
+                && !(this.getWidth() <= originalImageWidth
+                && comicBookImage.getWidth() != originalImageWidth)) {
+            return;
+        }
+
+        // If the frame is wider than the original image,
+        // the image will get sized to fit the frame
+        if (this.getWidth() > originalImageWidth) {
+            BufferedImage scaled;
+            synchronized (scaledImages) {
+                scaled = scaledImages.get(
+                        new ScaleKey(originalComicBookImage, this.getWidth()));
+            }
+
+            if (scaled != null) {
+                comicBookImage = scaled;
+                resizing = false;
+            } else {
+                resizing = true;
+                resizeTimer.restart();
+            }
+        } else if (this.getWidth() <= originalImageWidth) {
+            // If the frame is smaller than the original image,
+            // the original image will be used
+            comicBookImage = originalComicBookImage;
+            resizing = false;
+        }
+
+        imageJPanel.revalidate();
+        imageJPanel.repaint();
+        resetImagePan();
+    }
+
+
+    /**
+     * Method to scale the image properly once the view stops being resized.
+     */
+    private void finishResize() {
+        if (!resizing || originalComicBookImage == null) {
+            return;
+        }
+
+        resizing = false;
+        comicBookImage = getScaledImage(comicBookPage, originalComicBookImage,
+                this.getWidth());
+
+        imageJPanel.revalidate();
+        imageJPanel.repaint();
+    }
+
+
+    /**
+     * Method to scale a comic book image ahead of time, so it can be shown
+     * without scaling when the page is opened. Called from a background thread.
+     * @param imageModel The ImageModel to scale
+     */
+    public void prescaleComicBookImage(final ImageModel imageModel) {
+        final int width = this.getWidth();
+
+        // Only images smaller than the frame get scaled, tiles never are
+        if (imageModel.image() != null
+                && width > imageModel.image().getWidth()) {
+            getScaledImage(imageModel.page(), imageModel.image(), width);
+        }
+    }
+
+
+    /**
+     * Method to get a scaled version of a page, the page is only scaled
+     * if it is not in the cache of scaled images.
+     * @param page The page number of the image
+     * @param image The original image
+     * @param width The width to scale to
+     * @return BufferedImage the scaled image
+     */
+    private BufferedImage getScaledImage(final int page,
+                                         final BufferedImage image,
+                                         final int width) {
+        final ScaleKey key = new ScaleKey(image, width);
+
+        synchronized (scaledImages) {
+            BufferedImage scaled = scaledImages.get(key);
+            if (scaled != null) {
+                return scaled;
+            }
+        }
+
+        ReaderEvents.PageScale event = new ReaderEvents.PageScale();
+        event.start();
+
+        BufferedImage scaled = createScaledImage(image, width);
+
+        event.page = page;
+        event.width = image.getWidth();
+        event.scaledWidth = width;
+        ReaderMetrics.get().recordPageScale(event.finish());
+
+        synchronized (scaledImages) {
+            scaledImages.put(key, scaled);
+        }
+        return scaled;
+    }
+
+
+    /**
+     * Method to create a correct scaled image of a comic book image.
+     * @param original The image to scale
+     * @param newWidth The width of the scaled image
+     * @return BufferedImage the scaled image
+     */
+    public static BufferedImage createScaledImage(final BufferedImage original,
+                                                  final int newWidth) {
+        int width = original.getWidth();
+        double factor = (double) newWidth / width;
+
+        // Calculate the new height of the image,
+        // height is scaled by the same factor as the width
+        int newHeight = (int) (original.getHeight() * factor);
+
+
+        // Scale to the pixel format of the screen, the type of the original
+        // can be TYPE_CUSTOM which can not be used to create an image
+        BufferedImage after = CompatibleImages.createCompatibleImage(newWidth,
+                newHeight, original.getTransparency());
+
+        Graphics2D g = after.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+                RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g.drawImage(original, 0, 0, newWidth, newHeight,
+                0, 0, original.getWidth(),
+                original.getHeight(), null);
+        g.dispose();
+        return after;
+    }
+
+
+    /**
+     * Method to get the scale the tiles are painted with. Like other pages,
+     * tiled pages narrower than the view are scaled up to fit the view.
+     * @return The scale of the tiles
+     */
+    private double getTileScale() {
+        return Math.max(1.0,
+                (double) this.getWidth() / tiledComicBookImage.getWidth());
+    }
+
+
+    /**
+     * Method to paint the tiles of a very tall page that are in view.
+     * Tiles just outside the view are decoded ahead of time, tiles further
+     * away are dropped.
+     * @param g The graphics of the image panel
+     * @param tiledImage The tiled page to paint
+     */
+    private void paintTiles(final Graphics2D g, final TiledImage tiledImage) {
+        final double scale = getTileScale();
+        final int tileHeight = TiledImage.TILEHEIGHT;
+
+        // The part of the page that is visible in the view
+        int visibleTop = (int) (-imageOffset[1] / scale);
+        int visibleBottom = (int) ((-imageOffset[1] + this.getHeight()) / scale);
+
+        int firstTile = Math.max(0, visibleTop / tileHeight);
+        int lastTile = Math.min(tiledImage.getTileCount() - 1,
+                visibleBottom / tileHeight);
+
+        tiledImage.retainTiles(firstTile - TILEMARGIN, lastTile + TILEMARGIN);
+
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+                RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+
+        for (int i = firstTile - TILEMARGIN; i <= lastTile + TILEMARGIN; i++) {
+            if (i < 0 || i >= tiledImage.getTileCount()) {
+                continue;
+            }
+
+            BufferedImage tile = tiledImage.getTile(i, imageJPanel::repaint);
+
+            // Tiles in the margin are only requested, not painted
+            if (tile != null && i >= firstTile && i <= lastTile) {
+                g.drawImage(tile, 0, (int) (i * tileHeight * scale),
+                        (int) (tile.getWidth() * scale),
+                        (int) Math.ceil(tile.getHeight() * scale), null);
+            }
+        }
+    }
+
+
+    /**
+     * Method to get the size of the image while the view is being resized.
+     * @return Dimension the original image scaled to the width of the view
+     */
+    private Dimension getResizingSize() {
+        double factor = (double) this.getWidth()
+                / originalComicBookImage.getWidth();
+
+        return new Dimension(this.getWidth(),
+                (int) (originalComicBookImage.getHeight() * factor));
+    }
+
+
+    /**
+     * Method to create the panel for showing the image.
+     * @return JPanel The created image panel
+     */
+    private JPanel createImagePanel() {
+        return new JPanel() {
+            @Serial
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public Dimension getPreferredSize() {
+                if (tiledComicBookImage != null) {
+                    double scale = getTileScale();
+                    return new Dimension(
+                            (int) (tiledComicBookImage.getWidth() * scale),
+                            (int) (tiledComicBookImage.getHeight() * scale));
+                }
+
+                if (comicBookImage == null) {
+                    return new Dimension(0, 0);
+                }
+
+                // While resizing, the image is scaled to the view when painted
+                if (resizing) {
+                    return getResizingSize();
+                }
+
+                // Return the size of the image
+                return new Dimension(comicBookImage.getWidth(),
+                        comicBookImage.getHeight());
+            }
+
+            @Override
+            public void paintComponent(final Graphics g) {
+                ReaderEvents.PagePaint event = new ReaderEvents.PagePaint();
+                event.start();
+
+                paintPage(g);
+
+                event.page = comicBookPage;
+                ReaderMetrics.get().recordPagePaint(event.finish());
+            }
+
+            /**
+             * Method to paint the page, tiled, quickly scaled
+             * while resizing, or as it is.
+             * @param g The graphics to paint with
+             */
+            private void paintPage(final Graphics g) {
+                super.paintComponent(g);
+
+                if (tiledComicBookImage != null) {
+                    paintTiles((Graphics2D) g, tiledComicBookImage);
+                    return;
+                }
+
+                if (resizing && originalComicBookImage != null) {
+                    // Fast, low quality scaling while the view is resized
+                    Dimension size = getResizingSize();
+                    ((Graphics2D) g).setRenderingHint(
+                            RenderingHints.KEY_INTERPOLATION,
+                            RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+                    g.drawImage(originalComicBookImage, 0, 0,
+                            size.width, size.height, this);
+                    return;
+                }
+
+                g.drawImage(comicBookImage, 0, 0, this);
+            }
+        };
+    }
+
+
+    /**
+     * Method to pan the comic book image.
+     * @param x The x coordinate to pan to
+     * @param y The y coordinate to pan to
+     */
+    public void panComicBookImage(final int x, final int y) {
+        imageOffset[0] += (x - cursorOffset[0]);
+        imageOffset[1] += (y - cursorOffset[1]);
+
+        cursorOffset[0] = x;
+        cursorOffset[1] = y;
+
+        // Restrict pan-movement
+        restrictPanning();
+
+        imageJPanel.setLocation(imageOffset[0], imageOffset[1]);
+    }
+
+
+    /**
+     * Method to reset the comic book pan.
+     */
+    public void resetImagePan() {
+        imageOffset[0] = 0;
+        imageOffset[1] = 0;
+        imageJPanel.setLocation(imageOffset[0], imageOffset[1]);
+    }
+
+
+    /**
+     * Method to restrict the panning of the comic book image.
+     */
+    private void restrictPanning() {
+        // The size the image is shown at, scaled or tiled
+        final Dimension imageSize = imageJPanel.getPreferredSize();
+
+        // If the frame is wider than the image, the image will get
+        // sized up to fit the frame thus no panning on x-axis is needed
+        if (this.getWidth() >= imageSize.width) {
+            imageOffset[0] = 0;
+        } else {
+            int errorMarginX = 25;
+
+            // If the image is out of view on the left,
+            // move it back in view
+            if (imageOffset[0] < -imageSize.width
+                    + this.getWidth() - errorMarginX) {
+                imageOffset[0] = -imageSize.width
+                        + this.getWidth() - errorMarginX;
+            }
+
+            // Panning the image to the right is unneeded
+            if (imageOffset[0] > 0) {
+                imageOffset[0] = 0;
+            }
+        }
+
+        int errorMarginY = 25;
+
+        // If the image is out of view on the top, move it back in view
+        if (imageOffset[1] < -imageSize.height
+                + this.getHeight() - errorMarginY) {
+            imageOffset[1] = -imageSize.height
+                    + this.getHeight() - errorMarginY;
+        }
+
+        // Panning the image upwards
+        if (imageOffset[1] > 0) {
+            imageOffset[1] = 0;
+        }
+    }
+
+
+    /**
+     * Method to set the cursor offset relative to the image.
+     * Used to calculate the pan movement.
+     * @param x The x coordinate of the cursor
+     * @param y The y coordinate of the cursor
+     */
+    public void setMousePressed(final int x, final int y) {
+        cursorOffset[0] = x;
+        cursorOffset[1] = y;
+    }
+
+
+    /**
+     * Method to clear the comic book image from the JPanel.
+     */
+    public void clearImage() {
+        comicBookImage = null;
+        tiledComicBookImage = null;
+        resizing = false;
+        resizeTimer.stop();
+        synchronized (scaledImages) {
+            scaledImages.clear();
+        }
+        imageJPanel.repaint();
+    }
+}
@@ -3,9 +3,6 @@ package xyz.jelmer8.views;
 import java.awt.Panel;
 import java.awt.FlowLayout;
 import java.awt.Dimension;
-import java.awt.GridBagLayout;
-import java.awt.GridBagConstraints;
-import java.awt.ScrollPane;
 import java.awt.Label;
 import java.awt.TextField;
 import java.awt.Button;
@@ -14,6 +11,7 @@ import java.awt.Color;
 import java.awt.event.ActionListener;
 
 import java.util.List;
+import java.util.function.IntConsumer;
 
 
 public class MainMenuView extends Panel {
@@ -28,12 +26,15 @@ public class MainMenuView extends Panel {
         EMPTY
     }
 
-    /** The panel where the paths of the books are displayed. */
-    private final Panel pathsPanel;
+    /** The list where the names of the books are displayed. */
+    private final BookListPanel bookList;
 
     /** The button to load the books. */
     private final Button button;
 
+    /** The button to convert the rar books to zip books. */
+    private final Button repackButton;
+
     /** The text field to input the path of the books. */
     private final TextField pathTextField;
 
@@ -48,11 +49,7 @@ public class MainMenuView extends Panel {
         setSize(viewSize);
         setLayout(new FlowLayout());
 
-        pathsPanel = new Panel();
-        pathsPanel.setLayout(new GridBagLayout());
-
-        ScrollPane scrollPane = new ScrollPane();
-        scrollPane.add(pathsPanel);
+        bookList = new BookListPanel();
 
         messageLabel = new Label("");
         messageLabel.setPreferredSize(new Dimension(1400, 50));
@@ -66,12 +63,16 @@ public class MainMenuView extends Panel {
         button.setPreferredSize(new Dimension(100, 25));
         add(button);
 
+        repackButton = new Button("Convert CBR to CBZ");
+        repackButton.setPreferredSize(new Dimension(150, 25));
+        add(repackButton);
+
         Label spacer = new Label("");
         spacer.setPreferredSize(new Dimension(1400, 75));
         add(spacer);
 
-        scrollPane.setPreferredSize(new Dimension(1200, 500));
-        add(scrollPane);
+        bookList.setPreferredSize(new Dimension(1200, 500));
+        add(bookList);
 
 
         setVisible(true);
@@ -88,25 +89,57 @@ public class MainMenuView extends Panel {
 
 
     /**
-     * Method to set the books in the pathsPanel.
-     * @param labels List<Label> of the labels to display
-     * @param buttons List<Button> of the buttons to display
+     * Method to set the books in the book list.
+     * @param bookNames List<String> of the names of the books to display
      */
-    public void setBooksInPanel(final List<Label> labels,
-                                final List<Button> buttons) {
+    public void setBooksInPanel(final List<String> bookNames) {
+        bookList.setBooks(bookNames);
+    }
 
-        GridBagConstraints gridBagConstraints = new GridBagConstraints();
-        gridBagConstraints.gridwidth = GridBagConstraints.REMAINDER;
 
-        pathsPanel.removeAll();
+    /**
+     * Method to add a book to the book list, without rebuilding the list.
+     * @param index The position of the book in the list
+     * @param bookName The name of the book
+     */
+    public void addBookToPanel(final int index, final String bookName) {
+        bookList.addBook(index, bookName);
+    }
 
-        for (int i = 0; i < labels.size(); i++) {
-            pathsPanel.add(labels.get(i));
-            pathsPanel.add(buttons.get(i), gridBagConstraints);
-        }
 
-        // Validate the panel to make sure the changes are visible
-        pathsPanel.validate();
+    /**
+     * Method to remove a book from the book list.
+     * @param index The position of the book in the list
+     */
+    public void removeBookFromPanel(final int index) {
+        bookList.removeBook(index);
+    }
+
+
+    /**
+     * Method to show the thumbnails of the books again, for books that changed.
+     */
+    public void refreshThumbnails() {
+        bookList.refreshThumbnails();
+    }
+
+
+    /**
+     * Add a listener to the load buttons of the books.
+     * @param listener Called with the position of the book to load
+     */
+    public void setBookListener(final IntConsumer listener) {
+        bookList.setBookListener(listener);
+    }
+
+
+    /**
+     * Setter for the provider of the thumbnails of the books.
+     * @param provider Gives the thumbnail of a book by its position
+     */
+    public void setThumbnailProvider(
+            final BookListPanel.ThumbnailProvider provider) {
+        bookList.setThumbnailProvider(provider);
     }
 
 
@@ -138,4 +171,13 @@ public class MainMenuView extends Panel {
     public void addButtonActionListener(final ActionListener listener) {
         button.addActionListener(listener);
     }
+
+
+    /**
+     * Add an action listener to the convert button.
+     * @param listener the ActionListener to add to the button
+     */
+    public void addRepackButtonActionListener(final ActionListener listener) {
+        repackButton.addActionListener(listener);
+    }
 }
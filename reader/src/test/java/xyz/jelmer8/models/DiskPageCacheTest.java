@@ -0,0 +1,245 @@
+package xyz.jelmer8.models;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests of the DiskPageCache class, on pages written to a temporary folder.
+ */
+class DiskPageCacheTest {
+
+    /** The size of the test pages. */
+    private static final int WIDTH = 40;
+    private static final int HEIGHT = 60;
+
+    /** The size of a page file of a test page, the header and the pixels. */
+    private static final long PAGEBYTES = 32 + 4L * WIDTH * HEIGHT;
+
+    /** No page gets too old during a test. */
+    private static final long MAXAGE = TimeUnit.DAYS.toMillis(30);
+
+    /** The folder of the cache. */
+    @TempDir
+    Path directory;
+
+
+    @Test
+    void readsTheWrittenPixels() throws IOException {
+        DiskPageCache cache = new DiskPageCache(directory, 1 << 20, MAXAGE);
+        ImageModel page = createPage(7, 1, 0xff123456);
+
+        cache.writePage(pageId(7).toFilePrefix(), page);
+        ImageModel read = cache.get(pageId(7), 7, 0);
+
+        assertNotNull(read);
+        assertEquals(7, read.page());
+        assertEquals(WIDTH, read.sourceWidth());
+        assertEquals(1, read.subsampling());
+        assertArrayEquals(pixels(page.image()), pixels(read.image()));
+    }
+
+
+    @Test
+    void keepsTheAlphaOfAPageWithAlpha() throws IOException {
+        DiskPageCache cache = new DiskPageCache(directory, 1 << 20, MAXAGE);
+        BufferedImage image = new BufferedImage(WIDTH, HEIGHT,
+                BufferedImage.TYPE_INT_ARGB);
+        image.setRGB(0, 0, 0x80123456);
+        image.setRGB(1, 0, 0xff654321);
+
+        cache.writePage(pageId(0).toFilePrefix(),
+                new ImageModel(image, 0, WIDTH, 1, null));
+        BufferedImage read = cache.get(pageId(0), 0, 0).image();
+
+        assertEquals(BufferedImage.TYPE_INT_ARGB, read.getType());
+        assertArrayEquals(pixels(image), pixels(read));
+    }
+
+
+    @Test
+    void findsThePageForTheSubsamplingOfTheWidth() throws IOException {
+        DiskPageCache cache = new DiskPageCache(directory, 1 << 20, MAXAGE);
+        cache.writePage(pageId(0).toFilePrefix(), createPage(0, 2, 0xff00ff00));
+
+        // Half the width is subsampled by two, the full width is not stored
+        assertNotNull(cache.get(pageId(0), 0, WIDTH / 2));
+        assertNull(cache.get(pageId(0), 0, 0));
+        assertNull(cache.get(pageId(1), 1, WIDTH / 2));
+    }
+
+
+    @Test
+    void deletesATruncatedPageFile() throws IOException {
+        DiskPageCache cache = new DiskPageCache(directory, 1 << 20, MAXAGE);
+        cache.writePage(pageId(0).toFilePrefix(), createPage(0, 1, 0xffff0000));
+        Path file = onlyPageFile();
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(PAGEBYTES / 2);
+        }
+
+        assertNull(cache.get(pageId(0), 0, 0));
+        assertFalse(Files.exists(file));
+    }
+
+
+    @Test
+    void deletesAPageFileWithADamagedHeader() throws IOException {
+        DiskPageCache cache = new DiskPageCache(directory, 1 << 20, MAXAGE);
+        cache.writePage(pageId(0).toFilePrefix(), createPage(0, 1, 0xffff0000));
+        Path file = onlyPageFile();
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[] {0, 0, 0, 0}), 0);
+        }
+
+        assertNull(cache.get(pageId(0), 0, 0));
+        assertFalse(Files.exists(file));
+    }
+
+
+    @Test
+    void keepsThePageFileWhenTheReadIsInterrupted() throws IOException {
+        DiskPageCache cache = new DiskPageCache(directory, 1 << 20, MAXAGE);
+        cache.writePage(pageId(0).toFilePrefix(), createPage(0, 1, 0xffff0000));
+        Path file = onlyPageFile();
+
+        Thread.currentThread().interrupt();
+        try {
+            assertNull(cache.get(pageId(0), 0, 0));
+            assertTrue(Thread.currentThread().isInterrupted());
+        } finally {
+            Thread.interrupted();
+        }
+
+        assertTrue(Files.exists(file));
+        assertNotNull(cache.get(pageId(0), 0, 0));
+    }
+
+
+    @Test
+    void evictsTheLeastRecentlyUsedPage() throws IOException {
+        DiskPageCache cache = new DiskPageCache(directory, 2 * PAGEBYTES, MAXAGE);
+        cache.writePage(pageId(0).toFilePrefix(), createPage(0, 1, 0xff000000));
+        cache.writePage(pageId(1).toFilePrefix(), createPage(1, 1, 0xff000001));
+
+        // Page 0 is used after page 1 was written, so page 1 goes
+        assertNotNull(cache.get(pageId(0), 0, 0));
+        cache.writePage(pageId(2).toFilePrefix(), createPage(2, 1, 0xff000002));
+
+        assertNotNull(cache.get(pageId(0), 0, 0));
+        assertNull(cache.get(pageId(1), 1, 0));
+        assertNotNull(cache.get(pageId(2), 2, 0));
+        assertEquals(2, countPageFiles());
+    }
+
+
+    @Test
+    void deletesOldPagesWhenTheFolderIsListed() throws IOException {
+        DiskPageCache writer = new DiskPageCache(directory, 1 << 20, MAXAGE);
+        writer.writePage(pageId(0).toFilePrefix(), createPage(0, 1, 0xff000000));
+        writer.writePage(pageId(1).toFilePrefix(), createPage(1, 1, 0xff000001));
+
+        // Page 0 was last used before the maximum age
+        Path oldFile;
+        try (Stream<Path> files = Files.list(directory)) {
+            oldFile = files.filter(file -> file.getFileName().toString()
+                    .startsWith(pageId(0).toFilePrefix())).findFirst().orElseThrow();
+        }
+        Files.setLastModifiedTime(oldFile, FileTime.fromMillis(
+                System.currentTimeMillis() - 2 * MAXAGE));
+
+        DiskPageCache cache = new DiskPageCache(directory, 1 << 20, MAXAGE);
+        assertNull(cache.get(pageId(0), 0, 0));
+        assertNotNull(cache.get(pageId(1), 1, 0));
+        assertFalse(Files.exists(oldFile));
+    }
+
+
+    /**
+     * Method to get the identity of a page of the test book.
+     * @param page The page number
+     * @return The identity of the page
+     */
+    private static DiskPageCache.PageId pageId(final int page) {
+        return new DiskPageCache.PageId("/books/test.cbz", 1234, 5678,
+                "page" + page + ".jpg", page, 0);
+    }
+
+
+    /**
+     * Method to create a page with a gradient, so every pixel is different.
+     * @param page The page number
+     * @param subsampling The subsampling the page was decoded with
+     * @param color The color the gradient is added to
+     * @return The page
+     */
+    private static ImageModel createPage(final int page, final int subsampling,
+                                         final int color) {
+        int width = WIDTH / subsampling;
+        int height = HEIGHT / subsampling;
+        BufferedImage image = new BufferedImage(width, height,
+                BufferedImage.TYPE_INT_RGB);
+
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                image.setRGB(x, y, color + (y << 8) + x);
+            }
+        }
+
+        return new ImageModel(image, page, WIDTH, subsampling, null);
+    }
+
+
+    /**
+     * Method to get the pixels of an image.
+     * @param image The image
+     * @return The pixels, as opaque rgb
+     */
+    private static int[] pixels(final BufferedImage image) {
+        return image.getRGB(0, 0, image.getWidth(), image.getHeight(),
+                null, 0, image.getWidth());
+    }
+
+
+    /**
+     * Method to get the only page file in the folder of the cache.
+     * @return The page file
+     */
+    private Path onlyPageFile() throws IOException {
+        assertEquals(1, countPageFiles());
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.toString().endsWith(".page"))
+                    .findFirst().orElseThrow();
+        }
+    }
+
+
+    /**
+     * Method to count the page files in the folder of the cache.
+     * @return The number of page files
+     */
+    private long countPageFiles() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.toString().endsWith(".page")).count();
+        }
+    }
+}
@@ -0,0 +1,303 @@
+package xyz.jelmer8.models;
+
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.ImageWriter;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.metadata.IIOMetadataNode;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Tests of the GifPageSource class. The gifs are written by the test with
+ * frames of a single color, so the expected canvas of every frame can be
+ * drawn by hand.
+ */
+class GifPageSourceTest {
+
+    /** The size of the canvas of the test gifs. */
+    private static final int SIZE = 8;
+
+    /** Colors of the frames, they are in the palette of every gif. */
+    private static final int RED = 0xffff0000;
+    private static final int GREEN = 0xff00ff00;
+    private static final int BLUE = 0xff0000ff;
+    private static final int TRANSPARENT = 0;
+
+    /** The disposal methods, as they are named in the metadata of ImageIO. */
+    private static final String NONE = "doNotDispose";
+    private static final String BACKGROUND = "restoreToBackgroundColor";
+    private static final String PREVIOUS = "restoreToPrevious";
+
+    /**
+     * A frame of a test gif, a rectangle of one color.
+     * @param x The left of the frame on the canvas
+     * @param y The top of the frame on the canvas
+     * @param width The width of the frame
+     * @param height The height of the frame
+     * @param color The color of the frame
+     * @param disposal How the frame is removed before the next frame is drawn
+     */
+    private record TestFrame(int x, int y, int width, int height, int color,
+                             String disposal) {
+    }
+
+
+    @Test
+    void restoresTheCanvasBeforeAFrameThatIsRestoredToPrevious() throws IOException {
+        GifPageSource gif = new GifPageSource(writeGif(List.of(
+                new TestFrame(0, 0, SIZE, SIZE, RED, NONE),
+                new TestFrame(0, 0, 2, 2, BLUE, PREVIOUS),
+                new TestFrame(6, 6, 2, 2, GREEN, NONE))));
+
+        assertEquals(3, gif.getFrameCount());
+        assertEquals(SIZE, gif.getWidth());
+
+        int[] background = canvas(RED);
+        assertArrayEquals(background, pixels(gif.decodeFrame(0, 1)));
+
+        int[] withBlue = canvas(RED);
+        fill(withBlue, 0, 0, 2, 2, BLUE);
+        assertArrayEquals(withBlue, pixels(gif.decodeFrame(1, 1)));
+
+        // The blue frame is gone, the red canvas is back under it
+        int[] withGreen = canvas(RED);
+        fill(withGreen, 6, 6, 2, 2, GREEN);
+        assertArrayEquals(withGreen, pixels(gif.decodeFrame(2, 1)));
+    }
+
+
+    @Test
+    void clearsAFrameThatIsRestoredToTheBackground() throws IOException {
+        GifPageSource gif = new GifPageSource(writeGif(List.of(
+                new TestFrame(0, 0, SIZE, SIZE, RED, BACKGROUND),
+                new TestFrame(2, 2, 2, 2, GREEN, NONE))));
+
+        // The background is transparent
+        int[] expected = canvas(TRANSPARENT);
+        fill(expected, 2, 2, 2, 2, GREEN);
+        assertArrayEquals(expected, pixels(gif.decodeFrame(1, 1)));
+    }
+
+
+    @Test
+    void decodesTheSameFramesInAnyOrder() throws IOException {
+        // More frames than fit between two saved canvases, every frame
+        // adds a pixel and some are shown for one frame only
+        List<TestFrame> frames = new ArrayList<>();
+        int[] colors = {RED, GREEN, BLUE};
+        for (int i = 0; i < 40; i++) {
+            frames.add(new TestFrame(i % SIZE, i / SIZE, 1, 1, colors[i % 3],
+                    i % 5 == 4 ? PREVIOUS : NONE));
+        }
+        byte[] bytes = writeGif(frames);
+
+        // Every frame decoded in order, from the start
+        List<int[]> inOrder = new ArrayList<>();
+        GifPageSource sequential = new GifPageSource(bytes);
+        for (int i = 0; i < frames.size(); i++) {
+            inOrder.add(pixels(sequential.decodeFrame(i, 1)));
+        }
+
+        // Jumps forwards and backwards, past the saved canvases
+        GifPageSource jumping = new GifPageSource(bytes);
+        for (int frame : new int[] {35, 3, 20, 36, 16, 15, 39, 0, 32}) {
+            assertArrayEquals(inOrder.get(frame),
+                    pixels(jumping.decodeFrame(frame, 1)), "frame " + frame);
+        }
+
+        // The canvases are saved again after they were freed
+        jumping.releaseCanvases();
+        assertArrayEquals(inOrder.get(33), pixels(jumping.decodeFrame(33, 1)));
+        assertArrayEquals(inOrder.get(34), pixels(jumping.decodeFrame(34, 1)));
+
+        // Frame 4 was restored to the canvas before it
+        assertEquals(TRANSPARENT, inOrder.get(5)[4]);
+        assertEquals(GREEN, inOrder.get(4)[4]);
+    }
+
+
+    @Test
+    void subsamplesTheCanvas() throws IOException {
+        GifPageSource gif = new GifPageSource(writeGif(List.of(
+                new TestFrame(0, 0, SIZE, SIZE, RED, NONE),
+                new TestFrame(2, 0, 2, 2, BLUE, NONE))));
+
+        BufferedImage image = gif.decodeFrame(1, 2);
+
+        assertEquals(SIZE / 2, image.getWidth());
+        assertEquals(SIZE / 2, image.getHeight());
+        assertEquals(RED, image.getRGB(0, 0));
+        assertEquals(BLUE, image.getRGB(1, 0));
+        assertEquals(RED, image.getRGB(2, 0));
+    }
+
+
+    @Test
+    void keepsTheCompleteFramesOfATruncatedGif() throws IOException {
+        byte[] bytes = writeGif(List.of(
+                new TestFrame(0, 0, SIZE, SIZE, RED, NONE),
+                new TestFrame(0, 0, SIZE, SIZE, GREEN, NONE)));
+
+        GifPageSource gif = new GifPageSource(Arrays.copyOf(bytes, bytes.length - 8));
+
+        assertEquals(1, gif.getFrameCount());
+        assertArrayEquals(canvas(RED), pixels(gif.decodeFrame(0, 1)));
+    }
+
+
+    @Test
+    void rejectsAFileThatIsNotAGif() {
+        assertThrows(IOException.class,
+                () -> new GifPageSource("PNG not a gif".getBytes()));
+        assertThrows(IOException.class,
+                () -> new GifPageSource("GIF89a".getBytes()));
+    }
+
+
+    /**
+     * Method to write a gif. Every frame is written with a palette of
+     * the same colors, so no color changes.
+     * @param frames The frames of the gif
+     * @return The gif
+     */
+    private static byte[] writeGif(final List<TestFrame> frames) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("gif").next();
+        ByteArrayOutputStream gif = new ByteArrayOutputStream();
+
+        try (ImageOutputStream out = ImageIO.createImageOutputStream(gif)) {
+            writer.setOutput(out);
+
+            IIOMetadata streamMetadata = writer.getDefaultStreamMetadata(null);
+            String streamFormat = streamMetadata.getNativeMetadataFormatName();
+            IIOMetadataNode streamRoot = (IIOMetadataNode)
+                    streamMetadata.getAsTree(streamFormat);
+            IIOMetadataNode screen = new IIOMetadataNode("LogicalScreenDescriptor");
+            screen.setAttribute("logicalScreenWidth", Integer.toString(SIZE));
+            screen.setAttribute("logicalScreenHeight", Integer.toString(SIZE));
+            screen.setAttribute("colorResolution", "8");
+            screen.setAttribute("pixelAspectRatio", "0");
+            streamRoot.appendChild(screen);
+            streamMetadata.setFromTree(streamFormat, streamRoot);
+
+            writer.prepareWriteSequence(streamMetadata);
+
+            for (TestFrame frame : frames) {
+                BufferedImage image = new BufferedImage(frame.width(),
+                        frame.height(), BufferedImage.TYPE_INT_RGB);
+                fill(image, frame.color());
+
+                IIOMetadata metadata = writer.getDefaultImageMetadata(
+                        ImageTypeSpecifier.createFromRenderedImage(image), null);
+                String format = metadata.getNativeMetadataFormatName();
+                IIOMetadataNode root = (IIOMetadataNode) metadata.getAsTree(format);
+
+                IIOMetadataNode descriptor = child(root, "ImageDescriptor");
+                descriptor.setAttribute("imageLeftPosition", Integer.toString(frame.x()));
+                descriptor.setAttribute("imageTopPosition", Integer.toString(frame.y()));
+
+                IIOMetadataNode control = child(root, "GraphicControlExtension");
+                control.setAttribute("disposalMethod", frame.disposal());
+                control.setAttribute("userInputFlag", "FALSE");
+                control.setAttribute("transparentColorFlag", "FALSE");
+                control.setAttribute("delayTime", "0");
+                control.setAttribute("transparentColorIndex", "0");
+
+                metadata.setFromTree(format, root);
+                writer.writeToSequence(new IIOImage(image, null, metadata), null);
+            }
+
+            writer.endWriteSequence();
+        } finally {
+            writer.dispose();
+        }
+
+        return gif.toByteArray();
+    }
+
+
+    /**
+     * Method to get a child node of the metadata, it is added if it is missing.
+     * @param root The root of the metadata
+     * @param name The name of the child
+     * @return The child
+     */
+    private static IIOMetadataNode child(final IIOMetadataNode root,
+                                         final String name) {
+        for (int i = 0; i < root.getLength(); i++) {
+            if (root.item(i).getNodeName().equals(name)) {
+                return (IIOMetadataNode) root.item(i);
+            }
+        }
+
+        IIOMetadataNode child = new IIOMetadataNode(name);
+        root.appendChild(child);
+        return child;
+    }
+
+
+    /**
+     * Method to fill an image with a color.
+     * @param image The image
+     * @param color The color
+     */
+    private static void fill(final BufferedImage image, final int color) {
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                image.setRGB(x, y, color);
+            }
+        }
+    }
+
+
+    /**
+     * Method to create a canvas of one color.
+     * @param color The color
+     * @return The pixels of the canvas
+     */
+    private static int[] canvas(final int color) {
+        int[] canvas = new int[SIZE * SIZE];
+        Arrays.fill(canvas, color);
+        return canvas;
+    }
+
+
+    /**
+     * Method to fill a rectangle of a canvas with a color.
+     * @param canvas The pixels of the canvas
+     * @param x The left of the rectangle
+     * @param y The top of the rectangle
+     * @param width The width of the rectangle
+     * @param height The height of the rectangle
+     * @param color The color
+     */
+    private static void fill(final int[] canvas, final int x, final int y,
+                             final int width, final int height, final int color) {
+        for (int row = y; row < y + height; row++) {
+            Arrays.fill(canvas, row * SIZE + x, row * SIZE + x + width, color);
+        }
+    }
+
+
+    /**
+     * Method to get the pixels of a decoded frame.
+     * @param image The frame
+     * @return The pixels, as argb
+     */
+    private static int[] pixels(final BufferedImage image) {
+        return image.getRGB(0, 0, image.getWidth(), image.getHeight(),
+                null, 0, image.getWidth());
+    }
+}
@@ -0,0 +1,360 @@
+package xyz.jelmer8.models;
+
+import net.lingala.zip4j.ZipFile;
+import net.lingala.zip4j.model.FileHeader;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests of the MappedZipArchive class. The zip files are written by the
+ * test, the zip64 and name encoding ones byte by byte, and every zip file
+ * is also read with zip4j, which has to find the same entries.
+ */
+class MappedZipArchiveTest {
+
+    /** Values of the zip64 fields that are in the zip64 records instead. */
+    private static final int NOTINFIELD = 0xffffffff;
+    private static final short NOTINSHORTFIELD = (short) 0xffff;
+
+    /** The flag of entries with a name in utf-8. */
+    private static final short UTF8FLAG = 0x800;
+
+    /** The folder of the zip files. */
+    @TempDir
+    Path directory;
+
+
+    /**
+     * An entry of a zip file written by the test, always stored.
+     * @param nameBytes The name of the entry, as written
+     * @param utf8 If the name is flagged as utf-8
+     * @param data The data of the entry
+     */
+    private record TestEntry(byte[] nameBytes, boolean utf8, byte[] data) {
+
+        /**
+         * Method to create an entry with a utf-8 name.
+         * @param name The name of the entry
+         * @param data The data of the entry
+         * @return The entry
+         */
+        static TestEntry utf8(final String name, final byte[] data) {
+            return new TestEntry(name.getBytes(StandardCharsets.UTF_8), true, data);
+        }
+
+        /**
+         * Getter for the checksum of the data.
+         * @return The crc32 of the data
+         */
+        long crc() {
+            return MappedZipArchiveTest.crc(data);
+        }
+    }
+
+
+    @Test
+    void mapsStoredEntriesOnly() throws IOException {
+        Path zip = directory.resolve("book.cbz");
+        byte[] stored = bytes(100, 1);
+        byte[] deflated = bytes(1000, 0);
+
+        try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(zip))) {
+            out.putNextEntry(storedEntry("pages/", new byte[0]));
+            out.closeEntry();
+            out.putNextEntry(storedEntry("pages/01.jpg", stored));
+            out.write(stored);
+            out.closeEntry();
+            out.putNextEntry(new ZipEntry("pages/02.jpg"));
+            out.write(deflated);
+            out.closeEntry();
+        }
+
+        try (MappedZipArchive archive = new MappedZipArchive(zip)) {
+            // Folders are left out
+            assertEquals(List.of("pages/01.jpg", "pages/02.jpg"),
+                    archive.getEntryNames());
+            assertTrue(archive.isMapped("pages/01.jpg"));
+            assertFalse(archive.isMapped("pages/02.jpg"));
+            assertFalse(archive.contains("pages/03.jpg"));
+
+            assertArrayEquals(stored, readAll(archive.openStream("pages/01.jpg")));
+            assertEquals(crc(deflated), archive.getCrc("pages/02.jpg"));
+            assertThrows(IOException.class, () -> archive.openStream("pages/02.jpg"));
+        }
+    }
+
+
+    @Test
+    void findsTheEndOfDirectoryBehindTheLongestComment() throws IOException {
+        Path zip = directory.resolve("comment.cbz");
+        byte[] page = bytes(64, 7);
+
+        try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(zip))) {
+            out.putNextEntry(storedEntry("01.jpg", page));
+            out.write(page);
+            out.closeEntry();
+            out.setComment("x".repeat(0xffff));
+        }
+
+        try (MappedZipArchive archive = new MappedZipArchive(zip)) {
+            assertEquals(List.of("01.jpg"), archive.getEntryNames());
+            assertArrayEquals(page, readAll(archive.openStream("01.jpg")));
+        }
+        assertEquals(List.of("01.jpg"), readNamesWithZip4j(zip));
+    }
+
+
+    @Test
+    void readsTheZip64Records() throws IOException {
+        List<TestEntry> entries = List.of(
+                TestEntry.utf8("01.jpg", bytes(300, 3)),
+                TestEntry.utf8("02.jpg", bytes(500, 5)));
+        Path zip = directory.resolve("zip64.cbz");
+        Files.write(zip, writeZip(entries, true, 0));
+
+        try (MappedZipArchive archive = new MappedZipArchive(zip)) {
+            assertEquals(List.of("01.jpg", "02.jpg"), archive.getEntryNames());
+
+            for (TestEntry entry : entries) {
+                String name = new String(entry.nameBytes(), StandardCharsets.UTF_8);
+                assertTrue(archive.isMapped(name));
+                assertEquals(entry.crc(), archive.getCrc(name));
+                assertArrayEquals(entry.data(), readAll(archive.openStream(name)));
+            }
+        }
+
+        // zip4j reads the same zip file
+        try (ZipFile zipFile = new ZipFile(zip.toFile())) {
+            FileHeader header = zipFile.getFileHeader("02.jpg");
+            try (InputStream in = zipFile.getInputStream(header)) {
+                assertArrayEquals(entries.get(1).data(), readAll(in));
+            }
+        }
+    }
+
+
+    @Test
+    void readsTheZip64RecordsBehindAComment() throws IOException {
+        List<TestEntry> entries = List.of(TestEntry.utf8("01.jpg", bytes(10, 9)));
+        Path zip = directory.resolve("zip64-comment.cbz");
+        Files.write(zip, writeZip(entries, true, 1000));
+
+        try (MappedZipArchive archive = new MappedZipArchive(zip)) {
+            assertArrayEquals(entries.getFirst().data(),
+                    readAll(archive.openStream("01.jpg")));
+        }
+    }
+
+
+    @Test
+    void decodesNamesLikeZip4j() throws IOException {
+        Charset cp437 = Charset.forName("IBM437");
+        List<TestEntry> entries = List.of(
+                new TestEntry("café-ü.jpg".getBytes(cp437), false, bytes(20, 1)),
+                TestEntry.utf8("ページ.jpg", bytes(20, 2)),
+                new TestEntry("plain.jpg".getBytes(cp437), false, bytes(20, 3)));
+        Path zip = directory.resolve("names.cbz");
+        Files.write(zip, writeZip(entries, false, 0));
+
+        try (MappedZipArchive archive = new MappedZipArchive(zip)) {
+            assertEquals(List.of("café-ü.jpg", "ページ.jpg", "plain.jpg"),
+                    archive.getEntryNames());
+            assertEquals(readNamesWithZip4j(zip), archive.getEntryNames());
+        }
+    }
+
+
+    @Test
+    void rejectsAFileThatIsNotAZipFile() throws IOException {
+        Path notZip = directory.resolve("book.cbz");
+        Files.write(notZip, bytes(4096, 11));
+
+        assertThrows(IOException.class, () -> new MappedZipArchive(notZip));
+    }
+
+
+    @Test
+    void rejectsADamagedCentralDirectory() throws IOException {
+        byte[] zip = writeZip(List.of(TestEntry.utf8("01.jpg", bytes(10, 1))),
+                false, 0);
+        // The central directory starts after the local header and the data
+        zip[30 + 6 + 10] = 0;
+        Path damaged = directory.resolve("damaged.cbz");
+        Files.write(damaged, zip);
+
+        assertThrows(IOException.class, () -> new MappedZipArchive(damaged));
+    }
+
+
+    /**
+     * Method to write a zip file with stored entries byte by byte.
+     * @param entries The entries of the zip file
+     * @param zip64 If the sizes and offsets are in the zip64 records
+     * @param commentLength The length of the comment of the zip file
+     * @return The zip file
+     */
+    private static byte[] writeZip(final List<TestEntry> entries,
+                                   final boolean zip64, final int commentLength) {
+        ByteBuffer zip = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+        List<Integer> offsets = new ArrayList<>();
+
+        for (TestEntry entry : entries) {
+            offsets.add(zip.position());
+            int size = entry.data().length;
+
+            zip.putInt(0x04034b50).putShort((short) 45)
+                    .putShort(entry.utf8() ? UTF8FLAG : 0).putShort((short) 0)
+                    .putInt(0).putInt((int) entry.crc())
+                    .putInt(zip64 ? NOTINFIELD : size).putInt(zip64 ? NOTINFIELD : size)
+                    .putShort((short) entry.nameBytes().length)
+                    .putShort((short) (zip64 ? 20 : 0)).put(entry.nameBytes());
+            if (zip64) {
+                zip.putShort((short) 1).putShort((short) 16)
+                        .putLong(size).putLong(size);
+            }
+            zip.put(entry.data());
+        }
+
+        int directoryOffset = zip.position();
+        for (int i = 0; i < entries.size(); i++) {
+            TestEntry entry = entries.get(i);
+            int size = entry.data().length;
+
+            zip.putInt(0x02014b50).putShort((short) 45).putShort((short) 45)
+                    .putShort(entry.utf8() ? UTF8FLAG : 0).putShort((short) 0)
+                    .putInt(0).putInt((int) entry.crc())
+                    .putInt(zip64 ? NOTINFIELD : size).putInt(zip64 ? NOTINFIELD : size)
+                    .putShort((short) entry.nameBytes().length)
+                    .putShort((short) (zip64 ? 28 : 0)).putShort((short) 0)
+                    .putShort((short) 0).putShort((short) 0).putInt(0)
+                    .putInt(zip64 ? NOTINFIELD : offsets.get(i))
+                    .put(entry.nameBytes());
+            if (zip64) {
+                // Size, compressed size and offset, in that order
+                zip.putShort((short) 1).putShort((short) 24)
+                        .putLong(size).putLong(size).putLong(offsets.get(i));
+            }
+        }
+        int directorySize = zip.position() - directoryOffset;
+
+        if (zip64) {
+            int zip64End = zip.position();
+            zip.putInt(0x06064b50).putLong(44).putShort((short) 45)
+                    .putShort((short) 45).putInt(0).putInt(0)
+                    .putLong(entries.size()).putLong(entries.size())
+                    .putLong(directorySize).putLong(directoryOffset);
+            zip.putInt(0x07064b50).putInt(0).putLong(zip64End).putInt(1);
+        }
+
+        zip.putInt(0x06054b50).putShort((short) 0).putShort((short) 0)
+                .putShort(zip64 ? NOTINSHORTFIELD : (short) entries.size())
+                .putShort(zip64 ? NOTINSHORTFIELD : (short) entries.size())
+                .putInt(zip64 ? NOTINFIELD : directorySize)
+                .putInt(zip64 ? NOTINFIELD : directoryOffset)
+                .putShort((short) commentLength);
+        for (int i = 0; i < commentLength; i++) {
+            zip.put((byte) ' ');
+        }
+
+        byte[] bytes = new byte[zip.position()];
+        zip.flip().get(bytes);
+        return bytes;
+    }
+
+
+    /**
+     * Method to create a stored entry for a ZipOutputStream.
+     * @param name The name of the entry
+     * @param data The data of the entry
+     * @return The entry
+     */
+    private static ZipEntry storedEntry(final String name, final byte[] data) {
+        ZipEntry entry = new ZipEntry(name);
+        entry.setMethod(ZipEntry.STORED);
+        entry.setSize(data.length);
+        entry.setCompressedSize(data.length);
+        entry.setCrc(crc(data));
+        return entry;
+    }
+
+
+    /**
+     * Method to read the names of the entries with zip4j.
+     * @param zip The zip file
+     * @return The names of the entries that are not folders
+     */
+    private static List<String> readNamesWithZip4j(final Path zip) throws IOException {
+        List<String> names = new ArrayList<>();
+
+        try (ZipFile zipFile = new ZipFile(zip.toFile())) {
+            for (FileHeader header : zipFile.getFileHeaders()) {
+                if (!header.isDirectory()) {
+                    names.add(header.getFileName());
+                }
+            }
+        }
+
+        return names;
+    }
+
+
+    /**
+     * Method to create test data.
+     * @param length The number of bytes
+     * @param seed Makes the data of every entry different
+     * @return The data
+     */
+    private static byte[] bytes(final int length, final int seed) {
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) (i * 31 + seed);
+        }
+        return data;
+    }
+
+
+    /**
+     * Method to get the checksum of data.
+     * @param data The data
+     * @return The crc32 of the data
+     */
+    private static long crc(final byte[] data) {
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        return crc.getValue();
+    }
+
+
+    /**
+     * Method to read a stream to its end.
+     * @param in The stream, it is closed
+     * @return The bytes of the stream
+     */
+    private static byte[] readAll(final InputStream in) throws IOException {
+        try (in; ByteArrayOutputStream out = new ByteArrayOutputStream()) {
+            in.transferTo(out);
+            return out.toByteArray();
+        }
+    }
+}